@@ -169,6 +169,21 @@ public class Application extends SpringBootServletInitializer implements Embedde
         return registration;
     }
 
+    @Bean
+    public FilterRegistrationBean compressionFilterRegistration() {
+        FilterRegistrationBean registration = new FilterRegistrationBean();
+        registration.setFilter(compressionFilter());
+        registration.addUrlPatterns("/rest/*", "*.view", "/dwr/*", "/script/*", "/style/*");
+        registration.setName("CompressionFilter");
+        registration.setOrder(8);
+        return registration;
+    }
+
+    @Bean
+    public Filter compressionFilter() {
+        return new CompressionFilter();
+    }
+
 
     @Bean
     public Filter noCacheFilter() {
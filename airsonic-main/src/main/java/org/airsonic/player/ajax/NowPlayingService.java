@@ -126,7 +126,8 @@ public class NowPlayingService {
             if (userSettings.getAvatarScheme() == AvatarScheme.SYSTEM) {
                 avatarUrl = url + "avatar.view?id=" + userSettings.getSystemAvatarId();
             } else if (userSettings.getAvatarScheme() == AvatarScheme.CUSTOM && settingsService.getCustomAvatar(username) != null) {
-                avatarUrl = url + "avatar.view?usernameUtf8Hex=" + StringUtil.utf8HexEncode(username);
+                avatarUrl = url + "avatar.view?usernameUtf8Hex=" + StringUtil.utf8HexEncode(username) +
+                            "&v=" + settingsService.getAvatarVersion(userSettings);
             }
 
             String tooltip = StringUtil.toHtml(artist) + " &ndash; " + StringUtil.toHtml(title);
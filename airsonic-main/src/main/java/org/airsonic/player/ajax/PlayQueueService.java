@@ -74,6 +74,8 @@ public class PlayQueueService {
     @Autowired
     private MediaFileDao mediaFileDao;
     @Autowired
+    private LibraryGenerationService libraryGenerationService;
+    @Autowired
     private PlayQueueDao playQueueDao;
     @Autowired
     private InternetRadioDao internetRadioDao;
@@ -153,7 +155,7 @@ public class PlayQueueService {
         PlayQueue playQueue = player.getPlayQueue();
         playQueue.setInternetRadio(null);
         if (playQueue.getRandomSearchCriteria() != null) {
-            playQueue.addFiles(true, mediaFileService.getRandomSongs(playQueue.getRandomSearchCriteria(), username));
+            playQueue.addFiles(true, searchService.getRandomSongs(playQueue.getRandomSearchCriteria(), username));
         }
         return convert(request, player, false);
     }
@@ -568,6 +570,7 @@ public class PlayQueueService {
         } else {
             mediaFileDao.starMediaFile(file.getId(), username);
         }
+        libraryGenerationService.increment();
         return convert(request, player, false);
     }
 
@@ -25,6 +25,7 @@ import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.domain.Player;
 import org.airsonic.player.domain.Playlist;
 import org.airsonic.player.i18n.LocaleResolver;
+import org.airsonic.player.service.LibraryGenerationService;
 import org.airsonic.player.service.MediaFileService;
 import org.airsonic.player.service.PlayerService;
 import org.airsonic.player.service.SecurityService;
@@ -57,6 +58,8 @@ public class PlaylistService {
     @Autowired
     private MediaFileDao mediaFileDao;
     @Autowired
+    private LibraryGenerationService libraryGenerationService;
+    @Autowired
     private SettingsService settingsService;
     @Autowired
     private PlayerService playerService;
@@ -190,6 +193,7 @@ public class PlaylistService {
         } else {
             mediaFileDao.starMediaFile(file.getId(), username);
         }
+        libraryGenerationService.increment();
         return getPlaylist(id);
     }
 
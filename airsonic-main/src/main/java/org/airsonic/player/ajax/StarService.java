@@ -21,6 +21,7 @@ package org.airsonic.player.ajax;
 
 import org.airsonic.player.dao.MediaFileDao;
 import org.airsonic.player.domain.User;
+import org.airsonic.player.service.LibraryGenerationService;
 import org.airsonic.player.service.SecurityService;
 import org.directwebremoting.WebContext;
 import org.directwebremoting.WebContextFactory;
@@ -41,13 +42,17 @@ public class StarService {
     private SecurityService securityService;
     @Autowired
     private MediaFileDao mediaFileDao;
+    @Autowired
+    private LibraryGenerationService libraryGenerationService;
 
     public void star(int id) {
         mediaFileDao.starMediaFile(id, getUser());
+        libraryGenerationService.increment();
     }
 
     public void unstar(int id) {
         mediaFileDao.unstarMediaFile(id, getUser());
+        libraryGenerationService.increment();
     }
 
     private String getUser() {
@@ -0,0 +1,82 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.ajax;
+
+import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.domain.User;
+import org.airsonic.player.service.SearchService;
+import org.airsonic.player.service.SecurityService;
+import org.airsonic.player.service.SettingsService;
+import org.apache.commons.lang.StringUtils;
+import org.directwebremoting.WebContext;
+import org.directwebremoting.WebContextFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Provides AJAX-enabled services for type-ahead search suggestions.
+ * <p/>
+ * This class is used by the DWR framework (http://getahead.ltd.uk/dwr/).
+ */
+@Service("ajaxSuggestionService")
+public class SuggestionService {
+
+    private static final int MAX_COUNT = 50;
+
+    @Autowired
+    private SecurityService securityService;
+    @Autowired
+    private SettingsService settingsService;
+    @Autowired
+    private SearchService searchService;
+
+    /**
+     * Returns artists, albums and titles beginning with the given words.
+     *
+     * @param query The words typed so far.
+     * @param count Maximum number of suggestions.
+     * @return Suggestions, most frequent first.
+     */
+    public List<String> getSuggestions(String query, int count) {
+        query = StringUtils.trimToNull(query);
+        if (query == null) {
+            return Collections.emptyList();
+        }
+        WebContext webContext = WebContextFactory.get();
+        User user = securityService.getCurrentUser(webContext.getHttpServletRequest());
+        List<MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(user.getUsername());
+        return searchService.getSuggestions(query, Math.min(count, MAX_COUNT), musicFolders);
+    }
+
+    public void setSecurityService(SecurityService securityService) {
+        this.securityService = securityService;
+    }
+
+    public void setSettingsService(SettingsService settingsService) {
+        this.settingsService = settingsService;
+    }
+
+    public void setSearchService(SearchService searchService) {
+        this.searchService = searchService;
+    }
+}
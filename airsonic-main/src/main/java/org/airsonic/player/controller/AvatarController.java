@@ -67,6 +67,12 @@ public class AvatarController implements LastModified {
             return;
         }
 
+        // System avatars never change, and custom ones are requested with a version when they may.
+        if (request.getParameter("id") != null) {
+            response.setHeader("Cache-Control", CoverArtController.IMMUTABLE_CACHE_CONTROL);
+        } else {
+            CoverArtController.setCacheControl(request, response);
+        }
         response.setContentType(avatar.getMimeType());
         response.getOutputStream().write(avatar.getData());
     }
@@ -239,6 +239,7 @@ public class HomeController  {
         album.setArtist(file.getArtist());
         album.setAlbumTitle(file.getAlbumName());
         album.setCoverArtPath(file.getCoverArtPath());
+        album.setCoverArtVersion(file.getCoverArtVersion());
         return album;
     }
 
@@ -248,6 +249,7 @@ public class HomeController  {
     public static class Album {
         private String path;
         private String coverArtPath;
+        private String coverArtVersion;
         private String artist;
         private String albumTitle;
         private Date created;
@@ -281,6 +283,14 @@ public class HomeController  {
             this.coverArtPath = coverArtPath;
         }
 
+        public String getCoverArtVersion() {
+            return coverArtVersion;
+        }
+
+        public void setCoverArtVersion(String coverArtVersion) {
+            this.coverArtVersion = coverArtVersion;
+        }
+
         public String getArtist() {
             return artist;
         }
@@ -21,6 +21,7 @@ package org.airsonic.player.controller;
 
 import org.airsonic.player.util.FileUtil;
 import org.airsonic.player.util.StringUtil;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.eclipse.persistence.jaxb.JAXBContext;
 import org.eclipse.persistence.jaxb.MarshallerProperties;
 import org.jdom2.Attribute;
@@ -34,17 +35,24 @@ import org.subsonic.restapi.ResponseStatus;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.namespace.QName;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
 
 import static org.airsonic.player.util.XMLUtil.createSAXBuilder;
 import static org.springframework.web.bind.ServletRequestUtils.getStringParameter;
@@ -57,10 +65,30 @@ public class JAXBWriter {
 
     private static final Logger LOG = LoggerFactory.getLogger(JAXBWriter.class);
 
+    /**
+     * Responses are written without indentation,
+     * unless the system property airsonic.rest.formattedOutput is set to true.
+     */
+    private static final boolean FORMATTED_OUTPUT = Boolean.getBoolean("airsonic.rest.formattedOutput");
+
+    /**
+     * Maximum number of idle marshallers kept for reuse, per format.
+     */
+    private static final int MARSHALLER_POOL_SIZE = 16;
+
+    private static final String NAMESPACE = "http://subsonic.org/restapi";
+
     private final javax.xml.bind.JAXBContext jaxbContext;
     private final DatatypeFactory datatypeFactory;
     private final String restProtocolVersion;
 
+    /*
+     * Marshallers are not thread-safe, and are costly to create.
+     * Each one is used by a single request at a time, then returned to its pool.
+     */
+    private final Queue<Marshaller> xmlMarshallers = new ArrayBlockingQueue<>(MARSHALLER_POOL_SIZE);
+    private final Queue<Marshaller> jsonMarshallers = new ArrayBlockingQueue<>(MARSHALLER_POOL_SIZE);
+
     public JAXBWriter() {
         try {
             jaxbContext = JAXBContext.newInstance(Response.class);
@@ -76,7 +104,7 @@ public class JAXBWriter {
         try {
             marshaller = jaxbContext.createMarshaller();
             marshaller.setProperty(Marshaller.JAXB_ENCODING, StringUtil.ENCODING_UTF8);
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, FORMATTED_OUTPUT);
             return marshaller;
         } catch (JAXBException e) {
             throw new RuntimeException(e);
@@ -88,7 +116,7 @@ public class JAXBWriter {
             Marshaller marshaller;
             marshaller = jaxbContext.createMarshaller();
             marshaller.setProperty(Marshaller.JAXB_ENCODING, StringUtil.ENCODING_UTF8);
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, FORMATTED_OUTPUT);
             marshaller.setProperty(MarshallerProperties.MEDIA_TYPE, "application/json");
             marshaller.setProperty(MarshallerProperties.JSON_INCLUDE_ROOT, true);
             return marshaller;
@@ -120,41 +148,123 @@ public class JAXBWriter {
         return response;
     }
 
+    /**
+     * Marshals the response directly to the client, rather than to a buffer first.
+     * If marshalling fails, a runtime exception is thrown. What has been written so far is still
+     * in the response buffer if the response is not committed, and can be discarded with
+     * {@link HttpServletResponse#reset()}; otherwise, the response is incomplete.
+     *
+     * @throws UncheckedIOException If writing to the client failed, e.g., because it has disconnected.
+     */
     public void writeResponse(HttpServletRequest request, HttpServletResponse httpResponse, Response jaxbResponse) {
+        httpResponse.setContentType(getContentType(request));
+        httpResponse.setCharacterEncoding(StringUtil.ENCODING_UTF8);
 
+        try {
+            marshal(request, jaxbResponse, httpResponse.getOutputStream());
+        } catch (IOException x) {
+            throw new UncheckedIOException(x);
+        }
+    }
+
+    /**
+     * Returns the content type of responses in the format requested by the given request.
+     */
+    public String getContentType(HttpServletRequest request) {
         String format = getStringParameter(request, "f", "xml");
-        String jsonpCallback = request.getParameter("callback");
-        boolean json = "json".equals(format);
-        boolean jsonp = "jsonp".equals(format) && jsonpCallback != null;
-        Marshaller marshaller;
+        if ("json".equals(format)) {
+            return "application/json";
+        }
+        if ("jsonp".equals(format) && request.getParameter("callback") != null) {
+            return "text/javascript";
+        }
+        return "text/xml";
+    }
 
-        if (json) {
-            marshaller = createJsonMarshaller();
-            httpResponse.setContentType("application/json");
-        } else if (jsonp) {
-            marshaller = createJsonMarshaller();
-            httpResponse.setContentType("text/javascript");
-        } else {
-            marshaller = createXmlMarshaller();
-            httpResponse.setContentType("text/xml");
+    /**
+     * Marshals the response in the format requested by the given request, to be written later.
+     *
+     * @return The UTF-8 encoded response.
+     */
+    public byte[] marshal(HttpServletRequest request, Response jaxbResponse) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            marshal(request, jaxbResponse, out);
+        } catch (IOException x) {
+            throw new RuntimeException(x);
         }
+        return out.toByteArray();
+    }
 
-        httpResponse.setCharacterEncoding(StringUtil.ENCODING_UTF8);
+    private void marshal(HttpServletRequest request, Response jaxbResponse, OutputStream out) throws IOException {
+        String format = getStringParameter(request, "f", "xml");
+        String jsonpCallback = request.getParameter("callback");
+        boolean json = "json".equals(format);
+        boolean jsonp = "jsonp".equals(format) && jsonpCallback != null;
+        Marshaller marshaller = borrowMarshaller(json || jsonp);
 
         try {
-            StringWriter writer = new StringWriter();
             if (jsonp) {
-                writer.append(jsonpCallback).append('(');
+                out.write((jsonpCallback + "(").getBytes(StandardCharsets.UTF_8));
             }
-            marshaller.marshal(new ObjectFactory().createSubsonicResponse(jaxbResponse), writer);
+            marshaller.marshal(new ObjectFactory().createSubsonicResponse(jaxbResponse), out);
             if (jsonp) {
-                writer.append(");");
+                out.write(");".getBytes(StandardCharsets.UTF_8));
             }
-            httpResponse.getWriter().append(writer.getBuffer());
-        } catch (JAXBException | IOException x) {
-            LOG.error("Failed to marshal JAXB", x);
-            throw new RuntimeException(x);
+        } catch (JAXBException x) {
+            throw marshallingFailed(x);
+        }
+        // Not reused if marshalling failed, as its state is unknown
+        returnMarshaller(json || jsonp, marshaller);
+    }
+
+    /**
+     * Takes an idle marshaller for the given format from its pool, or creates one.
+     */
+    private Marshaller borrowMarshaller(boolean json) {
+        Marshaller marshaller = (json ? jsonMarshallers : xmlMarshallers).poll();
+        if (marshaller == null) {
+            marshaller = json ? createJsonMarshaller() : createXmlMarshaller();
         }
+        return marshaller;
+    }
+
+    /**
+     * Returns a marshaller, with its properties as created, to the pool of the given format.
+     */
+    private void returnMarshaller(boolean json, Marshaller marshaller) {
+        (json ? jsonMarshallers : xmlMarshallers).offer(marshaller);
+    }
+
+    /**
+     * Returns the I/O error that a marshaller failed with, if any, so that client disconnects are told apart
+     * from actual marshalling errors. The latter are logged, and thrown as runtime exceptions.
+     */
+    private static IOException marshallingFailed(JAXBException x) {
+        int index = ExceptionUtils.indexOfType(x, IOException.class);
+        if (index >= 0) {
+            return (IOException) ExceptionUtils.getThrowableList(x).get(index);
+        }
+        LOG.error("Failed to marshal JAXB", x);
+        throw new RuntimeException(x);
+    }
+
+    /**
+     * Starts a successful response holding a single list, whose elements are then written one at a time
+     * by the returned writer. Long lists are thus neither held in memory nor marshalled in one piece.
+     * The response is complete when {@link ListWriter#finish()} is called. If it is not, e.g., because
+     * an exception was thrown while writing, the response is left incomplete rather than closed,
+     * so that it is never mistaken for a complete list.
+     *
+     * @param listName    The name of the list, e.g., "songsChangedSince".
+     * @param elementName The name of the list elements, e.g., "song".
+     * @param next        The value of the "next" attribute of the list, or <code>null</code> to omit it.
+     */
+    public ListWriter writeListResponse(HttpServletRequest request, HttpServletResponse httpResponse,
+                                        String listName, String elementName, Integer next) throws IOException {
+        httpResponse.setContentType(getContentType(request));
+        httpResponse.setCharacterEncoding(StringUtil.ENCODING_UTF8);
+        return new ListWriter(request, httpResponse.getOutputStream(), listName, elementName, next);
     }
 
     public void writeErrorResponse(HttpServletRequest request, HttpServletResponse response,
@@ -184,4 +294,90 @@ public class JAXBWriter {
 
         return datatypeFactory.newXMLGregorianCalendar((GregorianCalendar)calendar).normalize();
     }
+
+    /**
+     * Writes the elements of a list response.
+     * The response envelope is written around them by hand, and each element is marshalled on its own.
+     *
+     * @see #writeListResponse
+     */
+    public class ListWriter {
+
+        private final OutputStream out;
+        private final Marshaller marshaller;
+        private final QName elementName;
+        private final boolean json;
+        private final String tail;
+        private boolean empty = true;
+
+        private ListWriter(HttpServletRequest request, OutputStream out, String listName, String elementName, Integer next) throws IOException {
+            this.out = out;
+            this.elementName = new QName(NAMESPACE, elementName);
+
+            String format = getStringParameter(request, "f", "xml");
+            String jsonpCallback = request.getParameter("callback");
+            boolean jsonp = "jsonp".equals(format) && jsonpCallback != null;
+            json = jsonp || "json".equals(format);
+
+            String head;
+            marshaller = borrowMarshaller(json);
+            try {
+                // Elements are marshalled without root or XML declaration; restored in finish().
+                if (json) {
+                    marshaller.setProperty(MarshallerProperties.JSON_INCLUDE_ROOT, false);
+                    head = (jsonp ? jsonpCallback + "(" : "")
+                           + "{\"subsonic-response\":{\"status\":\"ok\",\"version\":\"" + restProtocolVersion + "\","
+                           + "\"" + listName + "\":{" + (next == null ? "" : "\"next\":" + next + ",")
+                           + "\"" + elementName + "\":[";
+                    tail = "]}}}" + (jsonp ? ");" : "");
+                } else {
+                    marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+                    head = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                           + "<subsonic-response xmlns=\"" + NAMESPACE + "\" status=\"ok\" version=\"" + restProtocolVersion + "\">"
+                           + "<" + listName + (next == null ? "" : " next=\"" + next + "\"") + ">";
+                    tail = "</" + listName + "></subsonic-response>";
+                }
+            } catch (JAXBException x) {
+                throw new RuntimeException(x);
+            }
+            out.write(head.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public <T> void write(Class<T> type, T element) throws IOException {
+            if (json && !empty) {
+                out.write(',');
+            }
+            try {
+                marshaller.marshal(new JAXBElement<>(elementName, type, element), out);
+            } catch (JAXBException x) {
+                throw marshallingFailed(x);
+            }
+            empty = false;
+        }
+
+        /**
+         * Sends what has been written so far to the client.
+         */
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * Completes the response, once all elements have been written.
+         */
+        public void finish() throws IOException {
+            out.write(tail.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            try {
+                if (json) {
+                    marshaller.setProperty(MarshallerProperties.JSON_INCLUDE_ROOT, true);
+                } else {
+                    marshaller.setProperty(Marshaller.JAXB_FRAGMENT, false);
+                }
+            } catch (JAXBException x) {
+                throw new RuntimeException(x);
+            }
+            returnMarshaller(json, marshaller);
+        }
+    }
 }
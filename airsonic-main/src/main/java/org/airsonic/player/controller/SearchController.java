@@ -38,7 +38,9 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Controller for the search page.
@@ -88,14 +90,15 @@ public class SearchController {
             criteria.setCount(MATCH_COUNT);
             criteria.setQuery(query);
 
-            SearchResult artists = searchService.search(criteria, musicFolders, IndexType.ARTIST);
-            command.setArtists(artists.getMediaFiles());
+            Map<IndexType, SearchCriteria> criteriaMap = new EnumMap<>(IndexType.class);
+            criteriaMap.put(IndexType.ARTIST, criteria);
+            criteriaMap.put(IndexType.ALBUM, criteria);
+            criteriaMap.put(IndexType.SONG, criteria);
+            Map<IndexType, SearchResult> results = searchService.search(criteriaMap, musicFolders);
 
-            SearchResult albums = searchService.search(criteria, musicFolders, IndexType.ALBUM);
-            command.setAlbums(albums.getMediaFiles());
-
-            SearchResult songs = searchService.search(criteria, musicFolders, IndexType.SONG);
-            command.setSongs(songs.getMediaFiles());
+            command.setArtists(results.get(IndexType.ARTIST).getMediaFiles());
+            command.setAlbums(results.get(IndexType.ALBUM).getMediaFiles());
+            command.setSongs(results.get(IndexType.SONG).getMediaFiles());
 
             command.setPlayer(playerService.getPlayer(request, response));
         }
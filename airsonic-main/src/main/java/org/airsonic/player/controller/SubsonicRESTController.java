@@ -19,6 +19,9 @@
  */
 package org.airsonic.player.controller;
 
+import com.google.common.collect.Lists;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
 import org.airsonic.player.ajax.LyricsInfo;
 import org.airsonic.player.ajax.LyricsService;
 import org.airsonic.player.ajax.PlayQueueService;
@@ -31,10 +34,12 @@ import org.airsonic.player.domain.*;
 import org.airsonic.player.domain.Bookmark;
 import org.airsonic.player.domain.PlayQueue;
 import org.airsonic.player.i18n.LocaleResolver;
+import org.airsonic.player.monitor.MetricsManager;
 import org.airsonic.player.service.*;
 import org.airsonic.player.service.search.IndexType;
 import org.airsonic.player.util.StringUtil;
 import org.airsonic.player.util.Util;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
@@ -47,6 +52,7 @@ import org.springframework.web.bind.ServletRequestUtils;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.subsonic.restapi.*;
 import org.subsonic.restapi.PodcastStatus;
 
@@ -55,6 +61,7 @@ import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.datatype.XMLGregorianCalendar;
 
+import java.io.IOException;
 import java.util.*;
 
 import static org.airsonic.player.security.RESTRequestParameterProcessingFilter.decrypt;
@@ -136,10 +143,40 @@ public class SubsonicRESTController {
     @Autowired
     private MediaScannerService mediaScannerService;
     @Autowired
+    private LibraryGenerationService libraryGenerationService;
+    @Autowired
+    private Ehcache restResponseCache;
+    @Autowired
+    private MetricsManager metricsManager;
+    @Autowired
     private LocaleResolver localeResolver;
 
     private final JAXBWriter jaxbWriter = new JAXBWriter();
 
+    /**
+     * Request parameters that don't affect the response, and are therefore left out of entity tags.
+     * The username and client are accounted for by the user and player.
+     */
+    private static final Set<String> ETAG_IGNORED_PARAMETERS = new HashSet<>(Arrays.asList("u", "p", "t", "s", "c"));
+
+    /**
+     * Album list types that are not answered with entity tags: random lists differ on every call, and
+     * play counts, which the most played and recently played lists are made of, don't change the
+     * library generation.
+     */
+    private static final Set<String> UNTAGGED_ALBUM_LIST_TYPES = new HashSet<>(Arrays.asList("random", "frequent", "recent"));
+
+    /**
+     * Default and maximum number of elements returned by the sync methods.
+     */
+    private static final int SYNC_DEFAULT_COUNT = 1000;
+    private static final int SYNC_MAX_COUNT = 5000;
+
+    /**
+     * Number of elements the sync methods create and write at a time.
+     */
+    private static final int SYNC_BATCH_SIZE = 250;
+
     private static final String NOT_YET_IMPLEMENTED = "Not yet implemented";
     private static final String NO_LONGER_SUPPORTED = "No longer supported";
 
@@ -182,6 +219,9 @@ public class SubsonicRESTController {
     @RequestMapping("/getMusicFolders")
     public void getMusicFolders(HttpServletRequest request, HttpServletResponse response) {
         request = wrapRequest(request);
+        if (checkNotModified(request, response)) {
+            return;
+        }
 
         MusicFolders musicFolders = new MusicFolders();
         String username = securityService.getCurrentUsername(request);
@@ -204,6 +244,9 @@ public class SubsonicRESTController {
 
         long ifModifiedSince = getLongParameter(request, "ifModifiedSince", 0L);
         long lastModified = leftController.getLastModified(request);
+        if (checkNotModified(request, response, lastModified)) {
+            return;
+        }
 
         if (lastModified <= ifModifiedSince) {
             jaxbWriter.writeResponse(request, response, res);
@@ -229,7 +272,21 @@ public class SubsonicRESTController {
             indexes.getShortcut().add(createJaxbArtist(shortcut, username));
         }
 
+        // The content is shared between users, so the user's stars and ratings are looked up in bulk and merged in.
         MusicFolderContent musicFolderContent = musicIndexService.getMusicFolderContent(musicFolders, false);
+        Map<Integer, Date> starredDates = mediaFileDao.getMediaFileStarredDates(username);
+        List<MediaFile> albums = new ArrayList<>();
+        for (List<MusicIndex.SortableArtistWithMediaFiles> artists : musicFolderContent.getIndexedArtists().values()) {
+            for (MusicIndex.SortableArtistWithMediaFiles artist : artists) {
+                for (MediaFile mediaFile : artist.getMediaFiles()) {
+                    if (mediaFile.isDirectory() && mediaFile.isAlbum()) {
+                        albums.add(mediaFile);
+                    }
+                }
+            }
+        }
+        Map<String, Double> averageRatings = ratingService.getAverageRatings(albums);
+        Map<String, Integer> userRatings = ratingService.getRatingsForUser(username, albums);
 
         for (Map.Entry<MusicIndex, List<MusicIndex.SortableArtistWithMediaFiles>> entry : musicFolderContent.getIndexedArtists().entrySet()) {
             Index index = new Index();
@@ -239,16 +296,15 @@ public class SubsonicRESTController {
             for (MusicIndex.SortableArtistWithMediaFiles artist : entry.getValue()) {
                 for (MediaFile mediaFile : artist.getMediaFiles()) {
                     if (mediaFile.isDirectory()) {
-                        Date starredDate = mediaFileDao.getMediaFileStarredDate(mediaFile.getId(), username);
                         org.subsonic.restapi.Artist a = new org.subsonic.restapi.Artist();
                         index.getArtist().add(a);
                         a.setId(String.valueOf(mediaFile.getId()));
                         a.setName(artist.getName());
-                        a.setStarred(jaxbWriter.convertDate(starredDate));
+                        a.setStarred(jaxbWriter.convertDate(starredDates.get(mediaFile.getId())));
 
                         if (mediaFile.isAlbum()) {
-                            a.setAverageRating(ratingService.getAverageRating(mediaFile));
-                            a.setUserRating(ratingService.getRatingForUser(username, mediaFile));
+                            a.setAverageRating(averageRatings.get(mediaFile.getPath()));
+                            a.setUserRating(userRatings.get(mediaFile.getPath()));
                         }
                     }
                 }
@@ -258,17 +314,22 @@ public class SubsonicRESTController {
         // Add children
         Player player = playerService.getPlayer(request, response);
 
-        for (MediaFile singleSong : musicFolderContent.getSingleSongs()) {
-            indexes.getChild().add(createJaxbChild(player, singleSong, username));
-        }
+        indexes.getChild().addAll(createJaxbChildren(player, musicFolderContent.getSingleSongs(), username));
 
         res.setIndexes(indexes);
         jaxbWriter.writeResponse(request, response, res);
     }
 
     @RequestMapping("/getGenres")
-    public void getGenres(HttpServletRequest request, HttpServletResponse response) {
+    public void getGenres(HttpServletRequest request, HttpServletResponse response) throws Exception {
         request = wrapRequest(request);
+        if (checkNotModified(request, response)) {
+            return;
+        }
+        String cacheKey = getResponseCacheKey(request);
+        if (writeCachedResponse(response, cacheKey)) {
+            return;
+        }
         org.subsonic.restapi.Genres genres = new org.subsonic.restapi.Genres();
 
         for (org.airsonic.player.domain.Genre genre : mediaFileDao.getGenres(false)) {
@@ -280,7 +341,7 @@ public class SubsonicRESTController {
         }
         Response res = createResponse();
         res.setGenres(genres);
-        jaxbWriter.writeResponse(request, response, res);
+        writeResponse(request, response, res, cacheKey);
     }
 
     @RequestMapping("/getSongsByGenre")
@@ -298,9 +359,7 @@ public class SubsonicRESTController {
         Integer musicFolderId = getIntParameter(request, "musicFolderId");
         List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username, musicFolderId);
 
-        for (MediaFile mediaFile : mediaFileDao.getSongsByGenre(genre, offset, count, musicFolders)) {
-            songs.getSong().add(createJaxbChild(player, mediaFile, username));
-        }
+        songs.getSong().addAll(createJaxbChildren(player, mediaFileDao.getSongsByGenre(genre, offset, count, musicFolders), username));
         Response res = createResponse();
         res.setSongsByGenre(songs);
         jaxbWriter.writeResponse(request, response, res);
@@ -309,20 +368,24 @@ public class SubsonicRESTController {
     @RequestMapping("/getArtists")
     public void getArtists(HttpServletRequest request, HttpServletResponse response) {
         request = wrapRequest(request);
+        if (checkNotModified(request, response)) {
+            return;
+        }
         String username = securityService.getCurrentUsername(request);
 
         ArtistsID3 result = new ArtistsID3();
         result.setIgnoredArticles(settingsService.getIgnoredArticles());
         List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username);
 
-        List<org.airsonic.player.domain.Artist> artists = artistDao.getAlphabetialArtists(0, Integer.MAX_VALUE, musicFolders);
-        SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithArtist>> indexedArtists = musicIndexService.getIndexedArtists(artists);
+        SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithArtist>> indexedArtists = musicIndexService.getIndexedId3Artists(musicFolders);
+        Map<Integer, Date> starredDates = mediaFileDao.getMediaFileStarredDates(username);
         for (Map.Entry<MusicIndex, List<MusicIndex.SortableArtistWithArtist>> entry : indexedArtists.entrySet()) {
             IndexID3 index = new IndexID3();
             result.getIndex().add(index);
             index.setName(entry.getKey().getIndex());
             for (MusicIndex.SortableArtistWithArtist sortableArtist : entry.getValue()) {
-                index.getArtist().add(createJaxbArtist(new ArtistID3(), sortableArtist.getArtist(), username));
+                org.airsonic.player.domain.Artist artist = sortableArtist.getArtist();
+                index.getArtist().add(createJaxbArtist(new ArtistID3(), artist, starredDates.get(artist.getId())));
             }
         }
 
@@ -349,9 +412,7 @@ public class SubsonicRESTController {
         List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username);
         List<MediaFile> similarSongs = lastFmService.getSimilarSongs(mediaFile, count, musicFolders);
         Player player = playerService.getPlayer(request, response);
-        for (MediaFile similarSong : similarSongs) {
-            result.getSong().add(createJaxbChild(player, similarSong, username));
-        }
+        result.getSong().addAll(createJaxbChildren(player, similarSongs, username));
 
         Response res = createResponse();
         res.setSimilarSongs(result);
@@ -377,9 +438,7 @@ public class SubsonicRESTController {
         List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username);
         List<MediaFile> similarSongs = lastFmService.getSimilarSongs(artist, count, musicFolders);
         Player player = playerService.getPlayer(request, response);
-        for (MediaFile similarSong : similarSongs) {
-            result.getSong().add(createJaxbChild(player, similarSong, username));
-        }
+        result.getSong().addAll(createJaxbChildren(player, similarSongs, username));
 
         Response res = createResponse();
         res.setSimilarSongs2(result);
@@ -399,9 +458,7 @@ public class SubsonicRESTController {
         List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username);
         List<MediaFile> topSongs = lastFmService.getTopSongs(artist, count, musicFolders);
         Player player = playerService.getPlayer(request, response);
-        for (MediaFile topSong : topSongs) {
-            result.getSong().add(createJaxbChild(player, topSong, username));
-        }
+        result.getSong().addAll(createJaxbChildren(player, topSongs, username));
 
         Response res = createResponse();
         res.setTopSongs(result);
@@ -482,9 +539,13 @@ public class SubsonicRESTController {
     }
 
     private <T extends ArtistID3> T createJaxbArtist(T jaxbArtist, org.airsonic.player.domain.Artist artist, String username) {
+        return createJaxbArtist(jaxbArtist, artist, mediaFileDao.getMediaFileStarredDate(artist.getId(), username));
+    }
+
+    private <T extends ArtistID3> T createJaxbArtist(T jaxbArtist, org.airsonic.player.domain.Artist artist, Date starredDate) {
         jaxbArtist.setId(String.valueOf(artist.getId()));
         jaxbArtist.setName(artist.getName());
-        jaxbArtist.setStarred(jaxbWriter.convertDate(mediaFileDao.getMediaFileStarredDate(artist.getId(), username)));
+        jaxbArtist.setStarred(jaxbWriter.convertDate(starredDate));
         jaxbArtist.setAlbumCount(artist.getAlbumCount());
         if (artist.getCoverArtPath() != null) {
             jaxbArtist.setCoverArt(CoverArtController.ARTIST_COVERART_PREFIX + artist.getId());
@@ -504,6 +565,13 @@ public class SubsonicRESTController {
     @RequestMapping("/getArtist")
     public void getArtist(HttpServletRequest request, HttpServletResponse response) throws Exception {
         request = wrapRequest(request);
+        if (checkNotModified(request, response)) {
+            return;
+        }
+        String cacheKey = getResponseCacheKey(request);
+        if (writeCachedResponse(response, cacheKey)) {
+            return;
+        }
 
         String username = securityService.getCurrentUsername(request);
         int id = getRequiredIntParameter(request, "id");
@@ -521,17 +589,22 @@ public class SubsonicRESTController {
 
         Response res = createResponse();
         res.setArtist(result);
-        jaxbWriter.writeResponse(request, response, res);
+        writeResponse(request, response, res, cacheKey);
     }
 
     private <T extends AlbumID3> T createJaxbAlbum(T jaxbAlbum, Album album, String username) {
+        org.airsonic.player.domain.Artist artist = album.getArtist() == null ? null : artistDao.getArtist(album.getArtist());
+        return createJaxbAlbum(jaxbAlbum, album, artist == null ? null : artist.getId(),
+                               albumDao.getAlbumStarredDate(album.getId(), username));
+    }
+
+    private <T extends AlbumID3> T createJaxbAlbum(T jaxbAlbum, Album album, Integer artistId, Date starredDate) {
         jaxbAlbum.setId(String.valueOf(album.getId()));
         jaxbAlbum.setName(album.getName());
         if (album.getArtist() != null) {
             jaxbAlbum.setArtist(album.getArtist());
-            org.airsonic.player.domain.Artist artist = artistDao.getArtist(album.getArtist());
-            if (artist != null) {
-                jaxbAlbum.setArtistId(String.valueOf(artist.getId()));
+            if (artistId != null) {
+                jaxbAlbum.setArtistId(String.valueOf(artistId));
             }
         }
         if (album.getCoverArtPath() != null) {
@@ -540,7 +613,7 @@ public class SubsonicRESTController {
         jaxbAlbum.setSongCount(album.getSongCount());
         jaxbAlbum.setDuration(album.getDurationSeconds());
         jaxbAlbum.setCreated(jaxbWriter.convertDate(album.getCreated()));
-        jaxbAlbum.setStarred(jaxbWriter.convertDate(albumDao.getAlbumStarredDate(album.getId(), username)));
+        jaxbAlbum.setStarred(jaxbWriter.convertDate(starredDate));
         jaxbAlbum.setYear(album.getYear());
         jaxbAlbum.setGenre(album.getGenre());
         return jaxbAlbum;
@@ -567,6 +640,13 @@ public class SubsonicRESTController {
     @RequestMapping("/getAlbum")
     public void getAlbum(HttpServletRequest request, HttpServletResponse response) throws Exception {
         request = wrapRequest(request);
+        if (checkNotModified(request, response)) {
+            return;
+        }
+        String cacheKey = getResponseCacheKey(request);
+        if (writeCachedResponse(response, cacheKey)) {
+            return;
+        }
         Player player = playerService.getPlayer(request, response);
         String username = securityService.getCurrentUsername(request);
 
@@ -578,18 +658,23 @@ public class SubsonicRESTController {
         }
 
         AlbumWithSongsID3 result = createJaxbAlbum(new AlbumWithSongsID3(), album, username);
-        for (MediaFile mediaFile : mediaFileDao.getSongsForAlbum(album.getArtist(), album.getName())) {
-            result.getSong().add(createJaxbChild(player, mediaFile, username));
-        }
+        result.getSong().addAll(createJaxbChildren(player, mediaFileDao.getSongsForAlbum(album.getArtist(), album.getName()), username));
 
         Response res = createResponse();
         res.setAlbum(result);
-        jaxbWriter.writeResponse(request, response, res);
+        writeResponse(request, response, res, cacheKey);
     }
 
     @RequestMapping("/getSong")
     public void getSong(HttpServletRequest request, HttpServletResponse response) throws Exception {
         request = wrapRequest(request);
+        if (checkNotModified(request, response)) {
+            return;
+        }
+        String cacheKey = getResponseCacheKey(request);
+        if (writeCachedResponse(response, cacheKey)) {
+            return;
+        }
         Player player = playerService.getPlayer(request, response);
         String username = securityService.getCurrentUsername(request);
 
@@ -606,7 +691,7 @@ public class SubsonicRESTController {
 
         Response res = createResponse();
         res.setSong(createJaxbChild(player, song, username));
-        jaxbWriter.writeResponse(request, response, res);
+        writeResponse(request, response, res, cacheKey);
     }
 
     @RequestMapping("/getMusicDirectory")
@@ -625,6 +710,13 @@ public class SubsonicRESTController {
             error(request, response, ErrorCode.NOT_AUTHORIZED, "Access denied");
             return;
         }
+        if (checkNotModified(request, response)) {
+            return;
+        }
+        String cacheKey = getResponseCacheKey(request);
+        if (writeCachedResponse(response, cacheKey)) {
+            return;
+        }
 
         MediaFile parent = mediaFileService.getParentOf(dir);
         Directory directory = new Directory();
@@ -645,13 +737,11 @@ public class SubsonicRESTController {
             directory.setUserRating(ratingService.getRatingForUser(username, dir));
         }
 
-        for (MediaFile child : mediaFileService.getChildrenOf(dir, true, true, true)) {
-            directory.getChild().add(createJaxbChild(player, child, username));
-        }
+        directory.getChild().addAll(createJaxbChildren(player, mediaFileService.getChildrenOf(dir, true, true, true), username));
 
         Response res = createResponse();
         res.setDirectory(directory);
-        jaxbWriter.writeResponse(request, response, res);
+        writeResponse(request, response, res, cacheKey);
     }
 
     @RequestMapping("/search")
@@ -690,9 +780,7 @@ public class SubsonicRESTController {
         searchResult.setOffset(result.getOffset());
         searchResult.setTotalHits(result.getTotalHits());
 
-        for (MediaFile mediaFile : result.getMediaFiles()) {
-            searchResult.getMatch().add(createJaxbChild(player, mediaFile, username));
-        }
+        searchResult.getMatch().addAll(createJaxbChildren(player, result.getMediaFiles(), username));
         Response res = createResponse();
         res.setSearchResult(searchResult);
         jaxbWriter.writeResponse(request, response, res);
@@ -708,29 +796,15 @@ public class SubsonicRESTController {
 
         SearchResult2 searchResult = new SearchResult2();
 
-        String query = request.getParameter("query");
-        SearchCriteria criteria = new SearchCriteria();
-        criteria.setQuery(StringUtils.trimToEmpty(query));
-        criteria.setCount(getIntParameter(request, "artistCount", 20));
-        criteria.setOffset(getIntParameter(request, "artistOffset", 0));
-        org.airsonic.player.domain.SearchResult artists = searchService.search(criteria, musicFolders, IndexType.ARTIST);
-        for (MediaFile mediaFile : artists.getMediaFiles()) {
-            searchResult.getArtist().add(createJaxbArtist(mediaFile, username));
-        }
+        Map<IndexType, SearchCriteria> criteria = createSearchCriteria(request,
+                IndexType.ARTIST, IndexType.ALBUM, IndexType.SONG);
+        Map<IndexType, org.airsonic.player.domain.SearchResult> results = searchService.search(criteria, musicFolders);
 
-        criteria.setCount(getIntParameter(request, "albumCount", 20));
-        criteria.setOffset(getIntParameter(request, "albumOffset", 0));
-        org.airsonic.player.domain.SearchResult albums = searchService.search(criteria, musicFolders, IndexType.ALBUM);
-        for (MediaFile mediaFile : albums.getMediaFiles()) {
-            searchResult.getAlbum().add(createJaxbChild(player, mediaFile, username));
-        }
-
-        criteria.setCount(getIntParameter(request, "songCount", 20));
-        criteria.setOffset(getIntParameter(request, "songOffset", 0));
-        org.airsonic.player.domain.SearchResult songs = searchService.search(criteria, musicFolders, IndexType.SONG);
-        for (MediaFile mediaFile : songs.getMediaFiles()) {
-            searchResult.getSong().add(createJaxbChild(player, mediaFile, username));
+        for (MediaFile mediaFile : results.get(IndexType.ARTIST).getMediaFiles()) {
+            searchResult.getArtist().add(createJaxbArtist(mediaFile, username));
         }
+        searchResult.getAlbum().addAll(createJaxbChildren(player, results.get(IndexType.ALBUM).getMediaFiles(), username));
+        searchResult.getSong().addAll(createJaxbChildren(player, results.get(IndexType.SONG).getMediaFiles(), username));
 
         Response res = createResponse();
         res.setSearchResult2(searchResult);
@@ -747,35 +821,47 @@ public class SubsonicRESTController {
 
         SearchResult3 searchResult = new SearchResult3();
 
-        String query = request.getParameter("query");
-        SearchCriteria criteria = new SearchCriteria();
-        criteria.setQuery(StringUtils.trimToEmpty(query));
-        criteria.setCount(getIntParameter(request, "artistCount", 20));
-        criteria.setOffset(getIntParameter(request, "artistOffset", 0));
-        org.airsonic.player.domain.SearchResult result = searchService.search(criteria, musicFolders, IndexType.ARTIST_ID3);
-        for (org.airsonic.player.domain.Artist artist : result.getArtists()) {
+        Map<IndexType, SearchCriteria> criteria = createSearchCriteria(request,
+                IndexType.ARTIST_ID3, IndexType.ALBUM_ID3, IndexType.SONG);
+        Map<IndexType, org.airsonic.player.domain.SearchResult> results = searchService.search(criteria, musicFolders);
+
+        for (org.airsonic.player.domain.Artist artist : results.get(IndexType.ARTIST_ID3).getArtists()) {
             searchResult.getArtist().add(createJaxbArtist(new ArtistID3(), artist, username));
         }
-
-        criteria.setCount(getIntParameter(request, "albumCount", 20));
-        criteria.setOffset(getIntParameter(request, "albumOffset", 0));
-        result = searchService.search(criteria, musicFolders, IndexType.ALBUM_ID3);
-        for (Album album : result.getAlbums()) {
+        for (Album album : results.get(IndexType.ALBUM_ID3).getAlbums()) {
             searchResult.getAlbum().add(createJaxbAlbum(new AlbumID3(), album, username));
         }
-
-        criteria.setCount(getIntParameter(request, "songCount", 20));
-        criteria.setOffset(getIntParameter(request, "songOffset", 0));
-        result = searchService.search(criteria, musicFolders, IndexType.SONG);
-        for (MediaFile song : result.getMediaFiles()) {
-            searchResult.getSong().add(createJaxbChild(player, song, username));
-        }
+        searchResult.getSong().addAll(createJaxbChildren(player, results.get(IndexType.SONG).getMediaFiles(), username));
 
         Response res = createResponse();
         res.setSearchResult3(searchResult);
         jaxbWriter.writeResponse(request, response, res);
     }
 
+    /**
+     * Creates the search criteria of search2/search3 for the given artist, album and song indexes.
+     */
+    private Map<IndexType, SearchCriteria> createSearchCriteria(HttpServletRequest request, IndexType artistIndex,
+            IndexType albumIndex, IndexType songIndex) {
+        String query = StringUtils.trimToEmpty(request.getParameter("query"));
+        Map<IndexType, SearchCriteria> criteria = new EnumMap<>(IndexType.class);
+        criteria.put(artistIndex, createSearchCriteria(query, getIntParameter(request, "artistCount", 20),
+                getIntParameter(request, "artistOffset", 0)));
+        criteria.put(albumIndex, createSearchCriteria(query, getIntParameter(request, "albumCount", 20),
+                getIntParameter(request, "albumOffset", 0)));
+        criteria.put(songIndex, createSearchCriteria(query, getIntParameter(request, "songCount", 20),
+                getIntParameter(request, "songOffset", 0)));
+        return criteria;
+    }
+
+    private SearchCriteria createSearchCriteria(String query, int count, int offset) {
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setQuery(query);
+        criteria.setCount(count);
+        criteria.setOffset(offset);
+        return criteria;
+    }
+
     @RequestMapping("/getPlaylists")
     public void getPlaylists(HttpServletRequest request, HttpServletResponse response) {
         request = wrapRequest(request);
@@ -820,11 +906,13 @@ public class SubsonicRESTController {
             return;
         }
         PlaylistWithSongs result = createJaxbPlaylist(new PlaylistWithSongs(), playlist);
+        List<MediaFile> files = new ArrayList<>();
         for (MediaFile mediaFile : playlistService.getFilesInPlaylist(id)) {
             if (securityService.isFolderAccessAllowed(mediaFile, username)) {
-                result.getEntry().add(createJaxbChild(player, mediaFile, username));
+                files.add(mediaFile);
             }
         }
+        result.getEntry().addAll(createJaxbChildren(player, files, username));
 
         Response res = createResponse();
         res.setPlaylist(result);
@@ -914,9 +1002,7 @@ public class SubsonicRESTController {
             result.setPlaying(playing);
             result.setGain(gain);
             result.setPosition(position);
-            for (MediaFile mediaFile : playQueue.getFiles()) {
-                result.getEntry().add(createJaxbChild(player, mediaFile, username));
-            }
+            result.getEntry().addAll(createJaxbChildren(player, playQueue.getFiles(), username));
         } else {
             JukeboxStatus result = new JukeboxStatus();
             res.setJukeboxStatus(result);
@@ -1076,6 +1162,9 @@ public class SubsonicRESTController {
 
         size = Math.max(0, Math.min(size, 500));
         String type = getRequiredStringParameter(request, "type");
+        if (!UNTAGGED_ALBUM_LIST_TYPES.contains(type) && checkNotModified(request, response)) {
+            return;
+        }
 
         List<MediaFile> albums;
         if ("highest".equals(type)) {
@@ -1104,9 +1193,7 @@ public class SubsonicRESTController {
         }
 
         AlbumList result = new AlbumList();
-        for (MediaFile album : albums) {
-            result.getAlbum().add(createJaxbChild(player, album, username));
-        }
+        result.getAlbum().addAll(createJaxbChildren(player, albums, username));
 
         Response res = createResponse();
         res.setAlbumList(result);
@@ -1122,6 +1209,9 @@ public class SubsonicRESTController {
         size = Math.max(0, Math.min(size, 500));
         String type = getRequiredStringParameter(request, "type");
         String username = securityService.getCurrentUsername(request);
+        if (!UNTAGGED_ALBUM_LIST_TYPES.contains(type) && checkNotModified(request, response)) {
+            return;
+        }
         Integer musicFolderId = getIntParameter(request, "musicFolderId");
         List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username, musicFolderId);
 
@@ -1173,9 +1263,7 @@ public class SubsonicRESTController {
         RandomSearchCriteria criteria = new RandomSearchCriteria(size, genre, fromYear, toYear, musicFolders);
 
         Songs result = new Songs();
-        for (MediaFile mediaFile : searchService.getRandomSongs(criteria)) {
-            result.getSong().add(createJaxbChild(player, mediaFile, username));
-        }
+        result.getSong().addAll(createJaxbChildren(player, searchService.getRandomSongs(criteria), username));
         Response res = createResponse();
         res.setRandomSongs(result);
         jaxbWriter.writeResponse(request, response, res);
@@ -1192,9 +1280,7 @@ public class SubsonicRESTController {
         List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username);
 
         Videos result = new Videos();
-        for (MediaFile mediaFile : mediaFileDao.getVideos(size, offset, musicFolders)) {
-            result.getVideo().add(createJaxbChild(player, mediaFile, username));
-        }
+        result.getVideo().addAll(createJaxbChildren(player, mediaFileDao.getVideos(size, offset, musicFolders), username));
         Response res = createResponse();
         res.setVideos(result);
         jaxbWriter.writeResponse(request, response, res);
@@ -1240,14 +1326,14 @@ public class SubsonicRESTController {
     }
 
     private <T extends Child> T createJaxbChild(T child, Player player, MediaFile mediaFile, String username) {
-        MediaFile parent = mediaFileService.getParentOf(mediaFile);
+        return createJaxbChild(child, createChildContext(player, Collections.singletonList(mediaFile), username), mediaFile);
+    }
+
+    private <T extends Child> T createJaxbChild(T child, ChildContext context, MediaFile mediaFile) {
+        MediaFile parent = context.parents.get(mediaFile.getParentPath());
         child.setId(String.valueOf(mediaFile.getId()));
-        try {
-            if (!mediaFileService.isRoot(parent)) {
-                child.setParent(String.valueOf(parent.getId()));
-            }
-        } catch (SecurityException x) {
-            // Ignored.
+        if (parent != null && !mediaFileService.isRoot(parent)) {
+            child.setParent(String.valueOf(parent.getId()));
         }
         child.setTitle(mediaFile.getName());
         child.setAlbum(mediaFile.getAlbumName());
@@ -1257,9 +1343,9 @@ public class SubsonicRESTController {
         child.setYear(mediaFile.getYear());
         child.setGenre(mediaFile.getGenre());
         child.setCreated(jaxbWriter.convertDate(mediaFile.getCreated()));
-        child.setStarred(jaxbWriter.convertDate(mediaFileDao.getMediaFileStarredDate(mediaFile.getId(), username)));
-        child.setUserRating(ratingService.getRatingForUser(username, mediaFile));
-        child.setAverageRating(ratingService.getAverageRating(mediaFile));
+        child.setStarred(jaxbWriter.convertDate(context.starredDates.get(mediaFile.getId())));
+        child.setUserRating(context.userRatings.get(mediaFile.getPath()));
+        child.setAverageRating(context.averageRatings.get(mediaFile.getPath()));
         child.setPlayCount((long) mediaFile.getPlayCount());
 
         if (mediaFile.isFile()) {
@@ -1275,15 +1361,15 @@ public class SubsonicRESTController {
             child.setPath(getRelativePath(mediaFile, settingsService));
 
             if (mediaFile.getAlbumArtist() != null && mediaFile.getAlbumName() != null) {
-                Album album = albumDao.getAlbum(mediaFile.getAlbumArtist(), mediaFile.getAlbumName());
-                if (album != null) {
-                    child.setAlbumId(String.valueOf(album.getId()));
+                Integer albumId = context.albumIds.get(ChildContext.albumKey(mediaFile.getAlbumArtist(), mediaFile.getAlbumName()));
+                if (albumId != null) {
+                    child.setAlbumId(String.valueOf(albumId));
                 }
             }
             if (mediaFile.getArtist() != null) {
-                org.airsonic.player.domain.Artist artist = artistDao.getArtist(mediaFile.getArtist());
-                if (artist != null) {
-                    child.setArtistId(String.valueOf(artist.getId()));
+                Integer artistId = context.artistIds.get(mediaFile.getArtist());
+                if (artistId != null) {
+                    child.setArtistId(String.valueOf(artistId));
                 }
             }
             switch (mediaFile.getMediaType()) {
@@ -1305,8 +1391,8 @@ public class SubsonicRESTController {
                     break;
             }
 
-            if (transcodingService.isTranscodingRequired(mediaFile, player)) {
-                String transcodedSuffix = transcodingService.getSuffix(player, mediaFile, null);
+            String transcodedSuffix = context.transcodedSuffixes.get(suffix);
+            if (transcodedSuffix != null) {
                 child.setTranscodedSuffix(transcodedSuffix);
                 child.setTranscodedContentType(StringUtil.getMimeType(transcodedSuffix));
             }
@@ -1314,6 +1400,94 @@ public class SubsonicRESTController {
         return child;
     }
 
+    private List<Child> createJaxbChildren(Player player, List<MediaFile> mediaFiles, String username) {
+        ChildContext context = createChildContext(player, mediaFiles, username);
+        List<Child> result = new ArrayList<>(mediaFiles.size());
+        for (MediaFile mediaFile : mediaFiles) {
+            result.add(createJaxbChild(new Child(), context, mediaFile));
+        }
+        return result;
+    }
+
+    /**
+     * Looks up the data needed by {@link #createJaxbChild(Child, ChildContext, MediaFile)}
+     * for all the given media files at once, rather than once per file.
+     */
+    private ChildContext createChildContext(Player player, List<MediaFile> mediaFiles, String username) {
+        ChildContext context = new ChildContext();
+        context.parents = mediaFileService.getParentsOf(mediaFiles);
+
+        List<Integer> ids = new ArrayList<>(mediaFiles.size());
+        Set<String> albumNames = new HashSet<>();
+        Set<String> artistNames = new HashSet<>();
+        for (MediaFile mediaFile : mediaFiles) {
+            ids.add(mediaFile.getId());
+            if (!mediaFile.isFile()) {
+                continue;
+            }
+            if (mediaFile.getAlbumArtist() != null && mediaFile.getAlbumName() != null) {
+                albumNames.add(mediaFile.getAlbumName());
+            }
+            if (mediaFile.getArtist() != null) {
+                artistNames.add(mediaFile.getArtist());
+            }
+            // Whether transcoding is required only depends on the player and the format.
+            String format = mediaFile.getFormat();
+            if (!context.transcodedSuffixes.containsKey(format)) {
+                context.transcodedSuffixes.put(format, transcodingService.isTranscodingRequired(mediaFile, player)
+                        ? transcodingService.getSuffix(player, mediaFile, null) : null);
+            }
+        }
+        context.starredDates = mediaFileDao.getMediaFileStarredDates(ids, username);
+        context.userRatings = ratingService.getRatingsForUser(username, mediaFiles);
+        context.averageRatings = ratingService.getAverageRatings(mediaFiles);
+        for (Album album : albumDao.getAlbumsByName(albumNames)) {
+            context.albumIds.putIfAbsent(ChildContext.albumKey(album.getArtist(), album.getName()), album.getId());
+        }
+        for (org.airsonic.player.domain.Artist artist : artistDao.getArtistsByName(artistNames)) {
+            context.artistIds.putIfAbsent(artist.getName(), artist.getId());
+        }
+        return context;
+    }
+
+    /**
+     * Data shared by the Child elements created for a list of media files.
+     */
+    private static class ChildContext {
+        private Map<String, MediaFile> parents;
+        private Map<Integer, Date> starredDates;
+        private Map<String, Integer> userRatings;
+        private Map<String, Double> averageRatings;
+        private final Map<String, Integer> albumIds = new HashMap<>();
+        private final Map<String, Integer> artistIds = new HashMap<>();
+        // Transcoded suffix by format, null if no transcoding is required
+        private final Map<String, String> transcodedSuffixes = new HashMap<>();
+
+        private static String albumKey(String artist, String album) {
+            return artist + '\u0000' + album;
+        }
+    }
+
+    /**
+     * A marshalled response, as held by the response cache.
+     */
+    private static class CachedResponse {
+        private final String contentType;
+        private final byte[] body;
+
+        CachedResponse(String contentType, byte[] body) {
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        void writeTo(HttpServletResponse response) throws IOException {
+            response.setContentType(contentType);
+            response.setCharacterEncoding(StringUtil.ENCODING_UTF8);
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+
     private String findCoverArt(MediaFile mediaFile, MediaFile parent) {
         MediaFile dir = mediaFile.isDirectory() ? mediaFile : parent;
         if (dir != null && dir.getCoverArtPath() != null) {
@@ -1464,6 +1638,7 @@ public class SubsonicRESTController {
             } else {
                 mediaFileDao.unstarMediaFile(id, username);
             }
+            libraryGenerationService.increment();
         }
         for (int albumId : getIntParameters(request, "albumId")) {
             Album album = albumDao.getAlbum(albumId);
@@ -1476,6 +1651,7 @@ public class SubsonicRESTController {
             } else {
                 albumDao.unstarAlbum(albumId, username);
             }
+            libraryGenerationService.increment();
         }
         for (int artistId : getIntParameters(request, "artistId")) {
             org.airsonic.player.domain.Artist artist = artistDao.getArtist(artistId);
@@ -1488,6 +1664,7 @@ public class SubsonicRESTController {
             } else {
                 artistDao.unstarArtist(artistId, username);
             }
+            libraryGenerationService.increment();
         }
 
         writeEmptyResponse(request, response);
@@ -1496,6 +1673,9 @@ public class SubsonicRESTController {
     @RequestMapping("/getStarred")
     public void getStarred(HttpServletRequest request, HttpServletResponse response) throws Exception {
         request = wrapRequest(request);
+        if (checkNotModified(request, response)) {
+            return;
+        }
         Player player = playerService.getPlayer(request, response);
         String username = securityService.getCurrentUsername(request);
         Integer musicFolderId = getIntParameter(request, "musicFolderId");
@@ -1505,12 +1685,8 @@ public class SubsonicRESTController {
         for (MediaFile artist : mediaFileDao.getStarredDirectories(0, Integer.MAX_VALUE, username, musicFolders)) {
             result.getArtist().add(createJaxbArtist(artist, username));
         }
-        for (MediaFile album : mediaFileDao.getStarredAlbums(0, Integer.MAX_VALUE, username, musicFolders)) {
-            result.getAlbum().add(createJaxbChild(player, album, username));
-        }
-        for (MediaFile song : mediaFileDao.getStarredFiles(0, Integer.MAX_VALUE, username, musicFolders)) {
-            result.getSong().add(createJaxbChild(player, song, username));
-        }
+        result.getAlbum().addAll(createJaxbChildren(player, mediaFileDao.getStarredAlbums(0, Integer.MAX_VALUE, username, musicFolders), username));
+        result.getSong().addAll(createJaxbChildren(player, mediaFileDao.getStarredFiles(0, Integer.MAX_VALUE, username, musicFolders), username));
         Response res = createResponse();
         res.setStarred(result);
         jaxbWriter.writeResponse(request, response, res);
@@ -1519,6 +1695,9 @@ public class SubsonicRESTController {
     @RequestMapping("/getStarred2")
     public void getStarred2(HttpServletRequest request, HttpServletResponse response) throws Exception {
         request = wrapRequest(request);
+        if (checkNotModified(request, response)) {
+            return;
+        }
         Player player = playerService.getPlayer(request, response);
         String username = securityService.getCurrentUsername(request);
         Integer musicFolderId = getIntParameter(request, "musicFolderId");
@@ -1531,14 +1710,131 @@ public class SubsonicRESTController {
         for (Album album : albumDao.getStarredAlbums(0, Integer.MAX_VALUE, username, musicFolders)) {
             result.getAlbum().add(createJaxbAlbum(new AlbumID3(), album, username));
         }
-        for (MediaFile song : mediaFileDao.getStarredFiles(0, Integer.MAX_VALUE, username, musicFolders)) {
-            result.getSong().add(createJaxbChild(player, song, username));
-        }
+        result.getSong().addAll(createJaxbChildren(player, mediaFileDao.getStarredFiles(0, Integer.MAX_VALUE, username, musicFolders), username));
         Response res = createResponse();
         res.setStarred2(result);
         jaxbWriter.writeResponse(request, response, res);
     }
 
+    /**
+     * Returns the songs changed since a given time, for clients that keep an offline copy of the library.
+     * Songs are returned in pages ordered by ID. If there are more songs, the list has a "next" attribute
+     * to be passed as the "after" parameter to get the next page.
+     */
+    @RequestMapping("/getSongsChangedSince")
+    public void getSongsChangedSince(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        request = wrapRequest(request);
+        Player player = playerService.getPlayer(request, response);
+        String username = securityService.getCurrentUsername(request);
+        Date since = getSince(request);
+        int after = getIntParameter(request, "after", 0);
+        int count = getSyncCount(request);
+        Integer musicFolderId = getIntParameter(request, "musicFolderId");
+        List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username, musicFolderId);
+
+        // One more than requested, to tell whether there is a next page.
+        List<MediaFile> songs = mediaFileDao.getSongsChangedSince(since, after, count + 1, musicFolders);
+        Integer next = null;
+        if (songs.size() > count) {
+            songs = songs.subList(0, count);
+            next = songs.get(count - 1).getId();
+        }
+
+        JAXBWriter.ListWriter writer = jaxbWriter.writeListResponse(request, response, "songsChangedSince", "song", next);
+        for (List<MediaFile> batch : Lists.partition(songs, SYNC_BATCH_SIZE)) {
+            for (Child child : createJaxbChildren(player, batch, username)) {
+                writer.write(Child.class, child);
+            }
+            writer.flush();
+        }
+        writer.finish();
+    }
+
+    /**
+     * Returns the albums created, or with songs changed, since a given time.
+     * Paged like {@link #getSongsChangedSince}.
+     */
+    @RequestMapping("/getAlbumsChangedSince")
+    public void getAlbumsChangedSince(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        request = wrapRequest(request);
+        String username = securityService.getCurrentUsername(request);
+        Date since = getSince(request);
+        int after = getIntParameter(request, "after", 0);
+        int count = getSyncCount(request);
+        Integer musicFolderId = getIntParameter(request, "musicFolderId");
+        List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username, musicFolderId);
+
+        List<Album> albums = albumDao.getAlbumsChangedSince(since, after, count + 1, musicFolders);
+        Integer next = null;
+        if (albums.size() > count) {
+            albums = albums.subList(0, count);
+            next = albums.get(count - 1).getId();
+        }
+
+        Map<Integer, Date> starredDates = albumDao.getAlbumStarredDates(username);
+        JAXBWriter.ListWriter writer = jaxbWriter.writeListResponse(request, response, "albumsChangedSince", "album", next);
+        for (List<Album> batch : Lists.partition(albums, SYNC_BATCH_SIZE)) {
+            Set<String> artistNames = new HashSet<>();
+            for (Album album : batch) {
+                if (album.getArtist() != null) {
+                    artistNames.add(album.getArtist());
+                }
+            }
+            Map<String, Integer> artistIds = new HashMap<>();
+            for (org.airsonic.player.domain.Artist artist : artistDao.getArtistsByName(artistNames)) {
+                artistIds.putIfAbsent(artist.getName(), artist.getId());
+            }
+            for (Album album : batch) {
+                writer.write(AlbumID3.class, createJaxbAlbum(new AlbumID3(), album, artistIds.get(album.getArtist()), starredDates.get(album.getId())));
+            }
+            writer.flush();
+        }
+        writer.finish();
+    }
+
+    /**
+     * Returns the artists with albums changed since a given time, as for {@link #getAlbumsChangedSince}.
+     * Paged like {@link #getSongsChangedSince}.
+     */
+    @RequestMapping("/getArtistsChangedSince")
+    public void getArtistsChangedSince(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        request = wrapRequest(request);
+        String username = securityService.getCurrentUsername(request);
+        Date since = getSince(request);
+        int after = getIntParameter(request, "after", 0);
+        int count = getSyncCount(request);
+        Integer musicFolderId = getIntParameter(request, "musicFolderId");
+        List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username, musicFolderId);
+
+        List<org.airsonic.player.domain.Artist> artists = artistDao.getArtistsChangedSince(since, after, count + 1, musicFolders);
+        Integer next = null;
+        if (artists.size() > count) {
+            artists = artists.subList(0, count);
+            next = artists.get(count - 1).getId();
+        }
+
+        Map<Integer, Date> starredDates = mediaFileDao.getMediaFileStarredDates(username);
+        JAXBWriter.ListWriter writer = jaxbWriter.writeListResponse(request, response, "artistsChangedSince", "artist", next);
+        for (org.airsonic.player.domain.Artist artist : artists) {
+            writer.write(ArtistID3.class, createJaxbArtist(new ArtistID3(), artist, starredDates.get(artist.getId())));
+        }
+        writer.finish();
+    }
+
+    /**
+     * Returns the "since" parameter of the sync methods, in milliseconds since the epoch,
+     * or <code>null</code> to return everything.
+     */
+    private Date getSince(HttpServletRequest request) throws Exception {
+        Long since = getLongParameter(request, "since");
+        return since == null || since <= 0 ? null : new Date(since);
+    }
+
+    private int getSyncCount(HttpServletRequest request) throws Exception {
+        int count = getIntParameter(request, "count", SYNC_DEFAULT_COUNT);
+        return Math.max(1, Math.min(count, SYNC_MAX_COUNT));
+    }
+
     @RequestMapping("/getPodcasts")
     public void getPodcasts(HttpServletRequest request, HttpServletResponse response) throws Exception {
         request = wrapRequest(request);
@@ -1775,12 +2071,14 @@ public class SubsonicRESTController {
         restPlayQueue.setChanged(jaxbWriter.convertDate(playQueue.getChanged()));
         restPlayQueue.setChangedBy(playQueue.getChangedBy());
 
+        List<MediaFile> files = new ArrayList<>();
         for (Integer mediaFileId : playQueue.getMediaFileIds()) {
             MediaFile mediaFile = mediaFileService.getMediaFile(mediaFileId);
             if (mediaFile != null) {
-                restPlayQueue.getEntry().add(createJaxbChild(player, mediaFile, username));
+                files.add(mediaFile);
             }
         }
+        restPlayQueue.getEntry().addAll(createJaxbChildren(player, files, username));
 
         Response res = createResponse();
         res.setPlayQueue(restPlayQueue);
@@ -1820,9 +2118,7 @@ public class SubsonicRESTController {
             org.subsonic.restapi.Share s = createJaxbShare(request, share);
             result.getShare().add(s);
 
-            for (MediaFile mediaFile : shareService.getSharedFiles(share.getId(), musicFolders)) {
-                s.getEntry().add(createJaxbChild(player, mediaFile, username));
-            }
+            s.getEntry().addAll(createJaxbChildren(player, shareService.getSharedFiles(share.getId(), musicFolders), username));
         }
         Response res = createResponse();
         res.setShares(result);
@@ -1860,9 +2156,7 @@ public class SubsonicRESTController {
 
         List<org.airsonic.player.domain.MusicFolder> musicFolders = settingsService.getMusicFoldersForUser(username);
 
-        for (MediaFile mediaFile : shareService.getSharedFiles(share.getId(), musicFolders)) {
-            s.getEntry().add(createJaxbChild(player, mediaFile, username));
-        }
+        s.getEntry().addAll(createJaxbChildren(player, shareService.getSharedFiles(share.getId(), musicFolders), username));
 
         Response res = createResponse();
         res.setShares(result);
@@ -2207,6 +2501,10 @@ public class SubsonicRESTController {
     @RequestMapping(path = "/getAlbumInfo")
     public void getAlbumInfo(HttpServletRequest request, HttpServletResponse response) throws Exception {
         request = wrapRequest(request);
+        String cacheKey = getResponseCacheKey(request);
+        if (writeCachedResponse(response, cacheKey)) {
+            return;
+        }
 
         int id = ServletRequestUtils.getRequiredIntParameter(request, "id");
 
@@ -2220,12 +2518,16 @@ public class SubsonicRESTController {
         AlbumInfo result = getAlbumInfoInternal(albumNotes);
         Response res = createResponse();
         res.setAlbumInfo(result);
-        this.jaxbWriter.writeResponse(request, response, res);
+        writeResponse(request, response, res, cacheKey);
     }
 
     @RequestMapping(path = "/getAlbumInfo2")
     public void getAlbumInfo2(HttpServletRequest request, HttpServletResponse response) throws Exception {
         request = wrapRequest(request);
+        String cacheKey = getResponseCacheKey(request);
+        if (writeCachedResponse(response, cacheKey)) {
+            return;
+        }
 
         int id = ServletRequestUtils.getRequiredIntParameter(request, "id");
 
@@ -2239,7 +2541,7 @@ public class SubsonicRESTController {
         AlbumInfo result = getAlbumInfoInternal(albumNotes);
         Response res = createResponse();
         res.setAlbumInfo(result);
-        this.jaxbWriter.writeResponse(request, response, res);
+        writeResponse(request, response, res, cacheKey);
     }
 
     private AlbumInfo getAlbumInfoInternal(AlbumNotes albumNotes) {
@@ -2285,6 +2587,87 @@ public class SubsonicRESTController {
         this.jaxbWriter.writeResponse(request, response, res);
     }
 
+    /**
+     * Checks whether the client already has the response to the given request, and answers with
+     * 304 (Not Modified) if so.
+     *
+     * @param keys Additional state the response depends on.
+     * @return Whether the response is complete, i.e., nothing needs to be written.
+     */
+    private boolean checkNotModified(HttpServletRequest request, HttpServletResponse response, Object... keys) {
+        return new ServletWebRequest(request, response).checkNotModified(getEntityTag(request, keys));
+    }
+
+    /**
+     * Returns a weak entity tag for the response to the given request.
+     * <p>
+     * The tag is derived from the library generation, the settings, the user, the player
+     * and the request parameters, so it changes whenever the response might.
+     * It is weak because the response is the same whether or not it is compressed by
+     * {@link org.airsonic.player.filter.CompressionFilter}, but not byte for byte.
+     */
+    private String getEntityTag(HttpServletRequest request, Object... keys) {
+        StringBuilder key = new StringBuilder(request.getRequestURI())
+                .append('\u0000').append(securityService.getCurrentUsername(request))
+                .append('\u0000').append(request.getParameter("player"));
+        for (Map.Entry<String, String[]> parameter : new TreeMap<>(request.getParameterMap()).entrySet()) {
+            if (!ETAG_IGNORED_PARAMETERS.contains(parameter.getKey())) {
+                key.append('\u0000').append(parameter.getKey()).append('=').append(Arrays.toString(parameter.getValue()));
+            }
+        }
+        for (Object k : keys) {
+            key.append('\u0000').append(k);
+        }
+        return "W/\"" + Long.toHexString(libraryGenerationService.getGeneration())
+                + '-' + Long.toHexString(settingsService.getSettingsChanged())
+                + '-' + DigestUtils.md5Hex(key.toString()) + '"';
+    }
+
+    /**
+     * Returns the key under which the response to the given request is cached, or <code>null</code>
+     * if the response cache is disabled. Like entity tags, keys change with the library generation,
+     * which covers the transcodings of the player, so cached responses are never outdated.
+     * Play counts are the exception: they may lag behind until the entry expires a few minutes later.
+     */
+    private String getResponseCacheKey(HttpServletRequest request) {
+        return settingsService.isRestResponseCacheEnabled() ? getEntityTag(request) : null;
+    }
+
+    /**
+     * Writes the cached response for the given key, if any.
+     *
+     * @param cacheKey The cache key, or <code>null</code> if the response cache is disabled.
+     * @return Whether the response was written.
+     */
+    private boolean writeCachedResponse(HttpServletResponse response, String cacheKey) throws IOException {
+        if (cacheKey == null) {
+            return false;
+        }
+        Element element = restResponseCache.get(cacheKey);
+        if (element == null) {
+            metricsManager.mark(SubsonicRESTController.class, "responseCache.miss");
+            return false;
+        }
+        metricsManager.mark(SubsonicRESTController.class, "responseCache.hit");
+        ((CachedResponse) element.getObjectValue()).writeTo(response);
+        return true;
+    }
+
+    /**
+     * Writes the given response, and caches it under the given key.
+     *
+     * @param cacheKey The cache key, or <code>null</code> if the response cache is disabled.
+     */
+    private void writeResponse(HttpServletRequest request, HttpServletResponse response, Response res, String cacheKey) throws IOException {
+        if (cacheKey == null) {
+            jaxbWriter.writeResponse(request, response, res);
+            return;
+        }
+        CachedResponse cached = new CachedResponse(jaxbWriter.getContentType(request), jaxbWriter.marshal(request, res));
+        restResponseCache.put(new Element(cacheKey, cached));
+        cached.writeTo(response);
+    }
+
     private HttpServletRequest wrapRequest(HttpServletRequest request) {
         return wrapRequest(request, false);
     }
@@ -2343,22 +2726,17 @@ public class SubsonicRESTController {
             clientId += "-jukebox";
         }
 
-        List<Player> players = playerService.getPlayersForUserAndClientId(username, clientId);
-
-        // If not found, create it.
-        if (players.isEmpty()) {
-            Player player = new Player();
-            player.setIpAddress(request.getRemoteAddr());
-            player.setUsername(username);
-            player.setClientId(clientId);
-            player.setName(clientId);
-            player.setTechnology(jukebox ? PlayerTechnology.JUKEBOX : PlayerTechnology.EXTERNAL_WITH_PLAYLIST);
-            playerService.createPlayer(player);
-            players = playerService.getPlayersForUserAndClientId(username, clientId);
-        }
+        String name = clientId;
+        Player player = playerService.getOrCreatePlayerForUserAndClientId(username, clientId, () -> {
+            Player newPlayer = new Player();
+            newPlayer.setIpAddress(request.getRemoteAddr());
+            newPlayer.setName(name);
+            newPlayer.setTechnology(jukebox ? PlayerTechnology.JUKEBOX : PlayerTechnology.EXTERNAL_WITH_PLAYLIST);
+            return newPlayer;
+        });
 
         // Return the player ID.
-        return !players.isEmpty() ? String.valueOf(players.get(0).getId()) : null;
+        return String.valueOf(player.getId());
     }
 
     public enum ErrorCode {
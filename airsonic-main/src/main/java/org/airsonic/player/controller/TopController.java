@@ -59,6 +59,7 @@ public class TopController {
         map.put("user", user);
         map.put("showSideBar", userSettings.isShowSideBar());
         map.put("showAvatar", userSettings.getAvatarScheme() != AvatarScheme.NONE);
+        map.put("avatarVersion", settingsService.getAvatarVersion(userSettings));
         return new ModelAndView("top","model", map);
     }
 }
@@ -19,16 +19,21 @@
  */
 package org.airsonic.player.dao;
 
+import com.google.common.collect.Iterables;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -40,6 +45,12 @@ import java.util.concurrent.TimeUnit;
  */
 public class AbstractDao {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractDao.class);
+
+    /**
+     * Maximum number of values bound to a single <code>in (...)</code> list. Longer lists are queried in chunks,
+     * to stay well below the bind parameter limits of the databases (e.g., 32767 for PostgreSQL).
+     */
+    protected static final int MAX_IN_LIST_SIZE = 500;
     
     @Autowired
     private DaoHelper daoHelper;
@@ -64,7 +75,7 @@ public class AbstractDao {
         return StringUtils.repeat("?", ", ", numberOfColumns);
     }
 
-    protected String prefix(String columns, String prefix) {
+    protected static String prefix(String columns, String prefix) {
         List<String> l = Arrays.asList(columns.split(", "));
         l.replaceAll(s -> prefix + "." + s);
         return String.join(", ", l);
@@ -102,16 +113,6 @@ public class AbstractDao {
         return result;
     }
 
-    protected <T> List<T> namedQueryWithLimit(String sql, RowMapper<T> rowMapper, Map<String, Object> args, int limit) {
-        long t = System.nanoTime();
-        JdbcTemplate jdbcTemplate = new JdbcTemplate(daoHelper.getDataSource());
-        jdbcTemplate.setMaxRows(limit);
-        NamedParameterJdbcTemplate namedTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
-        List<T> result = namedTemplate.query(sql, args, rowMapper);
-        log(sql, t);
-        return result;
-    }
-
     protected List<String> queryForStrings(String sql, Object... args) {
         long t = System.nanoTime();
         List<String> result = getJdbcTemplate().queryForList(sql, args, String.class);
@@ -175,6 +176,40 @@ public class AbstractDao {
         return list.isEmpty() ? null : list.get(0);
     }
 
+    protected void namedQueryForEach(String sql, RowCallbackHandler handler, Map<String, Object> args) {
+        long t = System.nanoTime();
+        getNamedParameterJdbcTemplate().query(sql, args, handler);
+        log(sql, t);
+    }
+
+    /**
+     * Similar to {@link #namedQuery}, but binds the values of an <code>in (...)</code> list to the given
+     * parameter in chunks of {@link #MAX_IN_LIST_SIZE}, and concatenates the results.
+     */
+    protected <T> List<T> namedQueryInChunks(String sql, RowMapper<T> rowMapper, Map<String, Object> args,
+                                             String parameter, Collection<?> values) {
+        List<T> result = new ArrayList<>();
+        for (List<?> chunk : Iterables.partition(values, MAX_IN_LIST_SIZE)) {
+            Map<String, Object> chunkArgs = new HashMap<>(args);
+            chunkArgs.put(parameter, chunk);
+            result.addAll(namedQuery(sql, rowMapper, chunkArgs));
+        }
+        return result;
+    }
+
+    /**
+     * Similar to {@link #namedQueryForEach}, but binds the values of an <code>in (...)</code> list to the given
+     * parameter in chunks of {@link #MAX_IN_LIST_SIZE}.
+     */
+    protected void namedQueryForEachInChunks(String sql, RowCallbackHandler handler, Map<String, Object> args,
+                                             String parameter, Collection<?> values) {
+        for (List<?> chunk : Iterables.partition(values, MAX_IN_LIST_SIZE)) {
+            Map<String, Object> chunkArgs = new HashMap<>(args);
+            chunkArgs.put(parameter, chunk);
+            namedQueryForEach(sql, handler, chunkArgs);
+        }
+    }
+
     public void setDaoHelper(DaoHelper daoHelper) {
         this.daoHelper = daoHelper;
     }
@@ -44,6 +44,9 @@ public class AlbumDao extends AbstractDao {
                                           "folder_id, mb_release_id";
 
     private static final String QUERY_COLUMNS = "id, " + INSERT_COLUMNS;
+    private static final String STARRED_ALBUMS_QUERY = "select " + prefix(QUERY_COLUMNS, "album") + " from starred_album, album where album.id = starred_album.album_id and " +
+                                                        "album.present and album.folder_id in (:folders) and starred_album.username = :username " +
+                                                        "order by starred_album.created desc limit :count offset :offset";
 
     private final RowMapper rowMapper = new AlbumMapper();
 
@@ -62,6 +65,17 @@ public class AlbumDao extends AbstractDao {
         return queryOne("select " + QUERY_COLUMNS + " from album where artist=? and name=?", rowMapper, artistName, albumName);
     }
 
+    /**
+     * Returns the albums with the given names, by any artist.
+     */
+    public List<Album> getAlbumsByName(Collection<String> albumNames) {
+        if (albumNames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return namedQueryInChunks("select " + QUERY_COLUMNS + " from album where name in (:names)", rowMapper,
+                                  Collections.emptyMap(), "names", albumNames);
+    }
+
     /**
      * Returns the album that the given file (most likely) is part of.
      *
@@ -121,8 +135,6 @@ public class AlbumDao extends AbstractDao {
                      "cover_art_path=?," +
                      "year=?," +
                      "genre=?," +
-                     "play_count=?," +
-                     "last_played=?," +
                      "comment=?," +
                      "created=?," +
                      "last_scanned=?," +
@@ -132,7 +144,7 @@ public class AlbumDao extends AbstractDao {
                      "where artist=? and name=?";
 
         int n = update(sql, album.getPath(), album.getSongCount(), album.getDurationSeconds(), album.getCoverArtPath(), album.getYear(),
-                       album.getGenre(), album.getPlayCount(), album.getLastPlayed(), album.getComment(), album.getCreated(),
+                       album.getGenre(), album.getComment(), album.getCreated(),
                        album.getLastScanned(), album.isPresent(), album.getFolderId(), album.getMusicBrainzReleaseId(), album.getArtist(), album.getName());
 
         if (n == 0) {
@@ -176,6 +188,41 @@ public class AlbumDao extends AbstractDao {
                           "order by " + orderBy + " limit :count offset :offset", rowMapper, args);
     }
 
+    /**
+     * Condition on the <code>album</code> table which holds if the album was created, or has songs which
+     * changed, after the <code>:since</code> parameter.
+     */
+    static final String CHANGED_SINCE = "(album.created > :since or exists (select 1 from media_file " +
+                                        "where media_file.album_artist = album.artist and media_file.album = album.name " +
+                                        "and media_file.present and media_file.changed > :since))";
+
+    /**
+     * Returns albums which were created, or have songs which changed, after the given date, ordered by ID.
+     * Pages are selected by key, i.e., by the ID of the last album of the previous page.
+     *
+     * @param since        Only return albums changed after this date, or all albums if <code>null</code>.
+     * @param afterId      Only return albums with a greater ID.
+     * @param count        Maximum number of albums to return.
+     * @param musicFolders Only return albums in these folders.
+     * @return Albums in ascending order of ID.
+     */
+    public List<Album> getAlbumsChangedSince(Date since, int afterId, int count, List<MusicFolder> musicFolders) {
+        if (musicFolders.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Object> args = new HashMap<>();
+        args.put("folders", MusicFolder.toIdList(musicFolders));
+        args.put("afterId", afterId);
+        args.put("count", count);
+        String changed = "";
+        if (since != null) {
+            args.put("since", since);
+            changed = "and " + CHANGED_SINCE + " ";
+        }
+        return namedQuery("select " + QUERY_COLUMNS + " from album where present and folder_id in (:folders) " + changed +
+                          "and id > :afterId order by id limit :count", rowMapper, args);
+    }
+
     /**
      * Returns the count of albums in the given folders
      *
@@ -273,10 +320,7 @@ public class AlbumDao extends AbstractDao {
         args.put("count", count);
         args.put("offset", offset);
         args.put("username", username);
-        return namedQuery("select " + prefix(QUERY_COLUMNS, "album") + " from starred_album, album where album.id = starred_album.album_id and " +
-                          "album.present and album.folder_id in (:folders) and starred_album.username = :username " +
-                          "order by starred_album.created desc limit :count offset :offset",
-                          rowMapper, args);
+        return namedQuery(STARRED_ALBUMS_QUERY, rowMapper, args);
     }
 
     /**
@@ -370,6 +414,18 @@ public class AlbumDao extends AbstractDao {
         return queryForDate("select created from starred_album where album_id=? and username=?", null, albumId, username);
     }
 
+    /**
+     * Returns the dates when all albums starred by the user were starred, keyed by album ID.
+     */
+    public Map<Integer, Date> getAlbumStarredDates(String username) {
+        Map<String, Object> args = new HashMap<>();
+        args.put("username", username);
+        Map<Integer, Date> result = new HashMap<>();
+        namedQueryForEach("select album_id, created from starred_album where username=:username",
+                rs -> result.put(rs.getInt(1), rs.getTimestamp(2)), args);
+        return result;
+    }
+
     private static class AlbumMapper implements RowMapper<Album> {
         public Album mapRow(ResultSet rs, int rowNum) throws SQLException {
             return new Album(
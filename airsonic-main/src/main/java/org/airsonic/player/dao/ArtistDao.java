@@ -38,6 +38,11 @@ import java.util.*;
 public class ArtistDao extends AbstractDao {
     private static final String INSERT_COLUMNS = "name, cover_art_path, album_count, last_scanned, present, folder_id";
     private static final String QUERY_COLUMNS = "id, " + INSERT_COLUMNS;
+    private static final String STARRED_ARTISTS_QUERY = "select " + prefix(QUERY_COLUMNS, "artist") + " from starred_artist, artist " +
+                                                         "where artist.id = starred_artist.artist_id and " +
+                                                         "artist.present and starred_artist.username = :username and " +
+                                                         "artist.folder_id in (:folders) " +
+                                                         "order by starred_artist.created desc limit :count offset :offset";
 
     private final RowMapper rowMapper = new ArtistMapper();
 
@@ -80,6 +85,17 @@ public class ArtistDao extends AbstractDao {
         return queryOne("select " + QUERY_COLUMNS + " from artist where id=?", rowMapper, id);
     }
 
+    /**
+     * Returns the artists with the given names.
+     */
+    public List<Artist> getArtistsByName(Collection<String> artistNames) {
+        if (artistNames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return namedQueryInChunks("select " + QUERY_COLUMNS + " from artist where name in (:names)", rowMapper,
+                                  Collections.emptyMap(), "names", artistNames);
+    }
+
     /**
      * Creates or updates an artist.
      *
@@ -127,6 +143,35 @@ public class ArtistDao extends AbstractDao {
                           "order by name limit :count offset :offset", rowMapper, args);
     }
 
+    /**
+     * Returns artists which changed after the given date, ordered by ID. An artist changed if one of its
+     * albums did, i.e., was created or has songs which changed, as for {@link AlbumDao#getAlbumsChangedSince}.
+     * Pages are selected by key, i.e., by the ID of the last artist of the previous page.
+     *
+     * @param since        Only return artists changed after this date, or all artists if <code>null</code>.
+     * @param afterId      Only return artists with a greater ID.
+     * @param count        Maximum number of artists to return.
+     * @param musicFolders Only return artists that have at least one album in these folders.
+     * @return Artists in ascending order of ID.
+     */
+    public List<Artist> getArtistsChangedSince(Date since, int afterId, int count, List<MusicFolder> musicFolders) {
+        if (musicFolders.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Object> args = new HashMap<>();
+        args.put("folders", MusicFolder.toIdList(musicFolders));
+        args.put("afterId", afterId);
+        args.put("count", count);
+        String changed = "";
+        if (since != null) {
+            args.put("since", since);
+            changed = "and exists (select 1 from album where album.artist = artist.name and album.present " +
+                      "and " + AlbumDao.CHANGED_SINCE + ") ";
+        }
+        return namedQuery("select " + QUERY_COLUMNS + " from artist where present and folder_id in (:folders) " + changed +
+                          "and id > :afterId order by id limit :count", rowMapper, args);
+    }
+
     /**
      * Returns the most recently starred artists.
      *
@@ -147,12 +192,7 @@ public class ArtistDao extends AbstractDao {
         args.put("count", count);
         args.put("offset", offset);
 
-        return namedQuery("select " + prefix(QUERY_COLUMNS, "artist") + " from starred_artist, artist " +
-                          "where artist.id = starred_artist.artist_id and " +
-                          "artist.present and starred_artist.username = :username and " +
-                          "artist.folder_id in (:folders) " +
-                          "order by starred_artist.created desc limit :count offset :offset",
-                          rowMapper, args);
+        return namedQuery(STARRED_ARTISTS_QUERY, rowMapper, args);
     }
 
     public void markPresent(String artistName, Date lastScanned) {
@@ -18,7 +18,10 @@ public class GenericDaoHelper implements DaoHelper {
     ) {
         this.dataSource = dataSource;
         this.jdbcTemplate = new JdbcTemplate(dataSource);
-        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        // Parsed SQL is cached by query string. Optional criteria (e.g., in random searches)
+        // give more distinct queries than the default limit of 256.
+        this.namedParameterJdbcTemplate.setCacheLimit(1024);
     }
 
     @Override
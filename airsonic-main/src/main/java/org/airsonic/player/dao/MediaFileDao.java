@@ -22,9 +22,11 @@ package org.airsonic.player.dao;
 import org.airsonic.player.domain.Genre;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.domain.PlayCount;
 import org.airsonic.player.domain.RandomSearchCriteria;
 import org.airsonic.player.util.Util;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.RowMapper;
@@ -46,11 +48,30 @@ public class MediaFileDao extends AbstractDao {
     private static final String INSERT_COLUMNS = "path, folder, type, format, title, album, artist, album_artist, disc_number, " +
                                                 "track_number, year, genre, bit_rate, variable_bit_rate, duration_seconds, file_size, width, height, cover_art_path, " +
                                                 "parent_path, play_count, last_played, comment, created, changed, last_scanned, children_last_updated, present, " +
-                                                "version, mb_release_id";
+                                                "version, mb_release_id, cover_art_changed";
 
     private static final String QUERY_COLUMNS = "id, " + INSERT_COLUMNS;
     private static final String GENRE_COLUMNS = "name, song_count, album_count";
 
+    // Queries on joined tables, built once rather than on every call.
+    private static final String FILES_IN_PLAYLIST_QUERY = "select " + prefix(QUERY_COLUMNS, "media_file") + " from playlist_file, media_file where " +
+                                                          "media_file.id = playlist_file.media_file_id and " +
+                                                          "playlist_file.playlist_id = ? " +
+                                                          "order by playlist_file.id";
+    private static final String STARRED_ALBUMS_QUERY = "select " + prefix(QUERY_COLUMNS, "media_file") + " from starred_media_file, media_file where media_file.id = starred_media_file.media_file_id and " +
+                                                        "media_file.present and media_file.type = :type and media_file.folder in (:folders) and starred_media_file.username = :username " +
+                                                        "order by starred_media_file.created desc limit :count offset :offset";
+    private static final String STARRED_DIRECTORIES_QUERY = "select " + prefix(QUERY_COLUMNS, "media_file") + " from starred_media_file, media_file " +
+                                                             "where media_file.id = starred_media_file.media_file_id and " +
+                                                             "media_file.present and media_file.type = :type and starred_media_file.username = :username and " +
+                                                             "media_file.folder in (:folders) " +
+                                                             "order by starred_media_file.created desc limit :count offset :offset";
+    private static final String STARRED_FILES_QUERY = "select " + prefix(QUERY_COLUMNS, "media_file") + " from starred_media_file, media_file where media_file.id = starred_media_file.media_file_id and " +
+                                                       "media_file.present and media_file.type in (:types) and starred_media_file.username = :username and " +
+                                                       "media_file.folder in (:folders) " +
+                                                       "order by starred_media_file.created desc limit :count offset :offset";
+    private static final String RANDOM_SONG_CANDIDATES_QUERY = "select " + prefix(QUERY_COLUMNS, "media_file") + " from media_file ";
+
     public static final int VERSION = 4;
 
     private final RowMapper<MediaFile> rowMapper = new MediaFileMapper();
@@ -77,6 +98,18 @@ public class MediaFileDao extends AbstractDao {
         return queryOne("select " + QUERY_COLUMNS + " from media_file where id=?", rowMapper, id);
     }
 
+    /**
+     * Returns the media files with the given paths, in no particular order.
+     * Paths which are not in the database are ignored.
+     */
+    public List<MediaFile> getMediaFiles(Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return namedQueryInChunks("select " + QUERY_COLUMNS + " from media_file where path in (:paths)", rowMapper,
+                                  Collections.emptyMap(), "paths", paths);
+    }
+
     /**
      * Returns the media file that are direct children of the given path.
      *
@@ -88,10 +121,7 @@ public class MediaFileDao extends AbstractDao {
     }
 
     public List<MediaFile> getFilesInPlaylist(int playlistId) {
-        return query("select " + prefix(QUERY_COLUMNS, "media_file") + " from playlist_file, media_file where " +
-                     "media_file.id = playlist_file.media_file_id and " +
-                     "playlist_file.playlist_id = ? " +
-                     "order by playlist_file.id", rowMapper, playlistId);
+        return query(FILES_IN_PLAYLIST_QUERY, rowMapper, playlistId);
     }
 
     public List<MediaFile> getSongsForAlbum(String artist, String album) {
@@ -127,7 +157,8 @@ public class MediaFileDao extends AbstractDao {
     }
 
     /**
-     * Creates or updates a media file.
+     * Creates or updates a media file. The play count and last played date of an existing
+     * media file are left unchanged, since they are only updated by {@link #addPlayCounts}.
      *
      * @param file The media file to create/update.
      */
@@ -154,15 +185,14 @@ public class MediaFileDao extends AbstractDao {
                      "height=?," +
                      "cover_art_path=?," +
                      "parent_path=?," +
-                     "play_count=?," +
-                     "last_played=?," +
                      "comment=?," +
                      "changed=?," +
                      "last_scanned=?," +
                      "children_last_updated=?," +
                      "present=?, " +
                      "version=?, " +
-                     "mb_release_id=? " +
+                     "mb_release_id=?, " +
+                     "cover_art_changed=? " +
                      "where path=?";
 
         LOG.trace("Updating media file {}", Util.debugObject(file));
@@ -171,9 +201,9 @@ public class MediaFileDao extends AbstractDao {
                        file.getFolder(), file.getMediaType().name(), file.getFormat(), file.getTitle(), file.getAlbumName(), file.getArtist(),
                        file.getAlbumArtist(), file.getDiscNumber(), file.getTrackNumber(), file.getYear(), file.getGenre(), file.getBitRate(),
                        file.isVariableBitRate(), file.getDurationSeconds(), file.getFileSize(), file.getWidth(), file.getHeight(),
-                       file.getCoverArtPath(), file.getParentPath(), file.getPlayCount(), file.getLastPlayed(), file.getComment(),
+                       file.getCoverArtPath(), file.getParentPath(), file.getComment(),
                        file.getChanged(), file.getLastScanned(), file.getChildrenLastUpdated(), file.isPresent(), VERSION,
-                       file.getMusicBrainzReleaseId(), file.getPath());
+                       file.getMusicBrainzReleaseId(), file.getCoverArtChanged(), file.getPath());
 
         if (n == 0) {
 
@@ -191,13 +221,39 @@ public class MediaFileDao extends AbstractDao {
                    file.isVariableBitRate(), file.getDurationSeconds(), file.getFileSize(), file.getWidth(), file.getHeight(),
                    file.getCoverArtPath(), file.getParentPath(), file.getPlayCount(), file.getLastPlayed(), file.getComment(),
                    file.getCreated(), file.getChanged(), file.getLastScanned(),
-                   file.getChildrenLastUpdated(), file.isPresent(), VERSION, file.getMusicBrainzReleaseId());
+                   file.getChildrenLastUpdated(), file.isPresent(), VERSION, file.getMusicBrainzReleaseId(), file.getCoverArtChanged());
         }
 
         int id = queryForInt("select id from media_file where path=?", null, file.getPath());
         file.setId(id);
     }
 
+    /**
+     * Adds to the play counts of the given media files and albums, and sets their last played dates,
+     * with one batch for each, in a single transaction.
+     *
+     * @param filePlayCounts  The plays to add, by media file path.
+     * @param albumPlayCounts The plays to add, by album artist and album name.
+     */
+    @Transactional
+    public void addPlayCounts(Map<String, PlayCount> filePlayCounts, Map<Pair<String, String>, PlayCount> albumPlayCounts) {
+        if (!filePlayCounts.isEmpty()) {
+            List<Object[]> args = new ArrayList<>();
+            for (Map.Entry<String, PlayCount> entry : filePlayCounts.entrySet()) {
+                args.add(new Object[]{entry.getValue().getCount(), entry.getValue().getLastPlayed(), entry.getKey()});
+            }
+            getJdbcTemplate().batchUpdate("update media_file set play_count=play_count+?, last_played=? where path=?", args);
+        }
+        if (!albumPlayCounts.isEmpty()) {
+            List<Object[]> args = new ArrayList<>();
+            for (Map.Entry<Pair<String, String>, PlayCount> entry : albumPlayCounts.entrySet()) {
+                args.add(new Object[]{entry.getValue().getCount(), entry.getValue().getLastPlayed(),
+                                      entry.getKey().getLeft(), entry.getKey().getRight()});
+            }
+            getJdbcTemplate().batchUpdate("update album set play_count=play_count+?, last_played=? where artist=? and name=?", args);
+        }
+    }
+
     private MediaFile getMusicFileInfo(String path) {
         return queryOne("select play_count, last_played, comment from music_file_info where path=?", musicFileInfoRowMapper, path);
     }
@@ -387,6 +443,36 @@ public class MediaFileDao extends AbstractDao {
                           rowMapper, args);
     }
 
+    /**
+     * Returns songs which changed after the given date, ordered by ID.
+     * Pages are selected by key, i.e., by the ID of the last song of the previous page, so that they
+     * stay consistent while the library changes.
+     *
+     * @param since        Only return songs changed after this date, or all songs if <code>null</code>.
+     * @param afterId      Only return songs with a greater ID.
+     * @param count        Maximum number of songs to return.
+     * @param musicFolders Only return songs in these folders.
+     * @return Songs in ascending order of ID.
+     */
+    public List<MediaFile> getSongsChangedSince(Date since, int afterId, int count, List<MusicFolder> musicFolders) {
+        if (musicFolders.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Object> args = new HashMap<>();
+        args.put("types", Arrays.asList(MediaFile.MediaType.MUSIC.name(), MediaFile.MediaType.PODCAST.name(), MediaFile.MediaType.AUDIOBOOK.name()));
+        args.put("folders", MusicFolder.toPathList(musicFolders));
+        args.put("afterId", afterId);
+        args.put("count", count);
+        String changed = "";
+        if (since != null) {
+            args.put("since", since);
+            changed = "and changed > :since ";
+        }
+        return namedQuery("select " + QUERY_COLUMNS + " from media_file where type in (:types) and present " +
+                          "and folder in (:folders) " + changed + "and id > :afterId order by id limit :count",
+                          rowMapper, args);
+    }
+
     public List<MediaFile> getSongsByArtist(String artist, int offset, int count) {
         return query("select " + QUERY_COLUMNS
                      + " from media_file where type in (?,?,?) and artist=? and present limit ? offset ?",
@@ -427,10 +513,7 @@ public class MediaFileDao extends AbstractDao {
         args.put("username", username);
         args.put("count", count);
         args.put("offset", offset);
-        return namedQuery("select " + prefix(QUERY_COLUMNS, "media_file") + " from starred_media_file, media_file where media_file.id = starred_media_file.media_file_id and " +
-                          "media_file.present and media_file.type = :type and media_file.folder in (:folders) and starred_media_file.username = :username " +
-                          "order by starred_media_file.created desc limit :count offset :offset",
-                          rowMapper, args);
+        return namedQuery(STARRED_ALBUMS_QUERY, rowMapper, args);
     }
 
     /**
@@ -453,12 +536,7 @@ public class MediaFileDao extends AbstractDao {
         args.put("username", username);
         args.put("count", count);
         args.put("offset", offset);
-        return namedQuery("select " + prefix(QUERY_COLUMNS, "media_file") + " from starred_media_file, media_file " +
-                          "where media_file.id = starred_media_file.media_file_id and " +
-                          "media_file.present and media_file.type = :type and starred_media_file.username = :username and " +
-                          "media_file.folder in (:folders) " +
-                          "order by starred_media_file.created desc limit :count offset :offset",
-                          rowMapper, args);
+        return namedQuery(STARRED_DIRECTORIES_QUERY, rowMapper, args);
     }
 
     /**
@@ -481,19 +559,26 @@ public class MediaFileDao extends AbstractDao {
         args.put("username", username);
         args.put("count", count);
         args.put("offset", offset);
-        return namedQuery("select " + prefix(QUERY_COLUMNS, "media_file") + " from starred_media_file, media_file where media_file.id = starred_media_file.media_file_id and " +
-                          "media_file.present and media_file.type in (:types) and starred_media_file.username = :username and " +
-                          "media_file.folder in (:folders) " +
-                          "order by starred_media_file.created desc limit :count offset :offset",
-                          rowMapper, args);
+        return namedQuery(STARRED_FILES_QUERY, rowMapper, args);
     }
 
-    public List<MediaFile> getRandomSongs(RandomSearchCriteria criteria, final String username) {
-        if (criteria.getMusicFolders().isEmpty()) {
+    /**
+     * Returns the songs among the given candidates that match the criteria.
+     * Candidates are drawn at random from the search index, which does not hold
+     * per-user data such as play count, rating or starred state.
+     *
+     * @param ids          Ids of the candidate songs.
+     * @param criteria     Random search criteria.
+     * @param username     Username used for starred and rating conditions.
+     * @return The matching songs, in no particular order.
+     */
+    public List<MediaFile> getRandomSongCandidates(List<Integer> ids, RandomSearchCriteria criteria, final String username) {
+        if (ids.isEmpty() || criteria.getMusicFolders().isEmpty()) {
             return Collections.emptyList();
         }
 
         Map<String, Object> args = new HashMap<>();
+        args.put("ids", ids);
         args.put("folders", MusicFolder.toPathList(criteria.getMusicFolders()));
         args.put("username", username);
         args.put("fromYear", criteria.getFromYear());
@@ -512,7 +597,7 @@ public class MediaFileDao extends AbstractDao {
         boolean joinAlbumRating = (criteria.getMinAlbumRating() != null || criteria.getMaxAlbumRating() != null);
         boolean joinStarred = (criteria.isShowStarredSongs() ^ criteria.isShowUnstarredSongs());
 
-        String query = "select " + prefix(QUERY_COLUMNS, "media_file") + " from media_file ";
+        String query = RANDOM_SONG_CANDIDATES_QUERY;
 
         if (joinStarred) {
             query += "left outer join starred_media_file on media_file.id = starred_media_file.media_file_id and starred_media_file.username = :username ";
@@ -523,7 +608,7 @@ public class MediaFileDao extends AbstractDao {
             query += "left outer join user_rating on user_rating.path = media_album.path and user_rating.username = :username ";
         }
 
-        query += " where media_file.present and media_file.type = 'MUSIC'";
+        query += " where media_file.id in (:ids) and media_file.present and media_file.type = 'MUSIC'";
 
         if (!criteria.getMusicFolders().isEmpty()) {
             query += " and media_file.folder in (:folders)";
@@ -589,9 +674,7 @@ public class MediaFileDao extends AbstractDao {
             query += " and starred_media_file.id is null";
         }
 
-        query += " order by rand()";
-
-        return namedQueryWithLimit(query, rowMapper, args, criteria.getCount());
+        return namedQuery(query, rowMapper, args);
     }
 
     public int getAlbumCount(final List<MusicFolder> musicFolders) {
@@ -645,6 +728,34 @@ public class MediaFileDao extends AbstractDao {
         return queryForDate("select created from starred_media_file where media_file_id=? and username=?", null, id, username);
     }
 
+    /**
+     * Returns the dates when the given media files were starred by the user, keyed by media file ID.
+     * Media files which are not starred are not contained in the map.
+     */
+    public Map<Integer, Date> getMediaFileStarredDates(Collection<Integer> ids, String username) {
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> args = new HashMap<>();
+        args.put("username", username);
+        Map<Integer, Date> result = new HashMap<>();
+        namedQueryForEachInChunks("select media_file_id, created from starred_media_file where username=:username and media_file_id in (:ids)",
+                rs -> result.put(rs.getInt(1), rs.getTimestamp(2)), args, "ids", ids);
+        return result;
+    }
+
+    /**
+     * Returns the dates when all media files starred by the user were starred, keyed by media file ID.
+     */
+    public Map<Integer, Date> getMediaFileStarredDates(String username) {
+        Map<String, Object> args = new HashMap<>();
+        args.put("username", username);
+        Map<Integer, Date> result = new HashMap<>();
+        namedQueryForEach("select media_file_id, created from starred_media_file where username=:username",
+                rs -> result.put(rs.getInt(1), rs.getTimestamp(2)), args);
+        return result;
+    }
+
     public void markPresent(String path, Date lastScanned) {
         update("update media_file set present=?, last_scanned = ? where path=?", true, lastScanned, path);
     }
@@ -721,7 +832,8 @@ public class MediaFileDao extends AbstractDao {
                     rs.getTimestamp(28),
                     rs.getBoolean(29),
                     rs.getInt(30),
-                    rs.getString(31));
+                    rs.getString(31),
+                    rs.getTimestamp(32));
         }
     }
 
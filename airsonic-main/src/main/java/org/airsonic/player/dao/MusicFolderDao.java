@@ -42,6 +42,8 @@ public class MusicFolderDao extends AbstractDao {
     private static final Logger LOG = LoggerFactory.getLogger(MusicFolderDao.class);
     private static final String INSERT_COLUMNS = "path, name, enabled, changed";
     private static final String QUERY_COLUMNS = "id, " + INSERT_COLUMNS;
+    private static final String MUSIC_FOLDERS_FOR_USER_QUERY = "select " + prefix(QUERY_COLUMNS, "music_folder") + " from music_folder, music_folder_user " +
+                                                                "where music_folder.id = music_folder_user.music_folder_id and music_folder_user.username = ?";
     private final MusicFolderRowMapper rowMapper = new MusicFolderRowMapper();
     
     @Autowired
@@ -104,9 +106,7 @@ public class MusicFolderDao extends AbstractDao {
     }
 
     public List<MusicFolder> getMusicFoldersForUser(String username) {
-        String sql = "select " + prefix(QUERY_COLUMNS, "music_folder") + " from music_folder, music_folder_user " +
-                     "where music_folder.id = music_folder_user.music_folder_id and music_folder_user.username = ?";
-        return query(sql, rowMapper, username);
+        return query(MUSIC_FOLDERS_FOR_USER_QUERY, rowMapper, username);
     }
 
     public void setMusicFoldersForUser(String username, List<Integer> musicFolderIds) {
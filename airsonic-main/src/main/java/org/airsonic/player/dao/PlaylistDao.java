@@ -39,16 +39,17 @@ public class PlaylistDao extends AbstractDao {
     private static final String INSERT_COLUMNS = "username, is_public, name, comment, file_count, duration_seconds, " +
                                                 "created, changed, imported_from";
     private static final String QUERY_COLUMNS = "id, " + INSERT_COLUMNS;
+    private static final String SHARED_PLAYLISTS_QUERY = "select " + prefix(QUERY_COLUMNS, "playlist") + " from playlist, playlist_user where " +
+                                                          "playlist.id = playlist_user.playlist_id and " +
+                                                          "playlist.username != ? and " +
+                                                          "playlist_user.username = ?";
     private final RowMapper rowMapper = new PlaylistMapper();
 
     public List<Playlist> getReadablePlaylistsForUser(String username) {
 
         List<Playlist> result1 = getWritablePlaylistsForUser(username);
         List<Playlist> result2 = query("select " + QUERY_COLUMNS + " from playlist where is_public", rowMapper);
-        List<Playlist> result3 = query("select " + prefix(QUERY_COLUMNS, "playlist") + " from playlist, playlist_user where " +
-                                       "playlist.id = playlist_user.playlist_id and " +
-                                       "playlist.username != ? and " +
-                                       "playlist_user.username = ?", rowMapper, username, username);
+        List<Playlist> result3 = query(SHARED_PLAYLISTS_QUERY, rowMapper, username, username);
 
         // Put in sorted map to avoid duplicates.
         SortedMap<Integer, Playlist> map = new TreeMap<Integer, Playlist>();
@@ -24,6 +24,7 @@ import org.airsonic.player.domain.MusicFolder;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -110,6 +111,34 @@ public class RatingDao extends AbstractDao {
         }
     }
 
+    /**
+     * Returns the average ratings for the given paths, keyed by path.
+     * Paths without ratings are not contained in the map.
+     */
+    public Map<String, Double> getAverageRatings(Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Double> result = new HashMap<>();
+        namedQueryForEachInChunks("select path, avg(rating) from user_rating where path in (:paths) group by path",
+                rs -> result.put(rs.getString(1), rs.getDouble(2)), Collections.emptyMap(), "paths", paths);
+        return result;
+    }
+
+    /**
+     * Returns the ratings of the given user for the given paths, keyed by path.
+     * Paths without rating are not contained in the map.
+     */
+    public Map<String, Integer> getRatingsForUser(String username, Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> result = new HashMap<>();
+        namedQueryForEachInChunks("select path, rating from user_rating where username=:username and path in (:paths)",
+                rs -> result.put(rs.getString(1), rs.getInt(2)), Collections.singletonMap("username", username), "paths", paths);
+        return result;
+    }
+
     public int getRatedAlbumCount(final String username, final List<MusicFolder> musicFolders) {
         if (musicFolders.isEmpty()) {
             return 0;
@@ -30,7 +30,9 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Provides user-related database services.
@@ -157,19 +159,37 @@ public class UserDao extends AbstractDao {
     }
 
     /**
-     * Updates the given user.
+     * Updates the given user. The byte counts are not updated, since they only change
+     * through {@link #addUserByteCounts}.
      *
      * @param user The user to update.
      */
     public void updateUser(User user) {
-        String sql = "update " + getUserTable() + " set password=?, email=?, ldap_authenticated=?, bytes_streamed=?, bytes_downloaded=?, bytes_uploaded=? " +
-                "where username=?";
+        String sql = "update " + getUserTable() + " set password=?, email=?, ldap_authenticated=? where username=?";
         getJdbcTemplate().update(sql, encrypt(user.getPassword()), user.getEmail(), user.isLdapAuthenticated(),
-                user.getBytesStreamed(), user.getBytesDownloaded(), user.getBytesUploaded(),
                 user.getUsername());
         writeRoles(user);
     }
 
+    /**
+     * Adds to the byte counts of the given users, in a single batch.
+     *
+     * @param byteCounts The bytes streamed, downloaded and uploaded to add, by username.
+     */
+    public void addUserByteCounts(Map<String, long[]> byteCounts) {
+        if (byteCounts.isEmpty()) {
+            return;
+        }
+        String sql = "update " + getUserTable() + " set bytes_streamed=bytes_streamed+?, bytes_downloaded=bytes_downloaded+?, " +
+                "bytes_uploaded=bytes_uploaded+? where username=?";
+        List<Object[]> args = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : byteCounts.entrySet()) {
+            long[] counts = entry.getValue();
+            args.add(new Object[]{counts[0], counts[1], counts[2], entry.getKey()});
+        }
+        getJdbcTemplate().batchUpdate(sql, args);
+    }
+
     /**
      * Returns the name of the roles for the given user.
      *
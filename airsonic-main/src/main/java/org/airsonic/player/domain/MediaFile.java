@@ -27,6 +27,7 @@ import org.apache.commons.io.FilenameUtils;
 import java.io.File;
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * A media file (audio, video or directory) with an assortment of its meta data.
@@ -56,6 +57,7 @@ public class MediaFile {
     private Integer width;
     private Integer height;
     private String coverArtPath;
+    private Date coverArtChanged;
     private String parentPath;
     private int playCount;
     private Date lastPlayed;
@@ -73,7 +75,7 @@ public class MediaFile {
                      String albumName, String artist, String albumArtist, Integer discNumber, Integer trackNumber, Integer year, String genre, Integer bitRate,
                      boolean variableBitRate, Integer durationSeconds, Long fileSize, Integer width, Integer height, String coverArtPath,
                      String parentPath, int playCount, Date lastPlayed, String comment, Date created, Date changed, Date lastScanned,
-                     Date childrenLastUpdated, boolean present, int version, String musicBrainzReleaseId) {
+                     Date childrenLastUpdated, boolean present, int version, String musicBrainzReleaseId, Date coverArtChanged) {
         this.id = id;
         this.path = path;
         this.folder = folder;
@@ -105,6 +107,7 @@ public class MediaFile {
         this.present = present;
         this.version = version;
         this.musicBrainzReleaseId = musicBrainzReleaseId;
+        this.coverArtChanged = coverArtChanged;
     }
 
     public MediaFile() {
@@ -338,6 +341,17 @@ public class MediaFile {
         this.coverArtPath = coverArtPath;
     }
 
+    /**
+     * Returns when the cover art file was last modified, as of the last scan.
+     */
+    public Date getCoverArtChanged() {
+        return coverArtChanged;
+    }
+
+    public void setCoverArtChanged(Date coverArtChanged) {
+        this.coverArtChanged = coverArtChanged;
+    }
+
 
     public String getParentPath() {
         return parentPath;
@@ -453,6 +467,15 @@ public class MediaFile {
         return coverArtPath == null ? null : new File(coverArtPath);
     }
 
+    /**
+     * Returns a token which changes whenever the cover art of this directory (or the frames of this video)
+     * may have changed, including when the cover art file is overwritten or retagged in place. Used to
+     * version cover art URLs, so that they can be cached as immutable. Derived from the scanned data only.
+     */
+    public String getCoverArtVersion() {
+        return Integer.toHexString(Objects.hash(coverArtPath, coverArtChanged, changed));
+    }
+
     @Override
     public String toString() {
         return getName();
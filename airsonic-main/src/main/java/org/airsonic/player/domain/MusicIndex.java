@@ -23,6 +23,7 @@ import java.io.Serializable;
 import java.text.CollationKey;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -154,7 +155,7 @@ public class MusicIndex implements Serializable {
         }
 
         public List<MediaFile> getMediaFiles() {
-            return mediaFiles;
+            return Collections.unmodifiableList(mediaFiles);
         }
     }
 
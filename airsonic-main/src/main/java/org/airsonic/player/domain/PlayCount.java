@@ -0,0 +1,59 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.domain;
+
+import java.util.Date;
+
+/**
+ * A number of plays not yet saved, and the date of the latest one.
+ *
+ * @see org.airsonic.player.service.MediaFileService#incrementPlayCount(MediaFile)
+ */
+public class PlayCount {
+
+    private int count;
+    private Date lastPlayed;
+
+    public PlayCount() {
+    }
+
+    public PlayCount(int count, Date lastPlayed) {
+        this.count = count;
+        this.lastPlayed = lastPlayed;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public Date getLastPlayed() {
+        return lastPlayed;
+    }
+
+    /**
+     * Adds the given plays to this one.
+     */
+    public void add(PlayCount playCount) {
+        count += playCount.count;
+        if (lastPlayed == null || playCount.lastPlayed.after(lastPlayed)) {
+            lastPlayed = playCount.lastPlayed;
+        }
+    }
+}
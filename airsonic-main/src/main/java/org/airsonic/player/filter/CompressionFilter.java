@@ -0,0 +1,328 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.filter;
+
+import org.apache.commons.lang.StringUtils;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses textual responses (XML, JSON, HTML, scripts and style sheets) with gzip,
+ * if the client accepts it.
+ * <p>
+ * Whether a response is compressed is decided by its content type when the body is first
+ * written, so media streams and images pass through untouched. Range requests are never compressed.
+ */
+public class CompressionFilter implements Filter {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+
+        if (request.getHeader("Range") != null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        CompressingResponseWrapper wrapper = new CompressingResponseWrapper(response, acceptsGzip(request));
+        try {
+            chain.doFilter(request, wrapper);
+        } finally {
+            wrapper.finish();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : StringUtils.split(acceptEncoding, ',')) {
+            String name = StringUtils.substringBefore(coding, ";").trim();
+            String quality = StringUtils.substringAfter(coding, "q=").trim();
+            if (("gzip".equalsIgnoreCase(name) || "*".equals(name)) && !quality.matches("0(\\.0*)?")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = StringUtils.substringBefore(contentType, ";").trim().toLowerCase();
+        return type.startsWith("text/")
+               || type.endsWith("/json") || type.endsWith("+json")
+               || type.endsWith("/xml") || type.endsWith("+xml")
+               || type.endsWith("/javascript") || type.endsWith("/x-javascript");
+    }
+
+    /**
+     * Holds back the content length of compressed responses, and writes their body through gzip.
+     */
+    private static class CompressingResponseWrapper extends HttpServletResponseWrapper {
+
+        private final boolean acceptsGzip;
+        private long contentLength = -1;
+        private ServletOutputStream outputStream;
+        private CompressingOutputStream compressingOutputStream;
+        private PrintWriter writer;
+
+        CompressingResponseWrapper(HttpServletResponse response, boolean acceptsGzip) {
+            super(response);
+            this.acceptsGzip = acceptsGzip;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called.");
+            }
+            return getStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (outputStream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called.");
+                }
+                writer = new PrintWriter(new OutputStreamWriter(getStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        private ServletOutputStream getStream() throws IOException {
+            if (outputStream == null) {
+                boolean compress = false;
+                if (isCompressible(getContentType()) && !containsHeader("Content-Encoding")) {
+                    addHeader("Vary", "Accept-Encoding");
+                    compress = acceptsGzip;
+                }
+                if (compress) {
+                    compressingOutputStream = new CompressingOutputStream(this, super.getOutputStream());
+                    outputStream = compressingOutputStream;
+                } else {
+                    if (contentLength >= 0) {
+                        super.setContentLengthLong(contentLength);
+                    }
+                    outputStream = super.getOutputStream();
+                }
+            }
+            return outputStream;
+        }
+
+        private boolean isCompressing() {
+            return compressingOutputStream != null;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            if (outputStream == null) {
+                contentLength = len;
+            } else if (!isCompressing()) {
+                super.setContentLengthLong(len);
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                setContentLengthLong(value);
+            } else {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                setContentLengthLong(value);
+            } else {
+                super.addIntHeader(name, value);
+            }
+        }
+
+        /**
+         * Also forgets whether the response is compressed, to be decided again by the new content type.
+         */
+        @Override
+        public void reset() {
+            super.reset();
+            contentLength = -1;
+            outputStream = null;
+            compressingOutputStream = null;
+            writer = null;
+        }
+
+        /**
+         * Also starts the compressed stream over, as its header was discarded along with the buffer.
+         */
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (isCompressing()) {
+                compressingOutputStream.restart();
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            } else if (outputStream != null) {
+                outputStream.flush();
+            }
+            super.flushBuffer();
+        }
+
+        /**
+         * Writes what remains of the response body, including the gzip trailer.
+         */
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (isCompressing()) {
+                compressingOutputStream.finish();
+            } else if (outputStream == null && contentLength >= 0) {
+                super.setContentLengthLong(contentLength);
+            }
+        }
+    }
+
+    /**
+     * Compresses everything written to it. Nothing, not even the gzip header or the
+     * <code>Content-Encoding</code> header, is written until the first byte of the body,
+     * so that empty responses (e.g., "304 Not Modified") stay empty.
+     */
+    private static class CompressingOutputStream extends ServletOutputStream {
+
+        private final HttpServletResponse response;
+        private final ServletOutputStream out;
+        private GZIPOutputStream gzip;
+
+        CompressingOutputStream(HttpServletResponse response, ServletOutputStream out) {
+            this.response = response;
+            this.out = out;
+        }
+
+        private GZIPOutputStream getGzip() throws IOException {
+            if (gzip == null) {
+                response.setHeader("Content-Encoding", "gzip");
+                gzip = new GZIPOutputStream(out, BUFFER_SIZE, true);
+            }
+            return gzip;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            getGzip().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                getGzip().write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (gzip != null) {
+                gzip.flush();
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            out.close();
+        }
+
+        void finish() throws IOException {
+            if (gzip != null) {
+                gzip.finish();
+            }
+        }
+
+        /**
+         * Discards what has been compressed so far, to be called when the response buffer is reset.
+         * As long as nothing has been sent, the body can be written again, from the gzip header on.
+         */
+        void restart() {
+            gzip = null;
+        }
+
+        @Override
+        public boolean isReady() {
+            return out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            out.setWriteListener(writeListener);
+        }
+    }
+}
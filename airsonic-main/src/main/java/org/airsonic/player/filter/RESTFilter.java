@@ -21,6 +21,7 @@ package org.airsonic.player.filter;
 
 import org.airsonic.player.controller.JAXBWriter;
 import org.airsonic.player.controller.SubsonicRESTController;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.ServletRequestBindingException;
@@ -30,6 +31,8 @@ import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import java.io.IOException;
+
 /**
  * Intercepts exceptions thrown by RESTController.
  *
@@ -44,13 +47,22 @@ public class RESTFilter implements Filter {
 
     private final JAXBWriter jaxbWriter = new JAXBWriter();
 
-    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) {
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        HttpServletResponse response = (HttpServletResponse) res;
         try {
-            HttpServletResponse response = (HttpServletResponse) res;
             response.setHeader("Access-Control-Allow-Origin", "*");
             chain.doFilter(req, res);
         } catch (Throwable x) {
-            handleException(x, (HttpServletRequest) req, (HttpServletResponse) res);
+            if (!response.isCommitted()) {
+                handleException(x, (HttpServletRequest) req, response);
+            } else if (ExceptionUtils.indexOfType(x, IOException.class) >= 0) {
+                LOG.debug("Failed to write REST response, the client has most likely disconnected: {}", x.toString());
+            } else {
+                // Part of the response has already been sent, so an error response would only be appended to it.
+                // The exception is passed on instead, for the container to abort the connection.
+                LOG.warn("Error in REST API after the response was committed: " + getErrorMessage(x), x);
+                throw x;
+            }
         }
     }
 
@@ -64,6 +76,9 @@ public class RESTFilter implements Filter {
         LOG.warn("Error in REST API: " + msg, x);
 
         try {
+            // Discards what has been written so far, along with headers such as ETag.
+            response.reset();
+            response.setHeader("Access-Control-Allow-Origin", "*");
             jaxbWriter.writeErrorResponse(request, response, code, msg);
         } catch (Exception e) {
             LOG.error("Failed to write error response.", e);
@@ -133,7 +133,7 @@ public class PlayQueueInputStream extends InputStream {
     }
 
     private void populateRandomPlaylist(PlayQueue playQueue) {
-        List<MediaFile> files = searchService.getRandomSongs(playQueue.getRandomSearchCriteria());
+        List<MediaFile> files = searchService.getRandomSongs(playQueue.getRandomSearchCriteria(), player.getUsername());
         playQueue.addFiles(false, files);
         LOG.info("Recreated random playlist with " + playQueue.size() + " songs.");
     }
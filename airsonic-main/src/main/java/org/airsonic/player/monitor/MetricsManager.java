@@ -1,5 +1,6 @@
 package org.airsonic.player.monitor;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.JmxReporter;
 import com.codahale.metrics.MetricRegistry;
 import org.airsonic.player.service.ApacheCommonsConfigurationService;
@@ -72,6 +73,28 @@ public class MetricsManager {
         return timer(ref.getClass(),name);
     }
 
+    /**
+     * Marks the occurrence of an event in a meter whose name is based on a class name and a
+     * qualified name.
+     */
+    public void mark(Class clazz, String name) {
+        if (metricsActivatedByConfiguration()) {
+            metrics.meter(MetricRegistry.name(clazz, name)).mark();
+        }
+    }
+
+    /**
+     * Registers a gauge whose name is based on a class name and a qualified name,
+     * replacing any gauge previously registered with the same name.
+     */
+    public <T> void gauge(Class clazz, String name, Gauge<T> gauge) {
+        if (metricsActivatedByConfiguration()) {
+            String metricName = MetricRegistry.name(clazz, name);
+            metrics.remove(metricName);
+            metrics.register(metricName, gauge);
+        }
+    }
+
     /**
      * Initiate a {@link TimerBuilder} using a condition.
      * If the condition is false, a void {@link Timer} will finally be built thus
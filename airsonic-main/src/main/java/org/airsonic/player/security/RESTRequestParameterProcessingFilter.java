@@ -46,6 +46,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Performs authentication based on credentials being present in the HTTP request parameters. Also checks
@@ -55,6 +57,9 @@ import java.io.IOException;
  * The REST protocol version should be set in parameter "v".
  * <p/>
  * The password can either be in plain text or be UTF-8 hexencoded preceded by "enc:".
+ * <p/>
+ * Successful authentications are remembered for a few minutes by username and credentials (token and salt,
+ * or a hash of the password), so that clients making many requests in a row are only authenticated once.
  *
  * @author Sindre Mehus
  */
@@ -148,6 +153,20 @@ public class RESTRequestParameterProcessingFilter implements Filter {
             return null;
         }
 
+        List<String> cacheKey = null;
+        if (salt != null && token != null) {
+            cacheKey = Arrays.asList(username, token, salt);
+        } else if (password != null) {
+            cacheKey = Arrays.asList(username, DigestUtils.sha256Hex(password));
+        }
+        if (cacheKey != null) {
+            Authentication cachedAuth = securityService.getRestAuthentication(cacheKey);
+            if (cachedAuth != null) {
+                SecurityContextHolder.getContext().setAuthentication(copyAuthentication(httpRequest, cachedAuth));
+                return null;
+            }
+        }
+
         if (salt != null && token != null) {
             User user = securityService.getUserByName(username);
             if (user == null) {
@@ -167,6 +186,7 @@ public class RESTRequestParameterProcessingFilter implements Filter {
             try {
                 Authentication authResult = authenticationManager.authenticate(authRequest);
                 SecurityContextHolder.getContext().setAuthentication(authResult);
+                securityService.putRestAuthentication(cacheKey, authResult);
                 return null;
             } catch (AuthenticationException x) {
                 eventPublisher.publishEvent(new AuthenticationFailureBadCredentialsEvent(authRequest, x));
@@ -177,6 +197,16 @@ public class RESTRequestParameterProcessingFilter implements Filter {
         return SubsonicRESTController.ErrorCode.MISSING_PARAMETER;
     }
 
+    /**
+     * Returns a remembered authentication with the details (e.g., remote address) of the current request.
+     */
+    private Authentication copyAuthentication(HttpServletRequest httpRequest, Authentication authentication) {
+        UsernamePasswordAuthenticationToken result = new UsernamePasswordAuthenticationToken(
+                authentication.getPrincipal(), authentication.getCredentials(), authentication.getAuthorities());
+        result.setDetails(authenticationDetailsSource.buildDetails(httpRequest));
+        return result;
+    }
+
     public static String decrypt(String s) {
         if (s == null) {
             return null;
@@ -39,16 +39,27 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+
 import java.io.IOException;
 import java.net.URI;
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Provides services for "audioscrobbling", which is the process of
  * registering what songs are played at www.last.fm.
  * <p/>
  * See http://www.last.fm/api/submissions
+ * <p/>
+ * Registrations are queued per user and sent by a small pool of threads. If Last.fm cannot be reached,
+ * the registrations of that user are retried later, with an increasing delay, without holding up other users.
  *
  * @author Sindre Mehus
  */
@@ -57,9 +68,19 @@ public class AudioScrobblerService {
 
     private static final Logger LOG = LoggerFactory.getLogger(AudioScrobblerService.class);
     private static final int MAX_PENDING_REGISTRATION = 2000;
-
-    private RegistrationThread thread;
-    private final LinkedBlockingQueue<RegistrationData> queue = new LinkedBlockingQueue<RegistrationData>();
+    private static final int REGISTRATION_THREAD_COUNT = 3;
+    private static final long MIN_RETRY_DELAY_SECONDS = 60L;
+    private static final long MAX_RETRY_DELAY_SECONDS = 3600L;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30L;
+
+    private final AtomicInteger pendingRegistrationCount = new AtomicInteger();
+    private final ConcurrentMap<String, UserRegistrationQueue> queues = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(REGISTRATION_THREAD_COUNT, r -> {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setName("AudioScrobbler Registration");
+        t.setDaemon(true);
+        return t;
+    });
 
     @Autowired
     private SettingsService settingsService;
@@ -77,36 +98,43 @@ public class AudioScrobblerService {
      * @param submission Whether this is a submission or a now playing notification.
      * @param time       Event time, or {@code null} to use current time.
      */
-    public synchronized void register(MediaFile mediaFile, String username, boolean submission, Date time) {
-
-        if (thread == null) {
-            thread = new RegistrationThread();
-            thread.start();
+    public void register(MediaFile mediaFile, String username, boolean submission, Date time) {
+        if (mediaFile == null || mediaFile.isVideo()) {
+            return;
         }
 
-        if (queue.size() >= MAX_PENDING_REGISTRATION) {
+        if (pendingRegistrationCount.incrementAndGet() > MAX_PENDING_REGISTRATION) {
+            pendingRegistrationCount.decrementAndGet();
             LOG.warn("Last.fm scrobbler queue is full. Ignoring " + mediaFile);
             return;
         }
 
-        RegistrationData registrationData = createRegistrationData(mediaFile, username, submission, time);
-        if (registrationData == null) {
-            return;
-        }
+        Registration registration = new Registration(mediaFile, submission, time == null ? new Date() : time);
+        queues.computeIfAbsent(username, UserRegistrationQueue::new).add(registration);
+    }
 
+    /**
+     * Sends the queued registrations before shutting down, waiting for them at most
+     * {@value #SHUTDOWN_TIMEOUT_SECONDS} seconds. Retries after network errors are dropped.
+     */
+    @PreDestroy
+    public void destroy() {
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.shutdown();
         try {
-            queue.put(registrationData);
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
         } catch (InterruptedException x) {
-            LOG.warn("Interrupted while queuing Last.fm scrobble.", x);
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (pendingRegistrationCount.get() > 0) {
+            LOG.warn("Dropped " + pendingRegistrationCount.get() + " pending Last.fm registrations on shutdown.");
         }
     }
 
     private RegistrationData createRegistrationData(MediaFile mediaFile, String username, boolean submission, Date time) {
-
-        if (mediaFile == null || mediaFile.isVideo()) {
-            return null;
-        }
-
         UserSettings userSettings = settingsService.getUserSettings(username);
         if (!userSettings.isLastFmEnabled() || userSettings.getLastFmUsername() == null || userSettings.getLastFmPassword() == null) {
             return null;
@@ -262,7 +290,10 @@ public class AudioScrobblerService {
         return executeRequest(request);
     }
 
-    private String[] executeRequest(HttpUriRequest request) throws IOException {
+    /**
+     * Sends the given request to Last.fm, and returns the lines of the response.
+     */
+    String[] executeRequest(HttpUriRequest request) throws IOException {
 
         try (CloseableHttpClient client = HttpClients.createDefault()) {
             ResponseHandler<String> responseHandler = new BasicResponseHandler();
@@ -276,39 +307,82 @@ public class AudioScrobblerService {
         this.settingsService = settingsService;
     }
 
-    private class RegistrationThread extends Thread {
-        private RegistrationThread() {
-            super("AudioScrobbler Registration");
+    /**
+     * The registrations of a user, sent in order by one thread at a time.
+     */
+    private class UserRegistrationQueue {
+        private final String username;
+        private final Deque<Registration> registrations = new ArrayDeque<>();
+        private boolean running;
+        private long retryDelaySeconds;
+
+        private UserRegistrationQueue(String username) {
+            this.username = username;
         }
 
-        @Override
-        public void run() {
-            while (true) {
-                RegistrationData registrationData = null;
+        private synchronized void add(Registration registration) {
+            registrations.add(registration);
+            if (!running) {
                 try {
-                    registrationData = queue.take();
-                    scrobble(registrationData);
+                    executor.execute(this::run);
+                    running = true;
+                } catch (RejectedExecutionException x) {
+                    // Shutting down; counted as dropped.
+                    LOG.debug("Last.fm registration after shutdown: " + registration.mediaFile);
+                }
+            }
+        }
+
+        private synchronized Registration next() {
+            Registration registration = registrations.peek();
+            if (registration == null) {
+                running = false;
+            }
+            return registration;
+        }
+
+        private synchronized void remove() {
+            registrations.poll();
+        }
+
+        private synchronized int size() {
+            return registrations.size();
+        }
+
+        private void run() {
+            Registration registration;
+            while ((registration = next()) != null) {
+                try {
+                    scrobble(createRegistrationData(registration.mediaFile, username, registration.submission, registration.time));
+                    retryDelaySeconds = 0L;
                 } catch (IOException x) {
-                    handleNetworkError(registrationData, x);
+                    retryDelaySeconds = Math.max(MIN_RETRY_DELAY_SECONDS, Math.min(retryDelaySeconds * 2, MAX_RETRY_DELAY_SECONDS));
+                    LOG.info("Last.fm registration for " + registration.mediaFile.getTitle() + " encountered network error. " +
+                             "Will try again in " + retryDelaySeconds + " seconds. In queue for " + username + ": " + size(), x);
+                    try {
+                        executor.schedule(this::run, retryDelaySeconds, TimeUnit.SECONDS);
+                    } catch (RejectedExecutionException e) {
+                        LOG.debug("Not retrying Last.fm registrations for " + username + " after shutdown.");
+                    }
+                    return;
                 } catch (Exception x) {
                     LOG.warn("Error in Last.fm registration.", x);
                 }
+                remove();
+                pendingRegistrationCount.decrementAndGet();
             }
         }
+    }
 
-        private void handleNetworkError(RegistrationData registrationData, IOException x) {
-            try {
-                queue.put(registrationData);
-                LOG.info("Last.fm registration for " + registrationData.title +
-                         " encountered network error.  Will try again later. In queue: " + queue.size(), x);
-            } catch (InterruptedException e) {
-                LOG.error("Failed to reschedule Last.fm registration for " + registrationData.title, e);
-            }
-            try {
-                sleep(60L * 1000L);  // Wait 60 seconds.
-            } catch (InterruptedException e) {
-                LOG.error("Failed to sleep after Last.fm registration failure for " + registrationData.title, e);
-            }
+    private static class Registration {
+        private final MediaFile mediaFile;
+        private final boolean submission;
+        private final Date time;
+
+        private Registration(MediaFile mediaFile, boolean submission, Date time) {
+            this.mediaFile = mediaFile;
+            this.submission = submission;
+            this.time = time;
         }
     }
 
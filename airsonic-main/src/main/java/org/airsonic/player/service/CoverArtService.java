@@ -0,0 +1,1089 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.service;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.airsonic.player.controller.CoverArtController;
+import org.airsonic.player.dao.AlbumDao;
+import org.airsonic.player.dao.ArtistDao;
+import org.airsonic.player.domain.*;
+import org.airsonic.player.service.metadata.JaudiotaggerParser;
+import org.airsonic.player.util.FileUtil;
+import org.airsonic.player.util.StringUtil;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.airsonic.player.controller.CoverArtController.ALBUM_COVERART_PREFIX;
+import static org.airsonic.player.controller.CoverArtController.ARTIST_COVERART_PREFIX;
+import static org.airsonic.player.controller.CoverArtController.PLAYLIST_COVERART_PREFIX;
+import static org.airsonic.player.controller.CoverArtController.PODCAST_COVERART_PREFIX;
+
+/**
+ * Creates and caches scaled cover art images (thumbnails).
+ * <p>
+ * Thumbnails are created on first request, or, for albums and artists, in the background after a scan.
+ *
+ * @see CoverArtController
+ */
+@Service
+public class CoverArtService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CoverArtService.class);
+
+    /**
+     * Sizes the thumbnails of albums and artists are created in after a scan.
+     */
+    private static final CoverArtScheme[] PREGENERATED_SCHEMES = {CoverArtScheme.SMALL, CoverArtScheme.MEDIUM, CoverArtScheme.LARGE};
+
+    /**
+     * Height of the video frames all video thumbnails are scaled from; the largest size served by default.
+     */
+    private static final int VIDEO_FRAME_HEIGHT = CoverArtScheme.LARGE.getSize() * 2;
+
+    /**
+     * Maximum number of video frames extracted at the same time.
+     */
+    private static final int VIDEO_FRAME_CONCURRENCY = 2;
+
+    @Autowired
+    private MediaFileService mediaFileService;
+    @Autowired
+    private TranscodingService transcodingService;
+    @Autowired
+    private SettingsService settingsService;
+    @Autowired
+    private PlaylistService playlistService;
+    @Autowired
+    private PodcastService podcastService;
+    @Autowired
+    private ArtistDao artistDao;
+    @Autowired
+    private AlbumDao albumDao;
+    @Autowired
+    private JaudiotaggerParser jaudiotaggerParser;
+    @Autowired
+    private Ehcache coverArtCache;
+    private Semaphore semaphore;
+
+    /**
+     * Thumbnails being created, by file.
+     */
+    private final ConcurrentMap<File, CompletableFuture<File>> thumbnailsInProgress = new ConcurrentHashMap<>();
+
+    /**
+     * Video frames being extracted, by file.
+     */
+    private final ConcurrentMap<File, CompletableFuture<File>> videoFramesInProgress = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean pregenerating = new AtomicBoolean();
+    private final ExecutorService pregenerationExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setName("CoverArtService-pregeneration");
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService videoFrameExecutor = Executors.newFixedThreadPool(VIDEO_FRAME_CONCURRENCY, r -> {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setName("CoverArtService-video");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService mosaicExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setName("CoverArtService-mosaic");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    public void init() {
+        semaphore = new Semaphore(settingsService.getCoverArtConcurrency());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        pregenerationExecutor.shutdownNow();
+        mosaicExecutor.shutdownNow();
+        videoFrameExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns the cover art request for the given cover art ID.
+     *
+     * @param id     The cover art ID, e.g., "al-123" for an album, or a media file ID.
+     * @param offset Offset in seconds of the frame to use, for videos.
+     * @return The cover art request, or <code>null</code> if not found.
+     */
+    public CoverArtRequest createCoverArtRequest(String id, int offset) {
+        if (id.startsWith(ALBUM_COVERART_PREFIX)) {
+            return createAlbumCoverArtRequest(Integer.valueOf(id.replace(ALBUM_COVERART_PREFIX, "")));
+        }
+        if (id.startsWith(ARTIST_COVERART_PREFIX)) {
+            return createArtistCoverArtRequest(Integer.valueOf(id.replace(ARTIST_COVERART_PREFIX, "")));
+        }
+        if (id.startsWith(PLAYLIST_COVERART_PREFIX)) {
+            return createPlaylistCoverArtRequest(Integer.valueOf(id.replace(PLAYLIST_COVERART_PREFIX, "")));
+        }
+        if (id.startsWith(PODCAST_COVERART_PREFIX)) {
+            return createPodcastCoverArtRequest(Integer.valueOf(id.replace(PODCAST_COVERART_PREFIX, "")), offset);
+        }
+        return createMediaFileCoverArtRequest(Integer.valueOf(id), offset);
+    }
+
+    private CoverArtRequest createAlbumCoverArtRequest(int id) {
+        Album album = albumDao.getAlbum(id);
+        return album == null ? null : new AlbumCoverArtRequest(album);
+    }
+
+    private CoverArtRequest createArtistCoverArtRequest(int id) {
+        Artist artist = artistDao.getArtist(id);
+        return artist == null ? null : new ArtistCoverArtRequest(artist);
+    }
+
+    private PlaylistCoverArtRequest createPlaylistCoverArtRequest(int id) {
+        Playlist playlist = playlistService.getPlaylist(id);
+        return playlist == null ? null : new PlaylistCoverArtRequest(playlist);
+    }
+
+    private CoverArtRequest createPodcastCoverArtRequest(int id, int offset) {
+        PodcastChannel channel = podcastService.getChannel(id);
+        if (channel == null) {
+            return null;
+        }
+        if (channel.getMediaFileId() == null) {
+            return new PodcastCoverArtRequest(channel);
+        }
+        return createMediaFileCoverArtRequest(channel.getMediaFileId(), offset);
+    }
+
+    private CoverArtRequest createMediaFileCoverArtRequest(int id, int offset) {
+        MediaFile mediaFile = mediaFileService.getMediaFile(id);
+        if (mediaFile == null) {
+            return null;
+        }
+        if (mediaFile.isVideo()) {
+            return new VideoCoverArtRequest(mediaFile, offset);
+        }
+        return new MediaFileCoverArtRequest(mediaFile);
+    }
+
+    /**
+     * Creates the missing or outdated thumbnails of all albums and artists with cover art, in the
+     * standard sizes, so that browsing the library after a scan does not wait for them. Runs in the
+     * background on a single low priority thread. Does nothing if already running.
+     */
+    public void pregenerateThumbnails() {
+        if (!pregenerating.compareAndSet(false, true)) {
+            LOG.info("Thumbnail creation is already running.");
+            return;
+        }
+        pregenerationExecutor.execute(() -> {
+            try {
+                doPregenerateThumbnails();
+            } catch (Throwable x) {
+                LOG.error("Failed to create thumbnails.", x);
+            } finally {
+                pregenerating.set(false);
+            }
+        });
+    }
+
+    private void doPregenerateThumbnails() {
+        List<MusicFolder> musicFolders = settingsService.getAllMusicFolders();
+        List<CoverArtRequest> requests = new ArrayList<>();
+        for (Album album : albumDao.getAlphabeticalAlbums(0, Integer.MAX_VALUE, false, false, musicFolders)) {
+            if (album.getCoverArtPath() != null) {
+                requests.add(new AlbumCoverArtRequest(album));
+            }
+        }
+        for (Artist artist : artistDao.getAlphabetialArtists(0, Integer.MAX_VALUE, musicFolders)) {
+            if (artist.getCoverArtPath() != null) {
+                requests.add(new ArtistCoverArtRequest(artist));
+            }
+        }
+
+        LOG.info("Checking thumbnails of " + requests.size() + " albums and artists.");
+        int checked = 0;
+        int created = 0;
+        for (CoverArtRequest request : requests) {
+            for (CoverArtScheme scheme : PREGENERATED_SCHEMES) {
+                if (Thread.currentThread().isInterrupted()) {
+                    LOG.info("Interrupted thumbnail creation after " + checked + " of " + requests.size() + " albums and artists.");
+                    return;
+                }
+                if (!isCachedImageCurrent(request, scheme.getSize())) {
+                    try {
+                        getCachedImage(request, scheme.getSize());
+                        created++;
+                    } catch (IOException x) {
+                        // Already logged.
+                    }
+                }
+            }
+            checked++;
+            if (checked % 250 == 0) {
+                LOG.info("Checked thumbnails of " + checked + " of " + requests.size() + " albums and artists, created " + created + ".");
+            }
+        }
+        LOG.info("Completed thumbnail creation. Created " + created + " thumbnails for " + requests.size() + " albums and artists.");
+    }
+
+    /**
+     * Returns the scaled image from memory if possible, otherwise from the thumbnail cache directory.
+     * Thumbnails in memory are keyed by last modified time as well, so outdated ones are never returned.
+     * Outdated playlist mosaics, which are served while their replacement is created, are not kept in memory.
+     */
+    public Thumbnail getThumbnail(CoverArtRequest request, int size) throws IOException {
+        String cacheKey = request.getKey() + '\u0000' + size + '\u0000' + request.lastModified();
+        Element element = coverArtCache.get(cacheKey);
+        if (element != null) {
+            return (Thumbnail) element.getObjectValue();
+        }
+
+        File cachedImage = getCachedImage(request, size);
+        long lastModified = cachedImage.lastModified();
+        boolean current = request.lastModified() <= lastModified;
+        Thumbnail thumbnail = new Thumbnail(StringUtil.getMimeType(FilenameUtils.getExtension(cachedImage.getName())),
+                                            Files.readAllBytes(cachedImage.toPath()),
+                                            '"' + DigestUtils.md5Hex(request.getKey() + '\u0000' + size + '\u0000' + lastModified) + '"',
+                                            current);
+        if (current) {
+            coverArtCache.put(new Element(cacheKey, thumbnail));
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Returns the smallest pregenerated thumbnail size that is at least the given size, or the given
+     * size if larger than all of them.
+     */
+    private static int getPregeneratedSize(int size) {
+        for (CoverArtScheme scheme : PREGENERATED_SCHEMES) {
+            if (scheme.getSize() >= size) {
+                return scheme.getSize();
+            }
+        }
+        return size;
+    }
+
+    private File getCachedImageFile(CoverArtRequest request, int size) {
+        String hash = DigestUtils.md5Hex(request.getKey());
+        String encoding = request.getCoverArt() != null ? "jpeg" : "png";
+        return new File(getImageCacheDirectory(size), hash + "." + encoding);
+    }
+
+    private boolean isCachedImageCurrent(CoverArtRequest request, int size) {
+        File cachedImage = getCachedImageFile(request, size);
+        return cachedImage.exists() && request.lastModified() <= cachedImage.lastModified();
+    }
+
+    /**
+     * Returns the thumbnail file, creating it if missing or outdated. Concurrent requests for the same
+     * thumbnail wait for the one creating it, rather than creating it again.
+     */
+    private File getCachedImage(CoverArtRequest request, int size) throws IOException {
+        File cachedImage = getCachedImageFile(request, size);
+        if (isCachedImageCurrent(request, size)) {
+            return cachedImage;
+        }
+
+        // Serve the previous playlist mosaic while the new one is created.
+        if (request instanceof PlaylistCoverArtRequest && cachedImage.exists()) {
+            if (!thumbnailsInProgress.containsKey(cachedImage)) {
+                mosaicExecutor.execute(() -> {
+                    try {
+                        createCachedImageOnce(request, size, cachedImage);
+                    } catch (IOException x) {
+                        LOG.warn("Failed to update mosaic for " + request, x);
+                    }
+                });
+            }
+            return cachedImage;
+        }
+        return createCachedImageOnce(request, size, cachedImage);
+    }
+
+    private File createCachedImageOnce(CoverArtRequest request, int size, File cachedImage) throws IOException {
+        CompletableFuture<File> future = new CompletableFuture<>();
+        CompletableFuture<File> existing = thumbnailsInProgress.putIfAbsent(cachedImage, future);
+        if (existing != null) {
+            return awaitCachedImage(existing, request);
+        }
+        try {
+            // Check again, the thumbnail may have been created since.
+            if (!isCachedImageCurrent(request, size)) {
+                createCachedImage(request, size, cachedImage);
+            }
+            future.complete(cachedImage);
+            return cachedImage;
+        } catch (IOException x) {
+            future.completeExceptionally(x);
+            throw x;
+        } finally {
+            thumbnailsInProgress.remove(cachedImage, future);
+        }
+    }
+
+    private File awaitCachedImage(CompletableFuture<File> future, CoverArtRequest request) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for thumbnail for " + request);
+        } catch (ExecutionException x) {
+            throw new IOException("Failed to create thumbnail for " + request + ". " + x.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Creates the thumbnail in a temporary file, then moves it in place, so that the previous thumbnail
+     * can be read meanwhile. Playlist mosaics do not count against the concurrency limit, since the
+     * album thumbnails they are made of do.
+     */
+    private void createCachedImage(CoverArtRequest request, int size, File cachedImage) throws IOException {
+        String encoding = request.getCoverArt() != null ? "jpeg" : "png";
+        boolean limited = !(request instanceof PlaylistCoverArtRequest);
+        if (limited) {
+            try {
+                semaphore.acquire();
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to create thumbnail for " + request);
+            }
+        }
+        File tmp = null;
+        OutputStream out = null;
+        try {
+            BufferedImage image = request.createImage(size);
+            if (image == null) {
+                throw new Exception("Unable to decode image.");
+            }
+            tmp = File.createTempFile("thumb", ".tmp", cachedImage.getParentFile());
+            out = new FileOutputStream(tmp);
+            writeImage(image, encoding, out);
+            out.close();
+            Files.move(tmp.toPath(), cachedImage.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        } catch (Throwable x) {
+            LOG.warn("Failed to create thumbnail for " + request, x);
+            throw new IOException("Failed to create thumbnail for " + request + ". " + x.getMessage());
+
+        } finally {
+            if (limited) {
+                semaphore.release();
+            }
+            FileUtil.closeQuietly(out);
+            if (tmp != null) {
+                Files.deleteIfExists(tmp.toPath());
+            }
+        }
+    }
+
+    /**
+     * Returns an input stream to the image in the given file.  If the file is an audio file,
+     * the embedded album art is returned.
+     */
+    private InputStream getImageInputStream(File file) throws IOException {
+        return getImageInputStreamWithType(file).getLeft();
+    }
+
+    /**
+     * Returns an input stream to the image in the given file.  If the file is an audio file,
+     * the embedded album art is returned. In addition returns the mime type
+     */
+    public Pair<InputStream, String> getImageInputStreamWithType(File file) throws IOException {
+        if (jaudiotaggerParser.isApplicable(file)) {
+            file = getExtractedArtwork(file);
+        }
+        InputStream is = new FileInputStream(file);
+        String mimeType = StringUtil.getMimeType(FilenameUtils.getExtension(file.getName()));
+        return Pair.of(is, mimeType);
+    }
+
+    /**
+     * Returns the artwork extracted from the given audio file, extracting it if not done since the
+     * file was last modified.
+     */
+    private File getExtractedArtwork(File file) throws IOException {
+        File artwork;
+        try {
+            artwork = jaudiotaggerParser.extractArtwork(file);
+        } catch (Exception e) {
+            LOG.debug("Could not read artwork from file {}", file);
+            throw new IOException("Could not read artwork from " + file, e);
+        }
+        if (artwork == null) {
+            throw new IOException("No artwork in " + file);
+        }
+        return artwork;
+    }
+
+    /**
+     * Returns the frame at the given offset of the given video, extracting it if missing or outdated.
+     * Frames are extracted once, at a fixed size, on a small pool of their own, so that browsing a video
+     * folder does not start a transcoder for every thumbnail.
+     */
+    private File getVideoFrame(VideoCoverArtRequest request) throws IOException {
+        File frame = new File(getImageCacheDirectory("frames"), DigestUtils.md5Hex(request.getKey()) + ".jpeg");
+        if (isVideoFrameCurrent(request, frame)) {
+            return frame;
+        }
+
+        CompletableFuture<File> future = videoFramesInProgress.computeIfAbsent(frame, f -> CompletableFuture.supplyAsync(() -> {
+            try {
+                // Check again, the frame may have been extracted since.
+                if (!isVideoFrameCurrent(request, f)) {
+                    extractVideoFrame(request, f);
+                }
+                return f;
+            } catch (IOException x) {
+                throw new UncheckedIOException(x);
+            }
+        }, videoFrameExecutor));
+        future.whenComplete((result, x) -> videoFramesInProgress.remove(frame, future));
+        return awaitCachedImage(future, request);
+    }
+
+    private static boolean isVideoFrameCurrent(VideoCoverArtRequest request, File frame) {
+        return frame.exists() && request.lastModified() <= frame.lastModified();
+    }
+
+    private void extractVideoFrame(VideoCoverArtRequest request, File frame) throws IOException {
+        int width = VIDEO_FRAME_HEIGHT * 16 / 9;
+        File tmp = File.createTempFile("frame", ".tmp", frame.getParentFile());
+        InputStream in = null;
+        try {
+            in = getImageInputStreamForVideo(request.mediaFile, width, VIDEO_FRAME_HEIGHT, request.offset);
+            Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if (tmp.length() == 0) {
+                throw new IOException("No video frame extracted for " + request);
+            }
+            Files.move(tmp.toPath(), frame.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException x) {
+            throw x;
+        } catch (Exception x) {
+            throw new IOException("Failed to extract video frame for " + request + ". " + x.getMessage(), x);
+        } finally {
+            FileUtil.closeQuietly(in);
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    private InputStream getImageInputStreamForVideo(MediaFile mediaFile, int width, int height, int offset) throws Exception {
+        VideoTranscodingSettings videoSettings = new VideoTranscodingSettings(width, height, offset, 0, false);
+        TranscodingService.Parameters parameters = new TranscodingService.Parameters(mediaFile, videoSettings);
+        String command = settingsService.getVideoImageCommand();
+        parameters.setTranscoding(new Transcoding(null, null, null, null, command, null, null, false));
+        return transcodingService.getTranscodedInputStream(parameters);
+    }
+
+    private File getImageCacheDirectory(int size) {
+        return getImageCacheDirectory(String.valueOf(size));
+    }
+
+    private synchronized File getImageCacheDirectory(String name) {
+        File dir = new File(SettingsService.getAirsonicHome(), "thumbs");
+        dir = new File(dir, name);
+        if (!dir.exists()) {
+            if (dir.mkdirs()) {
+                LOG.info("Created thumbnail cache " + dir);
+            } else {
+                LOG.error("Failed to create thumbnail cache " + dir);
+            }
+        }
+
+        return dir;
+    }
+
+    /**
+     * Scales the given image. Images more than twice as large as requested are first halved with bilinear
+     * resampling (at most once for images decoded by {@link #readImage}), then resampled once with bicubic
+     * interpolation.
+     */
+    public static BufferedImage scale(BufferedImage image, int width, int height) {
+        BufferedImage thumb = image;
+        while (thumb.getWidth() > width * 2 && thumb.getHeight() > height * 2) {
+            thumb = resample(thumb, thumb.getWidth() / 2, thumb.getHeight() / 2, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        return resample(thumb, width, height, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+    }
+
+    private static BufferedImage resample(BufferedImage image, int width, int height, Object interpolation) {
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = result.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2.drawImage(image, 0, 0, width, height, null);
+        g2.dispose();
+        return result;
+    }
+
+    /**
+     * Decodes an image, skipping pixels where the format allows it (e.g., JPEG), so that it is decoded
+     * at about two to four times the given size rather than at full resolution. Large embedded scans
+     * then cost a fraction of the time and memory.
+     *
+     * @return The image, or <code>null</code> if it could not be decoded.
+     */
+    static BufferedImage readImage(InputStream in, int size) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int subsampling = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / (size * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Encodes a thumbnail. JPEG images are written progressive, with the configured quality.
+     */
+    private void writeImage(BufferedImage image, String encoding, OutputStream out) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(encoding);
+        if (!"jpeg".equals(encoding) || !writers.hasNext()) {
+            ImageIO.write(image, encoding, out);
+            return;
+        }
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(Math.max(1, Math.min(100, settingsService.getCoverArtQuality())) / 100.0F);
+            if (param.canWriteProgressive()) {
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    public void setMediaFileService(MediaFileService mediaFileService) {
+        this.mediaFileService = mediaFileService;
+    }
+
+    public void setTranscodingService(TranscodingService transcodingService) {
+        this.transcodingService = transcodingService;
+    }
+
+    public void setSettingsService(SettingsService settingsService) {
+        this.settingsService = settingsService;
+    }
+
+    public void setPlaylistService(PlaylistService playlistService) {
+        this.playlistService = playlistService;
+    }
+
+    public void setArtistDao(ArtistDao artistDao) {
+        this.artistDao = artistDao;
+    }
+
+    public void setAlbumDao(AlbumDao albumDao) {
+        this.albumDao = albumDao;
+    }
+
+    public void setJaudiotaggerParser(JaudiotaggerParser jaudiotaggerParser) {
+        this.jaudiotaggerParser = jaudiotaggerParser;
+    }
+
+    public void setCoverArtCache(Ehcache coverArtCache) {
+        this.coverArtCache = coverArtCache;
+    }
+
+    /**
+     * An encoded, scaled image.
+     */
+    public static class Thumbnail implements Serializable {
+
+        private final String contentType;
+        private final byte[] data;
+        private final String etag;
+        private final boolean current;
+
+        private Thumbnail(String contentType, byte[] data, String etag, boolean current) {
+            this.contentType = contentType;
+            this.data = data;
+            this.etag = etag;
+            this.current = current;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * Returns whether the thumbnail is up to date, rather than a previous one served while it is replaced.
+         */
+        public boolean isCurrent() {
+            return current;
+        }
+    }
+
+    public abstract class CoverArtRequest {
+
+        protected File coverArt;
+
+        private CoverArtRequest() {
+        }
+
+        private CoverArtRequest(String coverArtPath) {
+            this.coverArt = coverArtPath == null ? null : new File(coverArtPath);
+        }
+
+        public File getCoverArt() {
+            return coverArt;
+        }
+
+        public abstract String getKey();
+
+        public abstract long lastModified();
+
+        public BufferedImage createImage(int size) {
+            if (coverArt != null) {
+                InputStream in = null;
+                String reason = null;
+                try {
+                    in = getImageInputStream(coverArt);
+                    if (in == null) {
+                        reason = "getImageInputStream";
+                    }
+                    else {
+                        BufferedImage bimg = readImage(in, size);
+                        if (bimg == null) {
+                            reason = "readImage";
+                        }
+                        else {
+                            return scale(bimg, size, size);
+                        }
+                    }
+                    LOG.warn("Failed to process cover art " + coverArt + ": " + reason + " failed");
+                } catch (Throwable x) {
+                    LOG.warn("Failed to process cover art " + coverArt + ": " + x, x);
+                } finally {
+                    FileUtil.closeQuietly(in);
+                }
+            }
+            return createAutoCover(size, size);
+        }
+
+        protected BufferedImage createAutoCover(int width, int height) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = image.createGraphics();
+            AutoCover autoCover = new AutoCover(graphics, getKey(), getArtist(), getAlbum(), width, height);
+            autoCover.paintCover();
+            graphics.dispose();
+            return image;
+        }
+
+        public abstract String getAlbum();
+
+        public abstract String getArtist();
+    }
+
+    private class ArtistCoverArtRequest extends CoverArtRequest {
+
+        private final Artist artist;
+
+        private ArtistCoverArtRequest(Artist artist) {
+            super(artist.getCoverArtPath());
+            this.artist = artist;
+        }
+
+        @Override
+        public String getKey() {
+            return artist.getCoverArtPath() != null ? artist.getCoverArtPath() : (ARTIST_COVERART_PREFIX + artist.getId());
+        }
+
+        @Override
+        public long lastModified() {
+            return coverArt != null ? coverArt.lastModified() : artist.getLastScanned().getTime();
+        }
+
+        @Override
+        public String getAlbum() {
+            return null;
+        }
+
+        @Override
+        public String getArtist() {
+            return artist.getName();
+        }
+
+        @Override
+        public String toString() {
+            return "Artist " + artist.getId() + " - " + artist.getName();
+        }
+    }
+
+    private class AlbumCoverArtRequest extends CoverArtRequest {
+
+        private final Album album;
+
+        private AlbumCoverArtRequest(Album album) {
+            super(album.getCoverArtPath());
+            this.album = album;
+        }
+
+        @Override
+        public String getKey() {
+            return album.getCoverArtPath() != null ? album.getCoverArtPath() : (ALBUM_COVERART_PREFIX + album.getId());
+        }
+
+        @Override
+        public long lastModified() {
+            return coverArt != null ? coverArt.lastModified() : album.getLastScanned().getTime();
+        }
+
+        @Override
+        public String getAlbum() {
+            return album.getName();
+        }
+
+        @Override
+        public String getArtist() {
+            return album.getArtist();
+        }
+
+        @Override
+        public String toString() {
+            return "Album " + album.getId() + " - " + album.getName();
+        }
+    }
+
+    private class PlaylistCoverArtRequest extends CoverArtRequest {
+
+        private final Playlist playlist;
+
+        private PlaylistCoverArtRequest(Playlist playlist) {
+            super(null);
+            this.playlist = playlist;
+        }
+
+        @Override
+        public String getKey() {
+            return PLAYLIST_COVERART_PREFIX + playlist.getId();
+        }
+
+        @Override
+        public long lastModified() {
+            return playlist.getChanged().getTime();
+        }
+
+        @Override
+        public String getAlbum() {
+            return null;
+        }
+
+        @Override
+        public String getArtist() {
+            return playlist.getName();
+        }
+
+        @Override
+        public String toString() {
+            return "Playlist " + playlist.getId() + " - " + playlist.getName();
+        }
+
+        /**
+         * Creates a mosaic of the first four albums of the playlist, from their thumbnails. Thumbnails
+         * that already exist, e.g., pregenerated ones, are reused, so only the covers of newly added
+         * albums are decoded.
+         */
+        @Override
+        public BufferedImage createImage(int size) {
+            List<MediaFile> albums = getRepresentativeAlbums();
+            if (albums.isEmpty()) {
+                return createAutoCover(size, size);
+            }
+            if (albums.size() < 4) {
+                return getAlbumThumbnail(albums.get(0), size);
+            }
+
+            BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = image.createGraphics();
+
+            int half = size / 2;
+            graphics.drawImage(getAlbumThumbnail(albums.get(0), half), null, 0, 0);
+            graphics.drawImage(getAlbumThumbnail(albums.get(1), half), null, half, 0);
+            graphics.drawImage(getAlbumThumbnail(albums.get(2), half), null, 0, half);
+            graphics.drawImage(getAlbumThumbnail(albums.get(3), half), null, half, half);
+            graphics.dispose();
+            return image;
+        }
+
+        /**
+         * Returns the album thumbnail in the given size, scaled down from the smallest pregenerated
+         * thumbnail that is large enough, so that the album cover itself is usually not decoded.
+         */
+        private BufferedImage getAlbumThumbnail(MediaFile album, int size) {
+            MediaFileCoverArtRequest request = new MediaFileCoverArtRequest(album);
+            try {
+                BufferedImage image = ImageIO.read(getCachedImage(request, getPregeneratedSize(size)));
+                if (image != null) {
+                    return image.getWidth() == size && image.getHeight() == size ? image : scale(image, size, size);
+                }
+            } catch (Throwable x) {
+                LOG.warn("Failed to read thumbnail for " + request + ": " + x, x);
+            }
+            return request.createAutoCover(size, size);
+        }
+
+        private List<MediaFile> getRepresentativeAlbums() {
+            Set<MediaFile> albums = new LinkedHashSet<MediaFile>();
+            for (MediaFile song : playlistService.getFilesInPlaylist(playlist.getId())) {
+                MediaFile album = mediaFileService.getParentOf(song);
+                if (album != null && !mediaFileService.isRoot(album)) {
+                    albums.add(album);
+                }
+            }
+            return new ArrayList<>(albums);
+        }
+    }
+
+    private class PodcastCoverArtRequest extends CoverArtRequest {
+
+        private final PodcastChannel channel;
+
+        PodcastCoverArtRequest(PodcastChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public String getKey() {
+            return PODCAST_COVERART_PREFIX + channel.getId();
+        }
+
+        @Override
+        public long lastModified() {
+            return -1;
+        }
+
+        @Override
+        public String getAlbum() {
+            return null;
+        }
+
+        @Override
+        public String getArtist() {
+            return channel.getTitle() != null ? channel.getTitle() : channel.getUrl();
+        }
+    }
+
+    private class MediaFileCoverArtRequest extends CoverArtRequest {
+
+        private final MediaFile mediaFile;
+        private final MediaFile dir;
+
+        private MediaFileCoverArtRequest(MediaFile mediaFile) {
+            this.mediaFile = mediaFile;
+            dir = mediaFile.isDirectory() ? mediaFile : mediaFileService.getParentOf(mediaFile);
+            coverArt = mediaFileService.getCoverArt(mediaFile);
+        }
+
+        @Override
+        public String getKey() {
+            return coverArt != null ? coverArt.getPath() : dir.getPath();
+        }
+
+        @Override
+        public long lastModified() {
+            return coverArt != null ? coverArt.lastModified() : dir.getChanged().getTime();
+        }
+
+        @Override
+        public String getAlbum() {
+            return dir.getName();
+        }
+
+        @Override
+        public String getArtist() {
+            return dir.getAlbumArtist() != null ? dir.getAlbumArtist() : dir.getArtist();
+        }
+
+        @Override
+        public String toString() {
+            return "Media file " + mediaFile.getId() + " - " + mediaFile;
+        }
+    }
+
+    private class VideoCoverArtRequest extends CoverArtRequest {
+
+        private final MediaFile mediaFile;
+        private final int offset;
+
+        private VideoCoverArtRequest(MediaFile mediaFile, int offset) {
+            this.mediaFile = mediaFile;
+            this.offset = offset;
+        }
+
+        @Override
+        public BufferedImage createImage(int size) {
+            int height;
+            height = size;
+            int width = height * 16 / 9;
+            try {
+                BufferedImage frame = ImageIO.read(getVideoFrame(this));
+                if (frame != null) {
+                    return scale(frame, width, height);
+                }
+                LOG.warn("Failed to process cover art for " + mediaFile + ": {}", frame);
+            } catch (Throwable x) {
+                LOG.warn("Failed to process cover art for " + mediaFile + ": " + x, x);
+            }
+            return createAutoCover(width, height);
+        }
+
+        @Override
+        public String getKey() {
+            return mediaFile.getPath() + "/" + offset;
+        }
+
+        @Override
+        public long lastModified() {
+            return mediaFile.getChanged().getTime();
+        }
+
+        @Override
+        public String getAlbum() {
+            return null;
+        }
+
+        @Override
+        public String getArtist() {
+            return mediaFile.getName();
+        }
+
+        @Override
+        public String toString() {
+            return "Video file " + mediaFile.getId() + " - " + mediaFile;
+        }
+    }
+
+    static class AutoCover {
+
+        private final static int[] COLORS = {0x33B5E5, 0xAA66CC, 0x99CC00, 0xFFBB33, 0xFF4444};
+        private final Graphics2D graphics;
+        private final String artist;
+        private final String album;
+        private final int width;
+        private final int height;
+        private final Color color;
+
+        AutoCover(Graphics2D graphics, String key, String artist, String album, int width, int height) {
+            this.graphics = graphics;
+            this.artist = artist;
+            this.album = album;
+            this.width = width;
+            this.height = height;
+
+            int hash = key.hashCode();
+            int rgb = COLORS[Math.abs(hash) % COLORS.length];
+            this.color = new Color(rgb);
+        }
+
+        public void paintCover() {
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+            graphics.setPaint(color);
+            graphics.fillRect(0, 0, width, height);
+
+            int y = height * 2 / 3;
+            graphics.setPaint(new GradientPaint(0, y, new Color(82, 82, 82), 0, height, Color.BLACK));
+            graphics.fillRect(0, y, width, height / 3);
+
+            graphics.setPaint(Color.WHITE);
+            float fontSize = 3.0f + height * 0.07f;
+            Font font = new Font(Font.SANS_SERIF, Font.BOLD, (int) fontSize);
+            graphics.setFont(font);
+
+            if (album != null) {
+                graphics.drawString(album, width * 0.05f, height * 0.6f);
+            }
+            if (artist != null) {
+                graphics.drawString(artist, width * 0.05f, height * 0.8f);
+            }
+
+            int borderWidth = height / 50;
+            graphics.fillRect(0, 0, borderWidth, height);
+            graphics.fillRect(width - borderWidth, 0, height - borderWidth, height);
+            graphics.fillRect(0, 0, width, borderWidth);
+            graphics.fillRect(0, height - borderWidth, width, height);
+        }
+    }
+}
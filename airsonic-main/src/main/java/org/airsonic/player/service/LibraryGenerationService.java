@@ -0,0 +1,90 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.service;
+
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of changes to the media library and to the user data shown with it,
+ * such as stars, ratings and the transcodings of players.
+ *
+ * The generation is incremented on every such change, so anything derived from the
+ * library (HTTP entity tags, cached listings) is valid as long as the generation it
+ * was derived from is current.
+ *
+ * Play counts and last played dates are not tracked. They change every few seconds while
+ * anyone is listening, which would invalidate everything derived from the library exactly
+ * when the server is busiest. They may thus lag behind until the next change.
+ *
+ * @see #increment()
+ */
+@Service
+public class LibraryGenerationService {
+
+    /*
+     * Starts from the current time rather than from zero,
+     * so that generations handed out before a restart are not reused.
+     */
+    private final AtomicLong generation = new AtomicLong(System.currentTimeMillis());
+
+    /*
+     * Only incremented on changes to the library itself, not to user data.
+     */
+    private final AtomicLong libraryGeneration = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * Returns the current generation.
+     *
+     * @return The current generation.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Returns the current library generation. Unlike {@link #getGeneration()}, it only changes
+     * with the library itself, i.e., when files are scanned or their metadata are edited,
+     * or when music folders change. It suits what is derived from the library alone, such as indexes.
+     *
+     * @return The current library generation.
+     */
+    public long getLibraryGeneration() {
+        return libraryGeneration.get();
+    }
+
+    /**
+     * Invalidates everything derived from the current generation.
+     * To be called whenever user data shown with the library has changed.
+     */
+    public void increment() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Invalidates everything derived from the current generation or library generation.
+     * To be called whenever the library has changed.
+     */
+    public void incrementLibrary() {
+        libraryGeneration.incrementAndGet();
+        generation.incrementAndGet();
+    }
+}
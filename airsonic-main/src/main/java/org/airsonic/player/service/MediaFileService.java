@@ -31,14 +31,21 @@ import org.airsonic.player.service.metadata.MetaDataParserFactory;
 import org.airsonic.player.util.FileUtil;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import java.io.File;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides services for instantiating and caching media files and cover art.
@@ -49,6 +56,8 @@ import java.util.*;
 public class MediaFileService {
 
     private static final Logger LOG = LoggerFactory.getLogger(MediaFileService.class);
+    private static final long PLAY_COUNTS_SAVE_INTERVAL_SECONDS = 5L;
+    private static final int MAX_UNSAVED_PLAY_COUNTS = 1000;
 
     @Autowired
     private Ehcache mediaFileMemoryCache;
@@ -64,8 +73,34 @@ public class MediaFileService {
     private JaudiotaggerParser parser;
     @Autowired
     private MetaDataParserFactory metaDataParserFactory;
+    @Autowired
+    private LibraryGenerationService libraryGenerationService;
     private boolean memoryCacheEnabled = true;
 
+    /*
+     * Plays not yet saved, by media file path. Guarded by itself.
+     */
+    private final Map<String, UnsavedPlay> unsavedPlays = new HashMap<>();
+
+    private final ScheduledExecutorService playCountsExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setName("MediaFileService-playCounts");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    public void init() {
+        playCountsExecutor.scheduleWithFixedDelay(this::savePlayCounts, PLAY_COUNTS_SAVE_INTERVAL_SECONDS,
+                                                  PLAY_COUNTS_SAVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        playCountsExecutor.shutdownNow();
+        savePlayCounts();
+    }
+
     /**
      * Returns a media file instance for the given file.  If possible, a cached value is returned.
      *
@@ -113,6 +148,7 @@ public class MediaFileService {
         // Put in cache and database.
         putInMemoryCache(file, result);
         mediaFileDao.createOrUpdateMediaFile(result);
+        libraryGenerationService.incrementLibrary();
 
         return result;
     }
@@ -149,19 +185,72 @@ public class MediaFileService {
         return getMediaFile(mediaFile.getParentPath());
     }
 
+    /**
+     * Returns the parents of the given media files, keyed by path.
+     * Parents which are not in the memory cache are read from the database with a single query.
+     * Parents to which access is denied are not contained in the map.
+     *
+     * @param mediaFiles The media files.
+     * @return The parents, keyed by path.
+     */
+    public Map<String, MediaFile> getParentsOf(Collection<MediaFile> mediaFiles) {
+        Map<String, MediaFile> result = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (MediaFile mediaFile : mediaFiles) {
+            String path = mediaFile.getParentPath();
+            if (path == null || result.containsKey(path) || missing.contains(path)) {
+                continue;
+            }
+            File file = new File(path);
+            MediaFile parent = getFromMemoryCache(file);
+            if (parent != null) {
+                result.put(path, parent);
+            } else if (securityService.isReadAllowed(file)) {
+                missing.add(path);
+            }
+        }
+        for (MediaFile parent : mediaFileDao.getMediaFiles(missing)) {
+            parent = checkLastModified(parent, settingsService.isFastCacheEnabled());
+            putInMemoryCache(parent.getFile(), parent);
+            result.put(parent.getPath(), parent);
+        }
+        // Not in the database yet
+        for (String path : missing) {
+            if (!result.containsKey(path)) {
+                MediaFile parent = getMediaFile(path);
+                if (parent != null) {
+                    result.put(path, parent);
+                }
+            }
+        }
+        return result;
+    }
+
     private MediaFile checkLastModified(MediaFile mediaFile, boolean useFastCache) {
         if (useFastCache || (mediaFile.getVersion() >= MediaFileDao.VERSION
                 && !settingsService.isIgnoreFileTimestamps()
-                && mediaFile.getChanged().getTime() >= FileUtil.lastModified(mediaFile.getFile()))) {
+                && mediaFile.getChanged().getTime() >= FileUtil.lastModified(mediaFile.getFile())
+                && isCoverArtUnchanged(mediaFile))) {
             LOG.debug("Detected unmodified file (id {}, path {})", mediaFile.getId(), mediaFile.getPath());
             return mediaFile;
         }
         LOG.debug("Updating database file from disk (id {}, path {})", mediaFile.getId(), mediaFile.getPath());
         mediaFile = createMediaFile(mediaFile.getFile());
         mediaFileDao.createOrUpdateMediaFile(mediaFile);
+        libraryGenerationService.incrementLibrary();
         return mediaFile;
     }
 
+    /**
+     * Returns whether the cover art file of the given directory is as scanned. Cover art may be overwritten in
+     * place, without changing the directory.
+     */
+    private static boolean isCoverArtUnchanged(MediaFile mediaFile) {
+        File coverArt = mediaFile.getCoverArtFile();
+        return coverArt == null || (mediaFile.getCoverArtChanged() != null
+                                    && mediaFile.getCoverArtChanged().getTime() >= FileUtil.lastModified(coverArt));
+    }
+
     /**
      * Returns all media files that are children of a given media file.
      *
@@ -347,14 +436,6 @@ public class MediaFileService {
         return children.subList(0, Math.min(count, children.size()));
     }
 
-    /**
-     * Returns random songs matching search criteria.
-     *
-     */
-    public List<MediaFile> getRandomSongs(RandomSearchCriteria criteria, String username) {
-        return mediaFileDao.getRandomSongs(criteria, username);
-    }
-
     /**
      * Removes video files from the given list.
      */
@@ -407,6 +488,7 @@ public class MediaFileService {
         parent.setChildrenLastUpdated(parent.getChanged());
         parent.setPresent(true);
         mediaFileDao.createOrUpdateMediaFile(parent);
+        libraryGenerationService.incrementLibrary();
     }
 
     public boolean includeMediaFile(MediaFile candidate) {
@@ -544,6 +626,7 @@ public class MediaFileService {
                     File coverArt = findCoverArt(children);
                     if (coverArt != null) {
                         mediaFile.setCoverArtPath(coverArt.getPath());
+                        mediaFile.setCoverArtChanged(new Date(FileUtil.lastModified(coverArt)));
                     }
 
                 } else {
@@ -574,6 +657,7 @@ public class MediaFileService {
         mediaFile = createMediaFile(mediaFile.getFile());
         mediaFileDao.createOrUpdateMediaFile(mediaFile);
         mediaFileMemoryCache.remove(mediaFile.getFile());
+        libraryGenerationService.incrementLibrary();
     }
 
     private void putInMemoryCache(File file, MediaFile mediaFile) {
@@ -621,11 +705,13 @@ public class MediaFileService {
         }
 
         // Look for embedded images in audiofiles. (Only check first audio file encountered).
+        // The image is extracted, so that it is not read from the audio file again until the file changes.
         for (File candidate : candidates) {
             if (parser.isApplicable(candidate)) {
-                if (parser.isImageAvailable(getMediaFile(candidate))) {
-                    return candidate;
-                } else {
+                try {
+                    return parser.extractArtwork(candidate) != null ? candidate : null;
+                } catch (Throwable x) {
+                    LOG.warn("Failed to extract cover art from " + candidate, x);
                     return null;
                 }
             }
@@ -680,30 +766,85 @@ public class MediaFileService {
 
     public void updateMediaFile(MediaFile mediaFile) {
         mediaFileDao.createOrUpdateMediaFile(mediaFile);
+        libraryGenerationService.incrementLibrary();
     }
 
     /**
      * Increments the play count and last played date for the given media file and its
      * directory and album.
+     * <p>
+     * Plays are saved in the background every few seconds, so that starting a stream does not wait for
+     * the database. Plays of the same file in between are saved with a single statement. The given
+     * instance is left unchanged, since it may be shared; saved files are removed from the memory cache.
      */
     public void incrementPlayCount(MediaFile file) {
         Date now = new Date();
-        file.setLastPlayed(now);
-        file.setPlayCount(file.getPlayCount() + 1);
-        updateMediaFile(file);
-
-        MediaFile parent = getParentOf(file);
-        if (!isRoot(parent)) {
-            parent.setLastPlayed(now);
-            parent.setPlayCount(parent.getPlayCount() + 1);
-            updateMediaFile(parent);
-        }
-
-        Album album = albumDao.getAlbum(file.getAlbumArtist(), file.getAlbumName());
-        if (album != null) {
-            album.setLastPlayed(now);
-            album.setPlayCount(album.getPlayCount() + 1);
-            albumDao.createOrUpdateAlbum(album);
+        boolean full;
+        synchronized (unsavedPlays) {
+            UnsavedPlay play = unsavedPlays.computeIfAbsent(file.getPath(), k -> new UnsavedPlay(file));
+            play.playCount.add(new PlayCount(1, now));
+            full = unsavedPlays.size() >= MAX_UNSAVED_PLAY_COUNTS;
+        }
+        if (full) {
+            playCountsExecutor.execute(this::savePlayCounts);
+        }
+    }
+
+    /**
+     * Saves the plays added by {@link #incrementPlayCount} since they were last saved, to the
+     * media files, their directories and albums.
+     */
+    private void savePlayCounts() {
+        List<UnsavedPlay> plays;
+        synchronized (unsavedPlays) {
+            if (unsavedPlays.isEmpty()) {
+                return;
+            }
+            plays = new ArrayList<>(unsavedPlays.values());
+            unsavedPlays.clear();
+        }
+
+        Map<String, PlayCount> filePlayCounts = new HashMap<>();
+        Map<Pair<String, String>, PlayCount> albumPlayCounts = new HashMap<>();
+        for (UnsavedPlay play : plays) {
+            MediaFile file = play.file;
+            filePlayCounts.computeIfAbsent(file.getPath(), k -> new PlayCount()).add(play.playCount);
+            try {
+                MediaFile parent = getParentOf(file);
+                if (parent != null && !isRoot(parent)) {
+                    filePlayCounts.computeIfAbsent(parent.getPath(), k -> new PlayCount()).add(play.playCount);
+                }
+            } catch (SecurityException x) {
+                LOG.warn("Failed to find directory of " + file.getPath() + ".", x);
+            }
+            if (file.getAlbumArtist() != null && file.getAlbumName() != null) {
+                albumPlayCounts.computeIfAbsent(Pair.of(file.getAlbumArtist(), file.getAlbumName()), k -> new PlayCount())
+                        .add(play.playCount);
+            }
+        }
+
+        try {
+            mediaFileDao.addPlayCounts(filePlayCounts, albumPlayCounts);
+        } catch (Exception x) {
+            LOG.warn("Failed to save play counts of " + plays.size() + " media files. Will retry.", x);
+            synchronized (unsavedPlays) {
+                for (UnsavedPlay play : plays) {
+                    unsavedPlays.computeIfAbsent(play.file.getPath(), k -> new UnsavedPlay(play.file)).playCount.add(play.playCount);
+                }
+            }
+            return;
+        }
+        for (String path : filePlayCounts.keySet()) {
+            mediaFileMemoryCache.remove(new File(path));
+        }
+    }
+
+    private static class UnsavedPlay {
+        private final MediaFile file;
+        private final PlayCount playCount = new PlayCount();
+
+        UnsavedPlay(MediaFile file) {
+            this.file = file;
         }
     }
 
@@ -64,6 +64,10 @@ public class MediaScannerService {
     private ArtistDao artistDao;
     @Autowired
     private AlbumDao albumDao;
+    @Autowired
+    private LibraryGenerationService libraryGenerationService;
+    @Autowired
+    private CoverArtService coverArtService;
     private int scanCount;
 
     @PostConstruct
@@ -178,7 +182,8 @@ public class MediaScannerService {
             statistics.reset();
 
             mediaFileService.setMemoryCacheEnabled(false);
-            indexManager.startIndexing();
+            // Every present file is visited by the scan, so the search index is rebuilt.
+            indexManager.startIndexing(true);
 
             mediaFileService.clearMemoryCache();
 
@@ -218,12 +223,16 @@ public class MediaScannerService {
             settingsService.save(false);
             LOG.info("Completed media library scan.");
 
+            coverArtService.pregenerateThumbnails();
+
         } catch (Throwable x) {
             LOG.error("Failed to scan media library.", x);
+            indexManager.abortIndexing();
         } finally {
             mediaFileService.setMemoryCacheEnabled(true);
             indexManager.stopIndexing();
             scanning = false;
+            libraryGenerationService.incrementLibrary();
         }
     }
 
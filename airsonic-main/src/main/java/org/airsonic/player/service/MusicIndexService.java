@@ -19,6 +19,7 @@
  */
 package org.airsonic.player.service;
 
+import org.airsonic.player.dao.ArtistDao;
 import org.airsonic.player.domain.*;
 import org.airsonic.player.domain.MusicIndex.SortableArtist;
 import org.airsonic.player.util.FileUtil;
@@ -29,6 +30,9 @@ import java.io.File;
 import java.io.Serializable;
 import java.text.Collator;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 
 /**
  * Provides services for grouping artists by index.
@@ -42,6 +46,18 @@ public class MusicIndexService {
     private SettingsService settingsService;
     @Autowired
     private MediaFileService mediaFileService;
+    @Autowired
+    private ArtistDao artistDao;
+    @Autowired
+    private LibraryGenerationService libraryGenerationService;
+
+    /*
+     * Indexes built for the current library generation and settings, keyed by the IDs of the music folders.
+     * Changes to user data, such as play counts and stars, do not change indexes, so they do not invalidate them.
+     * Entries of older generations are evicted when a new entry is added.
+     */
+    private final ConcurrentMap<List<Integer>, CachedIndex<MusicFolderContent>> musicFolderContentCache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<Integer>, CachedIndex<SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithArtist>>>> artistIndexCache = new ConcurrentHashMap<>();
 
     /**
      * Returns a map from music indexes to sorted lists of artists that are direct children of the given music folders.
@@ -60,10 +76,67 @@ public class MusicIndexService {
         return sortArtists(sortableArtists);
     }
 
+    /**
+     * Returns a map from music indexes to sorted lists of ID3 artists in the given music folders.
+     * <p>
+     * The index is built once per library generation and set of music folders, and is shared by all callers.
+     *
+     * @param folders The music folders.
+     * @return An unmodifiable map from music indexes to sorted lists of artists.
+     */
+    public SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithArtist>> getIndexedId3Artists(List<MusicFolder> folders) {
+        return getCached(artistIndexCache, folders, false, () -> {
+            List<Artist> artists = artistDao.getAlphabetialArtists(0, Integer.MAX_VALUE, folders);
+            return unmodifiableIndex(getIndexedArtists(artists));
+        });
+    }
+
+    /**
+     * Returns the artists and single songs in the given music folders.
+     * <p>
+     * Unless refreshing, the content is built once per library generation and set of music folders,
+     * and is shared by all callers.
+     *
+     * @param musicFoldersToUse The music folders.
+     * @param refresh           Whether to look for updates by checking the last-modified timestamp of the music folders.
+     * @return The music folder content, not to be modified.
+     */
     public MusicFolderContent getMusicFolderContent(List<MusicFolder> musicFoldersToUse, boolean refresh) {
-        SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithMediaFiles>> indexedArtists = getIndexedArtists(musicFoldersToUse, refresh);
-        List<MediaFile> singleSongs = getSingleSongs(musicFoldersToUse, refresh);
-        return new MusicFolderContent(indexedArtists, singleSongs);
+        return getCached(musicFolderContentCache, musicFoldersToUse, refresh, () -> {
+            SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithMediaFiles>> indexedArtists = getIndexedArtists(musicFoldersToUse, refresh);
+            List<MediaFile> singleSongs = getSingleSongs(musicFoldersToUse, refresh);
+            return new MusicFolderContent(unmodifiableIndex(indexedArtists), Collections.unmodifiableList(singleSongs));
+        });
+    }
+
+    /**
+     * Returns an unmodifiable view of the given index, whose lists of artists are unmodifiable too.
+     */
+    private static <T extends SortableArtist> SortedMap<MusicIndex, List<T>> unmodifiableIndex(SortedMap<MusicIndex, List<T>> index) {
+        index.replaceAll((musicIndex, artists) -> Collections.unmodifiableList(artists));
+        return Collections.unmodifiableSortedMap(index);
+    }
+
+    /**
+     * Returns the cached value for the given music folders if it is still current, or otherwise
+     * loads and caches it.
+     */
+    private <T> T getCached(ConcurrentMap<List<Integer>, CachedIndex<T>> cache, List<MusicFolder> folders,
+                            boolean refresh, Supplier<T> loader) {
+        List<Integer> key = new ArrayList<>(MusicFolder.toIdList(folders));
+        // Read before loading, so that changes made while loading invalidate the result.
+        long generation = libraryGenerationService.getLibraryGeneration();
+        long settingsChanged = settingsService.getSettingsChanged();
+
+        CachedIndex<T> cached = cache.get(key);
+        if (!refresh && cached != null && cached.isCurrent(generation, settingsChanged)) {
+            return cached.value;
+        }
+
+        T value = loader.get();
+        cache.values().removeIf(c -> !c.isCurrent(generation, settingsChanged));
+        cache.put(key, new CachedIndex<>(generation, settingsChanged, value));
+        return value;
     }
 
     private List<MediaFile> getSingleSongs(List<MusicFolder> folders, boolean refresh) {
@@ -240,6 +313,31 @@ public class MusicIndexService {
         this.mediaFileService = mediaFileService;
     }
 
+    public void setArtistDao(ArtistDao artistDao) {
+        this.artistDao = artistDao;
+    }
+
+    public void setLibraryGenerationService(LibraryGenerationService libraryGenerationService) {
+        this.libraryGenerationService = libraryGenerationService;
+    }
+
+    private static class CachedIndex<T> {
+
+        private final long generation;
+        private final long settingsChanged;
+        private final T value;
+
+        CachedIndex(long generation, long settingsChanged, T value) {
+            this.generation = generation;
+            this.settingsChanged = settingsChanged;
+            this.value = value;
+        }
+
+        boolean isCurrent(long generation, long settingsChanged) {
+            return this.generation == generation && this.settingsChanged == settingsChanged;
+        }
+    }
+
     private static class MusicIndexComparator implements Comparator<MusicIndex>, Serializable {
 
         private List<MusicIndex> indexes;
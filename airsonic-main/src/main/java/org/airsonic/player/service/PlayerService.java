@@ -19,6 +19,7 @@
  */
 package org.airsonic.player.service;
 
+import com.google.common.util.concurrent.Striped;
 import org.airsonic.player.dao.PlayerDao;
 import org.airsonic.player.domain.Player;
 import org.airsonic.player.domain.Transcoding;
@@ -27,22 +28,43 @@ import org.airsonic.player.domain.User;
 import org.airsonic.player.util.StringUtil;
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.ServletRequestUtils;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * Provides services for maintaining the set of players.
+ * <p>
+ * All players are kept in memory, and indexed by username and client ID and by IP address and username,
+ * so that players are found without locking every player or querying the database.
+ * Callers always get a copy, which they are free to modify (e.g., to stream with a separate play queue);
+ * changes are only kept by {@link #updatePlayer(Player)}.
  *
  * @author Sindre Mehus
  * @see Player
@@ -51,8 +73,11 @@ import java.util.List;
 @DependsOn("liquibase")
 public class PlayerService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(PlayerService.class);
+
     private static final String COOKIE_NAME = "player";
     private static final int COOKIE_EXPIRY = 365 * 24 * 3600; // One year
+    private static final long WRITE_BEHIND_INTERVAL_SECONDS = 10L;
 
     @Autowired
     private PlayerDao playerDao;
@@ -62,10 +87,58 @@ public class PlayerService {
     private SecurityService securityService;
     @Autowired
     private TranscodingService transcodingService;
+    @Autowired
+    private LibraryGenerationService libraryGenerationService;
+
+    /*
+     * All players, by ID. Entries are only modified while synchronized on them, and never handed out.
+     */
+    private final ConcurrentMap<Integer, Player> players = new ConcurrentHashMap<>();
+
+    /*
+     * IDs of all players, by username and client ID. Updated while synchronized on the player, so an entry
+     * may briefly be stale; lookups check the player itself.
+     */
+    private final ConcurrentMap<List<String>, Set<Integer>> playerIdsByUserAndClientId = new ConcurrentHashMap<>();
+
+    /*
+     * IDs of the non-REST players, by IP address and username. Updated like playerIdsByUserAndClientId.
+     */
+    private final ConcurrentMap<List<String>, Set<Integer>> playerIdsByIpAddressAndUser = new ConcurrentHashMap<>();
+
+    /*
+     * IDs of players whose IP address, type or last seen date have changed, but have not been saved yet.
+     */
+    private final Set<Integer> dirtyPlayerIds = ConcurrentHashMap.newKeySet();
+
+    /*
+     * Held while creating a player for a given IP address and username, or username and client ID, so that
+     * concurrent requests from the same client do not create two players.
+     */
+    private final Striped<Lock> creationLocks = Striped.lock(64);
+
+    private final ScheduledExecutorService writeBehindExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setName("PlayerService-writeBehind");
+        t.setDaemon(true);
+        return t;
+    });
 
     @PostConstruct
     public void init() {
         playerDao.deleteOldPlayers(60);
+        for (Player player : playerDao.getAllPlayers()) {
+            players.put(player.getId(), player);
+            index(player);
+        }
+        writeBehindExecutor.scheduleWithFixedDelay(this::saveDirtyPlayers, WRITE_BEHIND_INTERVAL_SECONDS,
+                                                   WRITE_BEHIND_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        writeBehindExecutor.shutdownNow();
+        saveDirtyPlayers();
     }
 
     /**
@@ -85,28 +158,28 @@ public class PlayerService {
      * @param isStreamRequest      Whether the HTTP request is a request for streaming data.
      * @return The player associated with the given HTTP request.
      */
-    public synchronized Player getPlayer(HttpServletRequest request, HttpServletResponse response,
-                                         boolean remoteControlEnabled, boolean isStreamRequest) throws Exception {
+    public Player getPlayer(HttpServletRequest request, HttpServletResponse response,
+                            boolean remoteControlEnabled, boolean isStreamRequest) throws Exception {
 
         // Find by 'player' request parameter.
-        Player player = getPlayerById(ServletRequestUtils.getIntParameter(request, "player"));
+        Player player = getRegisteredPlayer(ServletRequestUtils.getIntParameter(request, "player"));
 
         // Find in session context.
         if (player == null && remoteControlEnabled) {
             Integer playerId = (Integer) request.getSession().getAttribute("player");
             if (playerId != null) {
-                player = getPlayerById(playerId);
+                player = getRegisteredPlayer(playerId);
             }
         }
 
         // Find by cookie.
         String username = securityService.getCurrentUsername(request);
         if (player == null && remoteControlEnabled) {
-            player = getPlayerById(getPlayerIdFromCookie(request, username));
+            player = getRegisteredPlayer(getPlayerIdFromCookie(request, username));
         }
 
         // Make sure we're not hijacking the player of another user.
-        if (player != null && player.getUsername() != null && username != null && !player.getUsername().equals(username)) {
+        if (player != null && username != null && !isOwnedBy(player, username)) {
             player = null;
         }
 
@@ -117,33 +190,51 @@ public class PlayerService {
 
         // If no player was found, create it.
         if (player == null) {
-            player = new Player();
-            createPlayer(player);
-//            LOG.debug("Created player " + player.getId() + " (remoteControlEnabled: " + remoteControlEnabled +
-//                      ", isStreamRequest: " + isStreamRequest + ", username: " + username +
-//                      ", ip: " + request.getRemoteAddr() + ").");
+            Lock lock = creationLocks.get(Arrays.asList(request.getRemoteAddr(), username));
+            lock.lock();
+            try {
+                player = getNonRestPlayerByIpAddressAndUsername(request.getRemoteAddr(), username);
+                if (player == null) {
+                    // Created with the IP address and username, so that it is found by the next request.
+                    Player newPlayer = new Player();
+                    newPlayer.setIpAddress(request.getRemoteAddr());
+                    newPlayer.setUsername(username);
+                    createPlayer(newPlayer);
+                    player = players.get(newPlayer.getId());
+                }
+            } finally {
+                lock.unlock();
+            }
         }
 
-        // Update player data.
-        boolean isUpdate = false;
-        if (username != null && player.getUsername() == null) {
-            player.setUsername(username);
-            isUpdate = true;
-        }
-        if (player.getIpAddress() == null || isStreamRequest ||
-            (!isPlayerConnected(player) && player.isDynamicIp() && !request.getRemoteAddr().equals(player.getIpAddress()))) {
-            player.setIpAddress(request.getRemoteAddr());
-            isUpdate = true;
-        }
-        String userAgent = request.getHeader("user-agent");
-        if (isStreamRequest) {
-            player.setType(userAgent);
-            player.setLastSeen(new Date());
-            isUpdate = true;
-        }
+        // Update player data. Saved later, since this happens on most requests.
+        Player result;
+        synchronized (player) {
+            List<String> oldUserAndClientId = getUserAndClientIdKey(player);
+            List<String> oldIpAddressAndUser = getIpAddressAndUserKey(player);
+            boolean isUpdate = false;
+            if (username != null && player.getUsername() == null) {
+                player.setUsername(username);
+                isUpdate = true;
+            }
+            if (player.getIpAddress() == null || isStreamRequest ||
+                (!isPlayerConnected(player) && player.isDynamicIp() && !request.getRemoteAddr().equals(player.getIpAddress()))) {
+                player.setIpAddress(request.getRemoteAddr());
+                isUpdate = true;
+            }
+            String userAgent = request.getHeader("user-agent");
+            if (isStreamRequest) {
+                player.setType(userAgent);
+                player.setLastSeen(new Date());
+                isUpdate = true;
+            }
 
-        if (isUpdate) {
-            updatePlayer(player);
+            if (isUpdate) {
+                dirtyPlayerIds.add(player.getId());
+                reindex(playerIdsByUserAndClientId, player.getId(), oldUserAndClientId, getUserAndClientIdKey(player));
+                reindex(playerIdsByIpAddressAndUser, player.getId(), oldIpAddressAndUser, getIpAddressAndUserKey(player));
+            }
+            result = copyPlayer(player);
         }
 
         // Set cookie in response.
@@ -162,10 +253,10 @@ public class PlayerService {
 
         // Save player in session context.
         if (remoteControlEnabled) {
-            request.getSession().setAttribute("player", player.getId());
+            request.getSession().setAttribute("player", result.getId());
         }
 
-        return player;
+        return result;
     }
 
     /**
@@ -174,7 +265,42 @@ public class PlayerService {
      * @param player The player to update.
      */
     public void updatePlayer(Player player) {
-        playerDao.updatePlayer(player);
+        Player registered = getRegisteredPlayer(player.getId());
+        if (registered == null) {
+            playerDao.updatePlayer(player);
+            return;
+        }
+        synchronized (registered) {
+            List<String> oldUserAndClientId = getUserAndClientIdKey(registered);
+            List<String> oldIpAddressAndUser = getIpAddressAndUserKey(registered);
+            copyPlayerFields(player, registered);
+            reindex(playerIdsByUserAndClientId, registered.getId(), oldUserAndClientId, getUserAndClientIdKey(registered));
+            reindex(playerIdsByIpAddressAndUser, registered.getId(), oldIpAddressAndUser, getIpAddressAndUserKey(registered));
+            dirtyPlayerIds.remove(registered.getId());
+            playerDao.updatePlayer(registered);
+        }
+        // The settings of a player, such as its transcode scheme, change how the library is presented to it.
+        libraryGenerationService.increment();
+    }
+
+    /**
+     * Saves the players updated by {@link #getPlayer}.
+     */
+    private void saveDirtyPlayers() {
+        for (Integer id : dirtyPlayerIds) {
+            dirtyPlayerIds.remove(id);
+            Player player = players.get(id);
+            if (player == null) {
+                continue;
+            }
+            try {
+                synchronized (player) {
+                    playerDao.updatePlayer(player);
+                }
+            } catch (Exception x) {
+                LOG.warn("Failed to save player " + id + ".", x);
+            }
+        }
     }
 
     /**
@@ -184,10 +310,108 @@ public class PlayerService {
      * @return The player with the given ID, or <code>null</code> if no such player exists.
      */
     public Player getPlayerById(Integer id) {
+        Player player = getRegisteredPlayer(id);
+        if (player == null) {
+            return null;
+        }
+        synchronized (player) {
+            return copyPlayer(player);
+        }
+    }
+
+    /**
+     * Returns the registered (not copied) player with the given ID, loading it if necessary.
+     */
+    private Player getRegisteredPlayer(Integer id) {
         if (id == null) {
             return null;
-        } else {
-            return playerDao.getPlayerById(id);
+        }
+        Player player = players.get(id);
+        if (player == null) {
+            player = playerDao.getPlayerById(id);
+            if (player != null) {
+                Player existing = players.putIfAbsent(id, player);
+                if (existing != null) {
+                    player = existing;
+                } else {
+                    index(player);
+                }
+            }
+        }
+        return player;
+    }
+
+    private static Player copyPlayer(Player player) {
+        Player copy = new Player();
+        copy.setId(player.getId());
+        copyPlayerFields(player, copy);
+        copy.setPlayQueue(player.getPlayQueue());
+        return copy;
+    }
+
+    /**
+     * Copies the saved fields, that is all but the ID and play queue.
+     */
+    private static void copyPlayerFields(Player from, Player to) {
+        to.setName(from.getName());
+        to.setTechnology(from.getTechnology());
+        to.setClientId(from.getClientId());
+        to.setType(from.getType());
+        to.setUsername(from.getUsername());
+        to.setIpAddress(from.getIpAddress());
+        to.setDynamicIp(from.isDynamicIp());
+        to.setAutoControlEnabled(from.isAutoControlEnabled());
+        to.setM3uBomEnabled(from.isM3uBomEnabled());
+        to.setLastSeen(from.getLastSeen());
+        to.setTranscodeScheme(from.getTranscodeScheme());
+        to.setJavaJukeboxMixer(from.getJavaJukeboxMixer());
+    }
+
+    private static boolean isOwnedBy(Player player, String username) {
+        synchronized (player) {
+            return player.getUsername() == null || player.getUsername().equals(username);
+        }
+    }
+
+    private void index(Player player) {
+        synchronized (player) {
+            reindex(playerIdsByUserAndClientId, player.getId(), null, getUserAndClientIdKey(player));
+            reindex(playerIdsByIpAddressAndUser, player.getId(), null, getIpAddressAndUserKey(player));
+        }
+    }
+
+    private static List<String> getUserAndClientIdKey(Player player) {
+        return Arrays.asList(player.getUsername(), player.getClientId());
+    }
+
+    /**
+     * Returns the key of the given player in {@link #playerIdsByIpAddressAndUser}, or <code>null</code> for REST players.
+     */
+    private static List<String> getIpAddressAndUserKey(Player player) {
+        return player.getClientId() == null ? Arrays.asList(player.getIpAddress(), player.getUsername()) : null;
+    }
+
+    /**
+     * Moves the given player ID from the old key to the new key of the given index. Either key may be
+     * <code>null</code>. The ID is added first, so that lookups never miss the player.
+     */
+    private static void reindex(ConcurrentMap<List<String>, Set<Integer>> index, Integer id,
+                                List<String> oldKey, List<String> newKey) {
+        if (Objects.equals(oldKey, newKey)) {
+            return;
+        }
+        if (newKey != null) {
+            index.compute(newKey, (key, ids) -> {
+                Set<Integer> result = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+                result.add(id);
+                return result;
+            });
+        }
+        if (oldKey != null) {
+            index.computeIfPresent(oldKey, (key, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
         }
     }
 
@@ -218,15 +442,33 @@ public class PlayerService {
         if (ipAddress == null) {
             return null;
         }
-        for (Player player : getAllPlayers()) {
-            boolean isRest = player.getClientId() != null;
-            boolean ipMatches = ipAddress.equals(player.getIpAddress());
-            boolean userMatches = username == null || username.equals(player.getUsername());
-            if (!isRest && ipMatches && userMatches) {
-                return player;
+        if (username == null) {
+            // Not indexed, since any user matches. Only happens for requests without a logged in user.
+            return findPlayer(players.keySet(), player -> player.getClientId() == null && ipAddress.equals(player.getIpAddress()));
+        }
+        return findPlayer(playerIdsByIpAddressAndUser.getOrDefault(Arrays.asList(ipAddress, username), Collections.emptySet()),
+                          player -> player.getClientId() == null && ipAddress.equals(player.getIpAddress()) &&
+                                    username.equals(player.getUsername()));
+    }
+
+    /**
+     * Returns the registered (not copied) player with the lowest of the given IDs that matches the given
+     * condition, which is checked while synchronized on the player.
+     */
+    private Player findPlayer(Set<Integer> ids, Predicate<Player> condition) {
+        Player result = null;
+        for (Integer id : ids) {
+            Player player = players.get(id);
+            if (player == null || (result != null && result.getId() < id)) {
+                continue;
+            }
+            synchronized (player) {
+                if (condition.test(player)) {
+                    result = player;
+                }
             }
         }
-        return null;
+        return result;
     }
 
     /**
@@ -263,7 +505,51 @@ public class PlayerService {
      * @return All relevant players.
      */
     public List<Player> getPlayersForUserAndClientId(String username, String clientId) {
-        return playerDao.getPlayersForUserAndClientId(username, clientId);
+        List<Player> result = new ArrayList<>();
+        for (Integer id : playerIdsByUserAndClientId.getOrDefault(Arrays.asList(username, clientId), Collections.emptySet())) {
+            Player player = players.get(id);
+            if (player == null) {
+                continue;
+            }
+            synchronized (player) {
+                if (Objects.equals(username, player.getUsername()) && Objects.equals(clientId, player.getClientId())) {
+                    result.add(copyPlayer(player));
+                }
+            }
+        }
+        result.sort(Comparator.comparing(Player::getId));
+        return result;
+    }
+
+    /**
+     * Returns the first player owned by the given username and client ID, creating it if necessary. Concurrent
+     * requests from the same client get the same player.
+     *
+     * @param username The name of the user.
+     * @param clientId The third-party client ID.
+     * @param factory  Creates the player to register if none exists; its username and client ID are set here.
+     * @return The player.
+     */
+    public Player getOrCreatePlayerForUserAndClientId(String username, String clientId, Supplier<Player> factory) {
+        List<Player> players = getPlayersForUserAndClientId(username, clientId);
+        if (!players.isEmpty()) {
+            return players.get(0);
+        }
+        Lock lock = creationLocks.get(Arrays.asList(username, clientId));
+        lock.lock();
+        try {
+            players = getPlayersForUserAndClientId(username, clientId);
+            if (!players.isEmpty()) {
+                return players.get(0);
+            }
+            Player player = factory.get();
+            player.setUsername(username);
+            player.setClientId(clientId);
+            createPlayer(player);
+            return getPlayerById(player.getId());
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -272,7 +558,14 @@ public class PlayerService {
      * @return All currently registered players.
      */
     public List<Player> getAllPlayers() {
-        return playerDao.getAllPlayers();
+        List<Player> result = new ArrayList<>();
+        for (Player player : players.values()) {
+            synchronized (player) {
+                result.add(copyPlayer(player));
+            }
+        }
+        result.sort(Comparator.comparing(Player::getId));
+        return result;
     }
 
     /**
@@ -280,8 +573,16 @@ public class PlayerService {
      *
      * @param id The unique player ID.
      */
-    public synchronized void removePlayerById(int id) {
+    public void removePlayerById(int id) {
         playerDao.deletePlayer(id);
+        Player player = players.remove(id);
+        dirtyPlayerIds.remove(id);
+        if (player != null) {
+            synchronized (player) {
+                reindex(playerIdsByUserAndClientId, id, getUserAndClientIdKey(player), null);
+                reindex(playerIdsByIpAddressAndUser, id, getIpAddressAndUserKey(player), null);
+            }
+        }
     }
 
     /**
@@ -307,6 +608,9 @@ public class PlayerService {
      */
     public void createPlayer(Player player) {
         playerDao.createPlayer(player);
+        Player registered = copyPlayer(player);
+        players.put(registered.getId(), registered);
+        index(registered);
 
         List<Transcoding> transcodings = transcodingService.getAllTranscodings();
         List<Transcoding> defaultActiveTranscodings = new ArrayList<Transcoding>();
@@ -362,6 +666,10 @@ public class PlayerService {
         this.playerDao = playerDao;
     }
 
+    public void setLibraryGenerationService(LibraryGenerationService libraryGenerationService) {
+        this.libraryGenerationService = libraryGenerationService;
+    }
+
     public void setTranscodingService(TranscodingService transcodingService) {
         this.transcodingService = transcodingService;
     }
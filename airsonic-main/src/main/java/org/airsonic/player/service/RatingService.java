@@ -28,7 +28,10 @@ import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * Provides services for user ratings.
@@ -44,6 +47,8 @@ public class RatingService {
     private SecurityService securityService;
     @Autowired
     private MediaFileService mediaFileService;
+    @Autowired
+    private LibraryGenerationService libraryGenerationService;
 
     /**
      * Returns the highest rated albums.
@@ -74,6 +79,7 @@ public class RatingService {
      */
     public void setRatingForUser(String username, MediaFile mediaFile, Integer rating) {
         ratingDao.setRatingForUser(username, mediaFile, rating);
+        libraryGenerationService.increment();
     }
 
     /**
@@ -86,6 +92,16 @@ public class RatingService {
         return ratingDao.getAverageRating(mediaFile);
     }
 
+    /**
+     * Returns the average ratings for the given music files, keyed by path.
+     *
+     * @param mediaFiles The music files.
+     * @return The average ratings. Files without ratings are not contained in the map.
+     */
+    public Map<String, Double> getAverageRatings(Collection<MediaFile> mediaFiles) {
+        return ratingDao.getAverageRatings(toPaths(mediaFiles));
+    }
+
     /**
      * Returns the rating for the given user and music file.
      *
@@ -97,6 +113,21 @@ public class RatingService {
         return ratingDao.getRatingForUser(username, mediaFile);
     }
 
+    /**
+     * Returns the ratings of the given user for the given music files, keyed by path.
+     *
+     * @param username   The user name.
+     * @param mediaFiles The music files.
+     * @return The ratings. Files without rating are not contained in the map.
+     */
+    public Map<String, Integer> getRatingsForUser(String username, Collection<MediaFile> mediaFiles) {
+        return ratingDao.getRatingsForUser(username, toPaths(mediaFiles));
+    }
+
+    private static List<String> toPaths(Collection<MediaFile> mediaFiles) {
+        return mediaFiles.stream().map(MediaFile::getPath).distinct().collect(Collectors.toList());
+    }
+
     public int getRatedAlbumCount(String username, List<MusicFolder> musicFolders) {
         return ratingDao.getRatedAlbumCount(username, musicFolders);
     }
@@ -30,6 +30,7 @@ import org.airsonic.player.domain.SearchResult;
 import org.airsonic.player.service.search.IndexType;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Performs Lucene-based searching.
@@ -43,6 +44,16 @@ public interface SearchService {
     SearchResult search(SearchCriteria criteria, List<MusicFolder> musicFolders,
             IndexType indexType);
 
+    /**
+     * Searches several indexes concurrently.
+     *
+     * @param criteria Search criteria for each index to search.
+     * @param musicFolders Only return matches from these folders.
+     * @return The search result of each index, in the order of {@link IndexType}.
+     */
+    Map<IndexType, SearchResult> search(Map<IndexType, SearchCriteria> criteria,
+            List<MusicFolder> musicFolders);
+
     /**
      * Returns a number of random songs.
      *
@@ -51,6 +62,16 @@ public interface SearchService {
      */
     List<MediaFile> getRandomSongs(RandomSearchCriteria criteria);
 
+    /**
+     * Returns a number of random songs, also applying the per-user conditions of the criteria
+     * (last played, play count, album rating and starred).
+     *
+     * @param criteria Search criteria.
+     * @param username The user whose play history, ratings and stars are used.
+     * @return List of random songs.
+     */
+    List<MediaFile> getRandomSongs(RandomSearchCriteria criteria, String username);
+
     /**
      * Returns a number of random albums.
      *
@@ -69,6 +90,17 @@ public interface SearchService {
      */
     List<Album> getRandomAlbumsId3(int count, List<MusicFolder> musicFolders);
 
+    /**
+     * Returns artist, album and song titles beginning with the specified words,
+     * suitable for type-ahead completion.
+     *
+     * @param query The words typed so far.
+     * @param count Maximum number of suggestions to return.
+     * @param musicFolders Only return suggestions from these folders.
+     * @return Suggestions, most frequent first.
+     */
+    List<String> getSuggestions(String query, int count, List<MusicFolder> musicFolders);
+
     <T> ParamSearchResult<T> searchByName(
             String name, int offset, int count, List<MusicFolder> folderList, Class<T> clazz);
 
@@ -20,6 +20,7 @@
 package org.airsonic.player.service;
 
 import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
 import org.airsonic.player.dao.UserDao;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
@@ -29,6 +30,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -37,11 +39,21 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.servletapi.SecurityContextHolderAwareRequestWrapper;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Provides security-related services for authentication and authorization.
@@ -52,6 +64,7 @@ import java.util.List;
 public class SecurityService implements UserDetailsService {
 
     private static final Logger LOG = LoggerFactory.getLogger(SecurityService.class);
+    private static final long BYTE_COUNTS_SAVE_INTERVAL_SECONDS = 60L;
 
     @Autowired
     private UserDao userDao;
@@ -59,6 +72,32 @@ public class SecurityService implements UserDetailsService {
     private SettingsService settingsService;
     @Autowired
     private Ehcache userCache;
+    @Autowired
+    private Ehcache restAuthenticationCache;
+
+    /*
+     * Bytes transferred by each user since the byte counts were last saved.
+     */
+    private final ConcurrentMap<String, ByteCounts> unsavedByteCounts = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService byteCountsExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setName("SecurityService-byteCounts");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    public void init() {
+        byteCountsExecutor.scheduleWithFixedDelay(this::saveUserByteCounts, BYTE_COUNTS_SAVE_INTERVAL_SECONDS,
+                                                  BYTE_COUNTS_SAVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        byteCountsExecutor.shutdownNow();
+        saveUserByteCounts();
+    }
 
     /**
      * Locates the user based on the username.
@@ -193,6 +232,8 @@ public class SecurityService implements UserDetailsService {
         userDao.deleteUser(username);
         LOG.info("Deleted user " + username);
         userCache.remove(username);
+        removeRestAuthentications(username);
+        unsavedByteCounts.remove(username);
     }
 
     /**
@@ -203,10 +244,42 @@ public class SecurityService implements UserDetailsService {
     public void updateUser(User user) {
         userDao.updateUser(user);
         userCache.remove(user.getUsername());
+        removeRestAuthentications(user.getUsername());
+    }
+
+    /**
+     * Returns a recent successful REST API authentication.
+     *
+     * @param key The username and credentials the authentication was made with, as a list starting with the username.
+     * @return The authentication, or <code>null</code> if not found.
+     */
+    public Authentication getRestAuthentication(List<String> key) {
+        Element element = restAuthenticationCache.get(key);
+        return element == null ? null : (Authentication) element.getObjectValue();
     }
 
     /**
-     * Updates the byte counts for given user.
+     * Remembers a successful REST API authentication for a short while, so that subsequent requests
+     * with the same credentials do not have to be authenticated again. Forgotten when the user
+     * (e.g., its password or roles) is updated or deleted.
+     *
+     * @param key            The username and credentials the authentication was made with, as a list starting with the username.
+     * @param authentication The authentication.
+     */
+    public void putRestAuthentication(List<String> key, Authentication authentication) {
+        restAuthenticationCache.put(new Element(key, authentication));
+    }
+
+    private void removeRestAuthentications(String username) {
+        for (Object key : restAuthenticationCache.getKeys()) {
+            if (username.equalsIgnoreCase(((List<?>) key).get(0).toString())) {
+                restAuthenticationCache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Updates the byte counts for given user. The counts are saved in the background, about once a minute.
      *
      * @param user                 The user to update, may be <code>null</code>.
      * @param bytesStreamedDelta   Increment bytes streamed count with this value.
@@ -218,11 +291,35 @@ public class SecurityService implements UserDetailsService {
             return;
         }
 
-        user.setBytesStreamed(user.getBytesStreamed() + bytesStreamedDelta);
-        user.setBytesDownloaded(user.getBytesDownloaded() + bytesDownloadedDelta);
-        user.setBytesUploaded(user.getBytesUploaded() + bytesUploadedDelta);
+        ByteCounts counts = unsavedByteCounts.computeIfAbsent(user.getUsername(), k -> new ByteCounts());
+        counts.streamed.addAndGet(bytesStreamedDelta);
+        counts.downloaded.addAndGet(bytesDownloadedDelta);
+        counts.uploaded.addAndGet(bytesUploadedDelta);
+    }
 
-        userDao.updateUser(user);
+    /**
+     * Saves the byte counts added by {@link #updateUserByteCounts} since they were last saved.
+     */
+    private void saveUserByteCounts() {
+        Map<String, long[]> deltas = new HashMap<>();
+        for (Map.Entry<String, ByteCounts> entry : unsavedByteCounts.entrySet()) {
+            ByteCounts counts = entry.getValue();
+            long[] delta = {counts.streamed.getAndSet(0L), counts.downloaded.getAndSet(0L), counts.uploaded.getAndSet(0L)};
+            if (delta[0] != 0L || delta[1] != 0L || delta[2] != 0L) {
+                deltas.put(entry.getKey(), delta);
+            }
+        }
+        try {
+            userDao.addUserByteCounts(deltas);
+        } catch (Exception x) {
+            LOG.warn("Failed to save user byte counts. Will retry.", x);
+            deltas.forEach((username, delta) -> {
+                ByteCounts counts = unsavedByteCounts.computeIfAbsent(username, k -> new ByteCounts());
+                counts.streamed.addAndGet(delta[0]);
+                counts.downloaded.addAndGet(delta[1]);
+                counts.uploaded.addAndGet(delta[2]);
+            });
+        }
     }
 
     /**
@@ -336,6 +433,12 @@ public class SecurityService implements UserDetailsService {
         return file.toUpperCase().startsWith(folder.toUpperCase());
     }
 
+    private static class ByteCounts {
+        private final AtomicLong streamed = new AtomicLong();
+        private final AtomicLong downloaded = new AtomicLong();
+        private final AtomicLong uploaded = new AtomicLong();
+    }
+
     public void setSettingsService(SettingsService settingsService) {
         this.settingsService = settingsService;
     }
@@ -347,4 +450,8 @@ public class SecurityService implements UserDetailsService {
     public void setUserCache(Ehcache userCache) {
         this.userCache = userCache;
     }
+
+    public void setRestAuthenticationCache(Ehcache restAuthenticationCache) {
+        this.restAuthenticationCache = restAuthenticationCache;
+    }
 }
\ No newline at end of file
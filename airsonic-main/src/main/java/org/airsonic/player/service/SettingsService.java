@@ -66,6 +66,12 @@ public class SettingsService {
     private static final String KEY_VIDEO_FILE_TYPES = "VideoFileTypes";
     private static final String KEY_COVER_ART_FILE_TYPES = "CoverArtFileTypes2";
     private static final String KEY_COVER_ART_CONCURRENCY = "CoverArtConcurrency";
+    private static final String KEY_COVER_ART_QUALITY = "CoverArtQuality";
+    private static final String KEY_SEARCH_CONCURRENCY = "SearchConcurrency";
+    private static final String KEY_SEARCH_SEGMENT_CONCURRENCY = "SearchSegmentConcurrency";
+    private static final String KEY_INDEX_CONCURRENCY = "IndexConcurrency";
+    private static final String KEY_INDEX_RAM_BUFFER_SIZE = "IndexRamBufferSize";
+    private static final String KEY_REST_RESPONSE_CACHE_ENABLED = "RestResponseCacheEnabled";
     private static final String KEY_WELCOME_TITLE = "WelcomeTitle";
     private static final String KEY_WELCOME_SUBTITLE = "WelcomeSubtitle";
     private static final String KEY_WELCOME_MESSAGE = "WelcomeMessage2";
@@ -143,6 +149,12 @@ public class SettingsService {
     private static final String DEFAULT_VIDEO_FILE_TYPES = "flv avi mpg mpeg mp4 m4v mkv mov wmv ogv divx m2ts webm";
     private static final String DEFAULT_COVER_ART_FILE_TYPES = "cover.jpg cover.png cover.gif folder.jpg jpg jpeg gif png";
     private static final int DEFAULT_COVER_ART_CONCURRENCY = 4;
+    private static final int DEFAULT_COVER_ART_QUALITY = 75;
+    private static final int DEFAULT_SEARCH_CONCURRENCY = 6;
+    private static final int DEFAULT_SEARCH_SEGMENT_CONCURRENCY = 0;
+    private static final int DEFAULT_INDEX_CONCURRENCY = 4;
+    private static final int DEFAULT_INDEX_RAM_BUFFER_SIZE = 64;
+    private static final boolean DEFAULT_REST_RESPONSE_CACHE_ENABLED = false;
     private static final String DEFAULT_WELCOME_TITLE = "Welcome to Airsonic!";
     private static final String DEFAULT_WELCOME_SUBTITLE = null;
     private static final String DEFAULT_WELCOME_MESSAGE = "__Welcome to Airsonic!__\n" +
@@ -243,6 +255,8 @@ public class SettingsService {
     private AvatarDao avatarDao;
     @Autowired
     private ApacheCommonsConfigurationService configurationService;
+    @Autowired
+    private LibraryGenerationService libraryGenerationService;
 
     private String[] cachedCoverArtFileTypesArray;
     private String[] cachedMusicFileTypesArray;
@@ -469,6 +483,54 @@ public class SettingsService {
         return getInt(KEY_COVER_ART_CONCURRENCY, DEFAULT_COVER_ART_CONCURRENCY);
     }
 
+    /**
+     * Returns the JPEG quality of cover art thumbnails, in percent.
+     */
+    public int getCoverArtQuality() {
+        return getInt(KEY_COVER_ART_QUALITY, DEFAULT_COVER_ART_QUALITY);
+    }
+
+    /**
+     * Returns the number of threads used to query several indexes of one search request concurrently.
+     */
+    public int getSearchConcurrency() {
+        return getInt(KEY_SEARCH_CONCURRENCY, DEFAULT_SEARCH_CONCURRENCY);
+    }
+
+    /**
+     * Returns the number of threads used to search the segments of a single index concurrently.
+     * Zero (the default) searches all segments on the calling thread.
+     */
+    public int getSearchSegmentConcurrency() {
+        return getInt(KEY_SEARCH_SEGMENT_CONCURRENCY, DEFAULT_SEARCH_SEGMENT_CONCURRENCY);
+    }
+
+    /**
+     * Returns the number of threads used to add documents when the search index is rebuilt by a scan.
+     */
+    public int getIndexConcurrency() {
+        return getInt(KEY_INDEX_CONCURRENCY, DEFAULT_INDEX_CONCURRENCY);
+    }
+
+    /**
+     * Returns the size in MB of the buffer in which index writers hold documents before flushing them to disk.
+     */
+    public int getIndexRamBufferSize() {
+        return getInt(KEY_INDEX_RAM_BUFFER_SIZE, DEFAULT_INDEX_RAM_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns whether the responses of read-only REST API methods are cached until the library changes.
+     * Off by default, since play counts in cached responses may lag behind for a few minutes.
+     */
+    public boolean isRestResponseCacheEnabled() {
+        return getBoolean(KEY_REST_RESPONSE_CACHE_ENABLED, DEFAULT_REST_RESPONSE_CACHE_ENABLED);
+    }
+
+    public void setRestResponseCacheEnabled(boolean enabled) {
+        setBoolean(KEY_REST_RESPONSE_CACHE_ENABLED, enabled);
+    }
+
     public String getWelcomeTitle() {
         return StringUtils.trimToNull(getProperty(KEY_WELCOME_TITLE, DEFAULT_WELCOME_TITLE));
     }
@@ -1012,6 +1074,7 @@ public class SettingsService {
     public void setMusicFoldersForUser(String username, List<Integer> musicFolderIds) {
         musicFolderDao.setMusicFoldersForUser(username, musicFolderIds);
         cachedMusicFoldersPerUser.remove(username);
+        libraryGenerationService.increment();
     }
 
     /**
@@ -1063,6 +1126,7 @@ public class SettingsService {
     public void clearMusicFolderCache() {
         cachedMusicFolders = null;
         cachedMusicFoldersPerUser.clear();
+        libraryGenerationService.incrementLibrary();
     }
 
     /**
@@ -1206,6 +1270,24 @@ public class SettingsService {
         return avatarDao.getCustomAvatar(username);
     }
 
+    /**
+     * Returns a token which changes whenever the avatar shown for the given user may have changed.
+     * Used to version avatar URLs, so that they can be cached as immutable.
+     *
+     * @param userSettings The settings of the user.
+     * @return The avatar version.
+     */
+    public String getAvatarVersion(UserSettings userSettings) {
+        long version = userSettings.getChanged().getTime();
+        if (userSettings.getAvatarScheme() == AvatarScheme.CUSTOM) {
+            Avatar avatar = getCustomAvatar(userSettings.getUsername());
+            if (avatar != null) {
+                version = Math.max(version, avatar.getCreatedDate().getTime());
+            }
+        }
+        return Long.toString(version, Character.MAX_RADIX);
+    }
+
     /**
      * Sets the custom avatar for the given user.
      *
@@ -64,6 +64,8 @@ public class TranscodingService {
     @Autowired
     @Lazy // used to deal with circular dependencies between PlayerService and TranscodingService
     private PlayerService playerService;
+    @Autowired
+    private LibraryGenerationService libraryGenerationService;
 
     /**
      * Returns all transcodings.
@@ -92,6 +94,8 @@ public class TranscodingService {
      */
     public void setTranscodingsForPlayer(Player player, int[] transcodingIds) {
         transcodingDao.setTranscodingsForPlayer(player.getId(), transcodingIds);
+        // Transcoded suffixes and content types are part of the library as seen by the player.
+        libraryGenerationService.increment();
     }
 
     /**
@@ -136,6 +140,7 @@ public class TranscodingService {
      */
     public void deleteTranscoding(Integer id) {
         transcodingDao.deleteTranscoding(id);
+        libraryGenerationService.increment();
     }
 
     /**
@@ -145,6 +150,7 @@ public class TranscodingService {
      */
     public void updateTranscoding(Transcoding transcoding) {
         transcodingDao.updateTranscoding(transcoding);
+        libraryGenerationService.increment();
     }
 
     /**
@@ -21,7 +21,11 @@ package org.airsonic.player.service.metadata;
 
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.service.SettingsService;
+import org.airsonic.player.util.FileUtil;
+import org.airsonic.player.util.StringUtil;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.jaudiotagger.audio.AudioFile;
 import org.jaudiotagger.audio.AudioFileIO;
@@ -40,6 +44,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.ObjectUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.logging.LogManager;
@@ -59,6 +66,8 @@ public class JaudiotaggerParser extends MetaDataParser {
     private static final Pattern GENRE_PATTERN = Pattern.compile("\\((\\d+)\\).*");
     private static final Pattern TRACK_NUMBER_PATTERN = Pattern.compile("(\\d+)/\\d+");
     private static final Pattern YEAR_NUMBER_PATTERN = Pattern.compile("(\\d{4}).*");
+    private static final String[] ARTWORK_SUFFIXES = {"jpg", "png", "gif", "bmp"};
+    private static final String NO_ARTWORK_SUFFIX = "none";
     @Autowired
     private final SettingsService settingsService;
 
@@ -393,4 +402,65 @@ public class JaudiotaggerParser extends MetaDataParser {
         Tag tag = audioFile.getTag();
         return tag == null ? null : tag.getFirstArtwork();
     }
+
+    /**
+     * Extracts the cover art embedded in the given file to the artwork directory, so that it can be
+     * read without parsing the file again. The extracted image is named after the last modified time
+     * of the file, in a directory named after its path, so it is extracted again when the file is
+     * retagged. Files without cover art leave an empty marker, so they are not parsed again either.
+     *
+     * @param file The music file.
+     * @return The extracted image, or <code>null</code> if the file has no embedded cover art.
+     */
+    public File extractArtwork(File file) throws Exception {
+        File directory = getArtworkDirectory(file);
+        String name = String.valueOf(FileUtil.lastModified(file));
+        for (String suffix : ARTWORK_SUFFIXES) {
+            File extracted = new File(directory, name + "." + suffix);
+            if (extracted.exists()) {
+                return extracted;
+            }
+        }
+        File noArtwork = new File(directory, name + "." + NO_ARTWORK_SUFFIX);
+        if (noArtwork.exists()) {
+            return null;
+        }
+
+        Tag tag = AudioFileIO.read(file).getTag();
+        Artwork artwork = tag == null ? null : tag.getFirstArtwork();
+        byte[] data = artwork == null ? null : artwork.getBinaryData();
+        File extracted;
+        if (data == null || data.length == 0) {
+            data = new byte[0];
+            extracted = noArtwork;
+        } else {
+            String suffix = StringUtil.getSuffix(artwork.getMimeType());
+            extracted = new File(directory, name + "." + (ArrayUtils.contains(ARTWORK_SUFFIXES, suffix) ? suffix : "jpg"));
+        }
+
+        File tmp = File.createTempFile("artwork", ".tmp", directory);
+        try {
+            Files.write(tmp.toPath(), data);
+            Files.move(tmp.toPath(), extracted.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+
+        // Remove what was extracted before the file was last modified.
+        File[] previous = directory.listFiles((dir, n) -> !n.startsWith(name + ".") && !n.endsWith(".tmp"));
+        if (previous != null) {
+            for (File f : previous) {
+                Files.deleteIfExists(f.toPath());
+            }
+        }
+        return extracted == noArtwork ? null : extracted;
+    }
+
+    private static File getArtworkDirectory(File file) throws IOException {
+        File dir = new File(new File(SettingsService.getAirsonicHome(), "artwork"), DigestUtils.sha1Hex(file.getPath()));
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Failed to create artwork directory " + dir);
+        }
+        return dir;
+    }
 }
@@ -112,6 +112,13 @@ public class DocumentFactory {
         fieldKey.accept(doc, FieldNames.GENRE, value);
     };
 
+    private BiConsumer<@NonNull Document, @Nullable String> fieldFormat = (doc, value) -> {
+        if (isEmpty(value)) {
+            return;
+        }
+        fieldKey.accept(doc, FieldNames.FORMAT, value);
+    };
+
     private Consumer<@NonNull Document, @NonNull String, @Nullable Integer> fieldYear = (doc, fieldName, value) -> {
         if (isEmpty(value)) {
             return;
@@ -231,6 +238,7 @@ public class DocumentFactory {
         fieldWords.accept(doc, FieldNames.TITLE, mediaFile.getTitle());
         fieldWords.accept(doc, FieldNames.ARTIST, mediaFile.getArtist());
         fieldGenre.accept(doc, mediaFile.getGenre());
+        fieldFormat.accept(doc, mediaFile.getFormat());
         fieldYear.accept(doc, FieldNames.YEAR, mediaFile.getYear());
         fieldFolderPath.accept(doc, mediaFile.getFolder());
         return doc;
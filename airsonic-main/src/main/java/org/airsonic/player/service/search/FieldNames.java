@@ -92,4 +92,10 @@ class FieldNames {
      **/
     public static final String TITLE = "title";
 
+    /**
+     * Format(file suffix) of songs, key field.
+     * Used to filter random songs.
+     **/
+    public static final String FORMAT = "format";
+
 }
@@ -31,11 +31,18 @@ import org.airsonic.player.service.SettingsService;
 import org.airsonic.player.util.FileUtil;
 import org.apache.commons.io.FileUtils;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.store.FSDirectory;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
@@ -43,10 +50,21 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
@@ -76,13 +94,18 @@ public class IndexManager {
      *    DocumentFactory or the class that they use.
      *
      */
-    private static final int INDEX_VERSION = 16;
+    private static final int INDEX_VERSION = 17;
 
     /**
      * Literal name of index top directory.
      */
     private static final String INDEX_ROOT_DIR_NAME = "index";
 
+    /**
+     * Literal name of suggestion index directory.
+     */
+    private static final String SUGGEST_DIR_NAME = "suggest";
+
     /**
      * File supplier for index directory.
      */
@@ -110,15 +133,68 @@ public class IndexManager {
     @Autowired
     private AlbumDao albumDao;
 
-    private EnumMap<IndexType, SearcherManager> searchers = new EnumMap<>(IndexType.class);
+    @Autowired
+    private SettingsService settingsService;
+
+    /**
+     * Executor with which IndexSearcher searches the segments of an index in parallel.
+     * Null if intra-query parallelism is disabled.
+     */
+    private @Nullable ExecutorService segmentExecutor;
+
+    /*
+     * Searchers are used from request threads, and writers from the scan thread
+     * and from the expunge of the music folder settings.
+     * At most one SearcherManager is created per index.
+     */
+    private final ConcurrentMap<IndexType, SearcherManager> searchers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<IndexType, IndexWriter> writers = new ConcurrentHashMap<>();
 
-    private EnumMap<IndexType, IndexWriter> writers = new EnumMap<>(IndexType.class);
+    /*
+     * Executor with which documents are added while the indexes are rebuilt.
+     * Null if not rebuilding.
+     */
+    private volatile @Nullable ExecutorService indexExecutor;
+
+    private SuggestionIndex suggestionIndex;
+
+    @PostConstruct
+    public void init() throws IOException {
+        suggestionIndex = new SuggestionIndex(new File(rootIndexDirectory.get(), SUGGEST_DIR_NAME),
+                analyzerFactory.getAnalyzer());
+        int concurrency = settingsService.getSearchSegmentConcurrency();
+        if (0 < concurrency) {
+            ThreadFactory threadFactory = r -> {
+                Thread t = Executors.defaultThreadFactory().newThread(r);
+                t.setDaemon(true);
+                return t;
+            };
+            segmentExecutor = Executors.newFixedThreadPool(concurrency, threadFactory);
+            LOG.info("Index segments will be searched with {} thread(s).", concurrency);
+        }
+        // Open and warm existing indexes, so that the first search does not have to.
+        Arrays.stream(IndexType.values())
+                .filter(indexType -> getIndexDirectory.apply(indexType).exists())
+                .forEach(this::getSearcherManager);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        abortIndexing();
+        suggestionIndex.close();
+        searchers.values().forEach(FileUtil::closeQuietly);
+        searchers.clear();
+        if (!isEmpty(segmentExecutor)) {
+            segmentExecutor.shutdownNow();
+        }
+    }
 
     public void index(Album album) {
         Term primarykey = documentFactory.createPrimarykey(album);
         Document document = documentFactory.createAlbumId3Document(album);
         try {
-            writers.get(IndexType.ALBUM_ID3).updateDocument(primarykey, document);
+            addOrUpdate(IndexType.ALBUM_ID3, primarykey, document);
         } catch (Exception x) {
             LOG.error("Failed to create search index for " + album, x);
         }
@@ -128,7 +204,7 @@ public class IndexManager {
         Term primarykey = documentFactory.createPrimarykey(artist);
         Document document = documentFactory.createArtistId3Document(artist, musicFolder);
         try {
-            writers.get(IndexType.ARTIST_ID3).updateDocument(primarykey, document);
+            addOrUpdate(IndexType.ARTIST_ID3, primarykey, document);
         } catch (Exception x) {
             LOG.error("Failed to create search index for " + artist, x);
         }
@@ -139,32 +215,95 @@ public class IndexManager {
         try {
             if (mediaFile.isFile()) {
                 Document document = documentFactory.createSongDocument(mediaFile);
-                writers.get(IndexType.SONG).updateDocument(primarykey, document);
+                addOrUpdate(IndexType.SONG, primarykey, document);
+                suggestionIndex.add(mediaFile.getTitle(), mediaFile.getFolder());
+                suggestionIndex.add(mediaFile.getArtist(), mediaFile.getFolder());
             } else if (mediaFile.isAlbum()) {
                 Document document = documentFactory.createAlbumDocument(mediaFile);
-                writers.get(IndexType.ALBUM).updateDocument(primarykey, document);
+                addOrUpdate(IndexType.ALBUM, primarykey, document);
+                suggestionIndex.add(mediaFile.getAlbumName(), mediaFile.getFolder());
             } else {
                 Document document = documentFactory.createArtistDocument(mediaFile);
-                writers.get(IndexType.ARTIST).updateDocument(primarykey, document);
+                addOrUpdate(IndexType.ARTIST, primarykey, document);
+                suggestionIndex.add(mediaFile.getArtist(), mediaFile.getFolder());
             }
         } catch (Exception x) {
             LOG.error("Failed to create search index for " + mediaFile, x);
         }
     }
 
+    /**
+     * Add the document, or replace the document with the same primary key.
+     * While rebuilding, the index starts empty, so the document is simply added
+     * (without a term lookup) from one of the threads of the index executor.
+     */
+    private void addOrUpdate(IndexType indexType, Term primarykey, Document document) throws IOException {
+        IndexWriter writer = writers.get(indexType);
+        ExecutorService executor = indexExecutor;
+        if (isEmpty(executor)) {
+            writer.updateDocument(primarykey, document);
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                writer.addDocument(document);
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Failed to create search index : [" + indexType + "]", e);
+            }
+        });
+    }
+
     public final void startIndexing() {
+        startIndexing(false);
+    }
+
+    /**
+     * Open Writer of all indexes.
+     *
+     * @param rebuild If true, the indexes are rebuilt from scratch:
+     *                every document must be indexed again before {@link #stopIndexing()}.
+     *                Searches use the previous indexes until the new ones are committed,
+     *                and the previous indexes are kept if {@link #abortIndexing()} is called.
+     */
+    public final void startIndexing(boolean rebuild) {
         try {
             for (IndexType IndexType : IndexType.values()) {
-                writers.put(IndexType, createIndexWriter(IndexType));
+                writers.put(IndexType, createIndexWriter(IndexType, rebuild));
             }
         } catch (IOException e) {
             LOG.error("Failed to create search index.", e);
         }
+        if (rebuild) {
+            int concurrency = Math.max(1, settingsService.getIndexConcurrency());
+            ThreadFactory threadFactory = r -> {
+                Thread t = Executors.defaultThreadFactory().newThread(r);
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            };
+            // If all threads are busy, the scan thread adds the document itself.
+            indexExecutor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(concurrency * 64), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+            LOG.info("Search index will be rebuilt with {} thread(s).", concurrency);
+        }
+        suggestionIndex.startIndexing();
     }
 
-    private IndexWriter createIndexWriter(IndexType indexType) throws IOException {
+    private IndexWriter createIndexWriter(IndexType indexType, boolean rebuild) throws IOException {
         File indexDirectory = getIndexDirectory.apply(indexType);
         IndexWriterConfig config = new IndexWriterConfig(analyzerFactory.getAnalyzer());
+        config.setRAMBufferSizeMB(Math.max(1, settingsService.getIndexRamBufferSize()));
+        if (rebuild) {
+            /*
+             * Write a new index over the current one. Nothing is visible to searchers until commit,
+             * and a rollback returns to the current index.
+             * Compound files are not used, so merged segments are not written twice.
+             */
+            config.setOpenMode(OpenMode.CREATE);
+            TieredMergePolicy mergePolicy = new TieredMergePolicy();
+            mergePolicy.setNoCFSRatio(0.0);
+            config.setMergePolicy(mergePolicy);
+        }
         return new IndexWriter(FSDirectory.open(indexDirectory.toPath()), config);
     }
 
@@ -222,7 +361,66 @@ public class IndexManager {
      * Called at the end of the Scan flow.
      */
     public void stopIndexing() {
+        if (!awaitIndexExecutor()) {
+            // Some documents of the rebuild may not have been added
+            abortIndexing();
+            return;
+        }
         Arrays.asList(IndexType.values()).forEach(this::stopIndexing);
+        suggestionIndex.stopIndexing();
+    }
+
+    /**
+     * Discard the changes of all writers, and close them.
+     * Called if the scan fails. The indexes keep their last commit,
+     * so a rebuild that did not complete does not replace the current indexes.
+     */
+    public void abortIndexing() {
+        ExecutorService executor = indexExecutor;
+        indexExecutor = null;
+        if (!isEmpty(executor)) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (IndexType type : IndexType.values()) {
+            IndexWriter writer = writers.remove(type);
+            if (!isEmpty(writer)) {
+                try {
+                    writer.rollback();
+                    LOG.info("Search index changes have been discarded : [" + type + "]");
+                } catch (IOException e) {
+                    LOG.error("Failed to rollback search index : [" + type + "]", e);
+                }
+            }
+        }
+        suggestionIndex.abortIndexing();
+    }
+
+    /**
+     * Wait until all documents submitted to the index executor are added.
+     * Returns false if interrupted.
+     */
+    private boolean awaitIndexExecutor() {
+        ExecutorService executor = indexExecutor;
+        if (isEmpty(executor)) {
+            return true;
+        }
+        indexExecutor = null;
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.info("Waiting for documents to be added to the search index.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            indexExecutor = executor;
+            return false;
+        }
+        return true;
     }
 
     /**
@@ -230,27 +428,39 @@ public class IndexManager {
      */
     private void stopIndexing(IndexType type) {
 
+        IndexWriter writer = writers.remove(type);
+        if (isEmpty(writer)) {
+            return;
+        }
+
         boolean isUpdate = false;
         // close
         try {
-            isUpdate = -1 != writers.get(type).commit();
-            writers.get(type).close();
-            writers.remove(type);
+            isUpdate = -1 != writer.commit();
+            writer.close();
             LOG.trace("Success to create or update search index : [" + type + "]");
         } catch (IOException e) {
             LOG.error("Failed to create search index.", e);
-        } finally {
-            FileUtil.closeQuietly(writers.get(type));
+            FileUtil.closeQuietly(writer);
         }
 
         // refresh reader as index may have been written
-        if (isUpdate && searchers.containsKey(type)) {
+        if (isUpdate) {
+            SearcherManager manager = searchers.get(type);
+            if (isEmpty(manager)) {
+                // The index has just been created. Open it now rather than at the first search.
+                getSearcherManager(type);
+                return;
+            }
             try {
-                searchers.get(type).maybeRefresh();
+                // The new searcher is warmed before it replaces the current one.
+                manager.maybeRefreshBlocking();
                 LOG.trace("SearcherManager has been refreshed : [" + type + "]");
             } catch (IOException e) {
                 LOG.error("Failed to refresh SearcherManager : [" + type + "]", e);
-                searchers.remove(type);
+                if (searchers.remove(type, manager)) {
+                    FileUtil.closeQuietly(manager);
+                }
             }
         }
 
@@ -262,42 +472,95 @@ public class IndexManager {
      * if the user performs any search before performing a scan.
      */
     public @Nullable IndexSearcher getSearcher(IndexType indexType) {
-        if (!searchers.containsKey(indexType)) {
-            File indexDirectory = getIndexDirectory.apply(indexType);
-            try {
-                if (indexDirectory.exists()) {
-                    SearcherManager manager = new SearcherManager(FSDirectory.open(indexDirectory.toPath()), null);
-                    searchers.put(indexType, manager);
-                } else {
-                    LOG.warn("{} does not exist. Please run a scan.", indexDirectory.getAbsolutePath());
-                }
-            } catch (IOException e) {
-                LOG.error("Failed to initialize SearcherManager.", e);
-            }
+        SearcherManager manager = getSearcherManager(indexType);
+        if (isEmpty(manager)) {
+            return null;
         }
         try {
-            SearcherManager manager = searchers.get(indexType);
-            if (!isEmpty(manager)) {
-                return searchers.get(indexType).acquire();
-            }
+            return manager.acquire();
         } catch (Exception e) {
             LOG.warn("Failed to acquire IndexSearcher.", e);
         }
         return null;
     }
 
+    /**
+     * Returns the SearcherManager of the specified index, creating it if necessary.
+     * Returns null if the index has not been created yet.
+     */
+    private @Nullable SearcherManager getSearcherManager(IndexType indexType) {
+        return searchers.computeIfAbsent(indexType, this::createSearcherManager);
+    }
+
+    private @Nullable SearcherManager createSearcherManager(IndexType indexType) {
+        File indexDirectory = getIndexDirectory.apply(indexType);
+        if (!indexDirectory.exists()) {
+            LOG.warn("{} does not exist. Please run a scan.", indexDirectory.getAbsolutePath());
+            return null;
+        }
+        try {
+            return new SearcherManager(FSDirectory.open(indexDirectory.toPath()), createSearcherFactory(indexType));
+        } catch (IOException e) {
+            LOG.error("Failed to initialize SearcherManager.", e);
+        }
+        return null;
+    }
+
+    /**
+     * Creates IndexSearchers for the SearcherManager of the specified index.
+     * If segment concurrency is configured, the searchers use the shared segment executor.
+     * Each new searcher is warmed up before SearcherManager publishes it.
+     */
+    private SearcherFactory createSearcherFactory(IndexType indexType) {
+        return new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+                IndexSearcher searcher = isEmpty(segmentExecutor)
+                        ? new IndexSearcher(reader)
+                        : new IndexSearcher(reader, segmentExecutor);
+                warmUp(indexType, searcher);
+                return searcher;
+            }
+        };
+    }
+
+    /**
+     * Runs a sorted query over all documents,
+     * which loads the postings and doc values used by the searches of this index.
+     */
+    private void warmUp(IndexType indexType, IndexSearcher searcher) {
+        SortField[] sortFields = Arrays
+                .stream(indexType.getFields())
+                .map(n -> new SortField(n, SortField.Type.STRING))
+                .toArray(i -> new SortField[i]);
+        try {
+            searcher.search(new MatchAllDocsQuery(), 1, new Sort(sortFields));
+            LOG.trace("IndexSearcher has been warmed up : [" + indexType + "]");
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to warm up IndexSearcher : [" + indexType + "]", e);
+        }
+    }
+
+    /**
+     * Returns the artists, albums and titles beginning with the specified words.
+     * Suggestions are limited to the specified music folders and ordered by the number of occurrences.
+     */
+    public List<String> suggest(String query, List<MusicFolder> musicFolders, int count) {
+        return suggestionIndex.lookup(query, musicFolders, count);
+    }
+
     public void release(IndexType indexType, IndexSearcher indexSearcher) {
-        if (searchers.containsKey(indexType)) {
+        SearcherManager manager = searchers.get(indexType);
+        if (!isEmpty(manager)) {
             try {
-                searchers.get(indexType).release(indexSearcher);
+                manager.release(indexSearcher);
             } catch (IOException e) {
                 LOG.error("Failed to release IndexSearcher.", e);
-                searchers.remove(indexType);
             }
         } else {
-            // irregular case
+            // irregular case : the manager was discarded after the searcher was acquired
             try {
-                indexSearcher.getIndexReader().close();
+                indexSearcher.getIndexReader().decRef();
             } catch (Exception e) {
                 LOG.warn("Failed to release. IndexSearcher has been closed.", e);
             }
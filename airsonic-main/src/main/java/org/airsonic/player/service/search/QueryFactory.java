@@ -206,6 +206,11 @@ public class QueryFactory {
             }
         }
 
+        if (!isEmpty(criteria.getFormat())) {
+            // Unanalyzed field
+            query.add(new TermQuery(new Term(FieldNames.FORMAT, criteria.getFormat())), Occur.MUST);
+        }
+
         if (!(isEmpty(criteria.getFromYear()) && isEmpty(criteria.getToYear()))) {
             query.add(toYearRangeQuery.apply(criteria.getFromYear(), criteria.getToYear()), Occur.MUST);
         }
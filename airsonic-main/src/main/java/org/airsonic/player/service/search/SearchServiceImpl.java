@@ -20,20 +20,27 @@
 
 package org.airsonic.player.service.search;
 
+import org.airsonic.player.dao.MediaFileDao;
 import org.airsonic.player.domain.*;
 import org.airsonic.player.service.SearchService;
+import org.airsonic.player.service.SettingsService;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.*;
+import org.apache.lucene.util.ArrayUtil;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
 
 import static org.airsonic.player.service.search.IndexType.*;
 import static org.springframework.util.ObjectUtils.isEmpty;
@@ -43,16 +50,53 @@ public class SearchServiceImpl implements SearchService {
 
     private static final Logger LOG = LoggerFactory.getLogger(SearchServiceImpl.class);
 
+    private static final Set<String> ID_FIELD = Collections.singleton(FieldNames.ID);
+
+    /*
+     * Number of random song candidates checked against the database at once,
+     * relative to the number of requested songs.
+     */
+    private static final int RANDOM_CANDIDATES_FACTOR = 4;
+
+    private static final int RANDOM_CANDIDATES_MIN = 100;
+
     @Autowired
     private QueryFactory           queryFactory;
     @Autowired
     private IndexManager           indexManager;
     @Autowired
     private SearchServiceUtilities util;
+    @Autowired
+    private SettingsService        settingsService;
+    @Autowired
+    private MediaFileDao           mediaFileDao;
+
+    /*
+     * Executor to search several indexes of one request concurrently.
+     * If all threads are busy, the search is executed on the request thread.
+     */
+    private ExecutorService executor;
 
     // TODO Should be changed to SecureRandom?
     private final Random random = new Random(System.currentTimeMillis());
 
+    @PostConstruct
+    public void init() {
+        int concurrency = Math.max(1, settingsService.getSearchConcurrency());
+        ThreadFactory threadFactory = r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setDaemon(true);
+            return t;
+        };
+        executor = new ThreadPoolExecutor(concurrency, concurrency, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(concurrency * 4), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
     @Override
     public SearchResult search(SearchCriteria criteria, List<MusicFolder> musicFolders,
             IndexType indexType) {
@@ -91,6 +135,79 @@ public class SearchServiceImpl implements SearchService {
         return result;
     }
 
+    @Override
+    public Map<IndexType, SearchResult> search(Map<IndexType, SearchCriteria> criteria,
+            List<MusicFolder> musicFolders) {
+
+        Map<IndexType, Future<SearchResult>> futures = new EnumMap<>(IndexType.class);
+        criteria.forEach((indexType, c) -> futures.put(indexType,
+                executor.submit(() -> search(c, musicFolders, indexType))));
+
+        Map<IndexType, SearchResult> results = new EnumMap<>(IndexType.class);
+        for (Map.Entry<IndexType, Future<SearchResult>> entry : futures.entrySet()) {
+            SearchResult result;
+            try {
+                result = entry.getValue().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.values().forEach(f -> f.cancel(true));
+                LOG.warn("Interrupted while searching : [" + entry.getKey() + "]");
+                result = new SearchResult();
+            } catch (ExecutionException e) {
+                LOG.error("Failed to execute Lucene search : [" + entry.getKey() + "]", e.getCause());
+                result = new SearchResult();
+            }
+            results.put(entry.getKey(), result);
+        }
+        return results;
+    }
+
+    /**
+     * Collects the doc ids matching a query without scoring,
+     * and returns them in random order without repetition.
+     */
+    private class RandomDocIdCollector extends SimpleCollector {
+
+        private int[] docs = new int[64];
+
+        private int size;
+
+        private int docBase;
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) {
+            docBase = context.docBase;
+        }
+
+        @Override
+        public void collect(int doc) {
+            if (size == docs.length) {
+                docs = ArrayUtil.grow(docs, size + 1);
+            }
+            docs[size++] = docBase + doc;
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE_NO_SCORES;
+        }
+
+        boolean hasNext() {
+            return size > 0;
+        }
+
+        /*
+         * One step of a Fisher-Yates shuffle:
+         * the picked doc is swapped out of the range that remains to be drawn.
+         */
+        int next() {
+            int pos = random.nextInt(size);
+            int doc = docs[pos];
+            docs[pos] = docs[--size];
+            return doc;
+        }
+    }
+
     /**
      * Common processing of random method.
      * 
@@ -101,17 +218,13 @@ public class SearchServiceImpl implements SearchService {
             int count, IndexSearcher searcher, Query query, BiConsumer<List<D>, Integer> id2ListCallBack)
             throws IOException {
 
-        List<Integer> docs = Arrays
-                .stream(searcher.search(query, Integer.MAX_VALUE).scoreDocs)
-                .map(sd -> sd.doc)
-                .collect(Collectors.toList());
+        RandomDocIdCollector docs = new RandomDocIdCollector();
+        searcher.search(query, docs);
 
         List<D> result = new ArrayList<>();
-        while (!docs.isEmpty() && result.size() < count) {
-            int randomPos = random.nextInt(docs.size());
-            Document document = searcher.doc(docs.get(randomPos));
+        while (docs.hasNext() && result.size() < count) {
+            Document document = searcher.doc(docs.next(), ID_FIELD);
             id2ListCallBack.accept(result, util.getId.apply(document));
-            docs.remove(randomPos);
         }
 
         return result;
@@ -140,6 +253,51 @@ public class SearchServiceImpl implements SearchService {
         return Collections.emptyList();
     }
 
+    @Override
+    public List<MediaFile> getRandomSongs(RandomSearchCriteria criteria, String username) {
+
+        boolean perUser = !isEmpty(criteria.getMinLastPlayedDate()) || !isEmpty(criteria.getMaxLastPlayedDate())
+                || !isEmpty(criteria.getMinAlbumRating()) || !isEmpty(criteria.getMaxAlbumRating())
+                || !isEmpty(criteria.getMinPlayCount()) || !isEmpty(criteria.getMaxPlayCount())
+                || (criteria.isShowStarredSongs() ^ criteria.isShowUnstarredSongs());
+        if (!perUser) {
+            return getRandomSongs(criteria);
+        }
+
+        IndexSearcher searcher = indexManager.getSearcher(SONG);
+        if (isEmpty(searcher)) {
+            return Collections.emptyList();
+        }
+
+        try {
+
+            // Per-user data is not indexed. Draw random candidates and let the database check them.
+            Query query = queryFactory.getRandomSongs(criteria);
+            RandomDocIdCollector docs = new RandomDocIdCollector();
+            searcher.search(query, docs);
+
+            int count = criteria.getCount();
+            int batchSize = Math.max(count * RANDOM_CANDIDATES_FACTOR, RANDOM_CANDIDATES_MIN);
+            List<MediaFile> result = new ArrayList<>();
+            while (docs.hasNext() && result.size() < count) {
+                List<Integer> ids = new ArrayList<>(batchSize);
+                while (docs.hasNext() && ids.size() < batchSize) {
+                    ids.add(util.getId.apply(searcher.doc(docs.next(), ID_FIELD)));
+                }
+                List<MediaFile> songs = mediaFileDao.getRandomSongCandidates(ids, criteria, username);
+                Collections.shuffle(songs, random);
+                result.addAll(songs.subList(0, Math.min(songs.size(), count - result.size())));
+            }
+            return result;
+
+        } catch (IOException e) {
+            LOG.error("Failed to search or random songs.", e);
+        } finally {
+            indexManager.release(IndexType.SONG, searcher);
+        }
+        return Collections.emptyList();
+    }
+
     @Override
     public List<MediaFile> getRandomAlbums(int count, List<MusicFolder> musicFolders) {
 
@@ -186,6 +344,11 @@ public class SearchServiceImpl implements SearchService {
         return Collections.emptyList();
     }
 
+    @Override
+    public List<String> getSuggestions(String query, int count, List<MusicFolder> musicFolders) {
+        return indexManager.suggest(query, musicFolders, count);
+    }
+
     @Override
     public <T> ParamSearchResult<T> searchByName(String name, int offset, int count,
             List<MusicFolder> folderList, Class<T> assignableClass) {
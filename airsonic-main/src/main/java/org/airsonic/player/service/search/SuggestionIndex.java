@@ -0,0 +1,214 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+
+package org.airsonic.player.service.search;
+
+import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.util.FileUtil;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.suggest.InputIterator;
+import org.apache.lucene.search.suggest.analyzing.AnalyzingInfixSuggester;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.springframework.util.ObjectUtils.isEmpty;
+
+/**
+ * Dedicated index for type-ahead suggestions.
+ *
+ * Artist, album and title words are collected while the scan indexes the library,
+ * and the suggester is rebuilt from them when indexing stops.
+ * Until then, lookups are served by the previous suggester.
+ * Each suggestion holds the paths of the music folders it was found in,
+ * so that lookups can be limited to the folders the user can access.
+ */
+class SuggestionIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SuggestionIndex.class);
+
+    private final File directory;
+
+    private final Analyzer analyzer;
+
+    private @Nullable AnalyzingInfixSuggester suggester;
+
+    /*
+     * Suggestions collected in the running scan.
+     * Null if not indexing.
+     */
+    private @Nullable Map<String, Entry> entries;
+
+    private static class Entry {
+        private long weight;
+        private final Set<BytesRef> folders = new HashSet<>();
+    }
+
+    SuggestionIndex(File directory, Analyzer analyzer) {
+        this.directory = directory;
+        this.analyzer = analyzer;
+    }
+
+    synchronized void startIndexing() {
+        entries = new HashMap<>();
+    }
+
+    /**
+     * Collects a suggestion.
+     * The more often the same text is collected, the higher it is ranked.
+     */
+    synchronized void add(@Nullable String text, @Nullable String folder) {
+        if (entries == null || isEmpty(text) || isEmpty(folder)) {
+            return;
+        }
+        Entry entry = entries.computeIfAbsent(text, k -> new Entry());
+        entry.weight++;
+        entry.folders.add(new BytesRef(folder));
+    }
+
+    /**
+     * Rebuilds the suggester from the suggestions collected since {@link #startIndexing()}.
+     * If nothing was collected (e.g. only expunged), the current suggester is kept.
+     */
+    void stopIndexing() {
+        Map<String, Entry> collected;
+        synchronized (this) {
+            collected = entries;
+            entries = null;
+        }
+        if (isEmpty(collected)) {
+            return;
+        }
+        try {
+            getSuggester().build(new EntryIterator(collected));
+            LOG.trace("Success to create or update suggestion index : [{}] entries", collected.size());
+        } catch (IOException e) {
+            LOG.error("Failed to create suggestion index.", e);
+        }
+    }
+
+    /**
+     * Discards the suggestions collected since {@link #startIndexing()}.
+     */
+    synchronized void abortIndexing() {
+        entries = null;
+    }
+
+    /**
+     * Returns suggestions starting with the specified words, ordered by weight.
+     */
+    List<String> lookup(String query, List<MusicFolder> musicFolders, int count) {
+        if (isEmpty(query) || isEmpty(musicFolders) || count <= 0) {
+            return Collections.emptyList();
+        }
+        Set<BytesRef> contexts = musicFolders.stream()
+                .map(folder -> new BytesRef(folder.getPath().getPath()))
+                .collect(Collectors.toSet());
+        try {
+            AnalyzingInfixSuggester s = getSuggester();
+            if (s.getCount() == 0) {
+                return Collections.emptyList();
+            }
+            return s.lookup(query, contexts, count, true, false).stream()
+                    .map(result -> result.key.toString())
+                    .collect(Collectors.toList());
+        } catch (IOException | IllegalStateException e) {
+            LOG.warn("Failed to lookup suggestions.", e);
+        }
+        return Collections.emptyList();
+    }
+
+    private synchronized AnalyzingInfixSuggester getSuggester() throws IOException {
+        if (isEmpty(suggester)) {
+            suggester = new AnalyzingInfixSuggester(FSDirectory.open(directory.toPath()), analyzer, analyzer,
+                    AnalyzingInfixSuggester.DEFAULT_MIN_PREFIX_CHARS, true, true, false);
+        }
+        return suggester;
+    }
+
+    synchronized void close() {
+        FileUtil.closeQuietly(suggester);
+        suggester = null;
+    }
+
+    /**
+     * Feeds the collected suggestions to the suggester.
+     */
+    private static class EntryIterator implements InputIterator {
+
+        private final Iterator<Map.Entry<String, Entry>> iterator;
+
+        private @Nullable Entry current;
+
+        EntryIterator(Map<String, Entry> entries) {
+            this.iterator = entries.entrySet().iterator();
+        }
+
+        @Override
+        public BytesRef next() {
+            if (!iterator.hasNext()) {
+                current = null;
+                return null;
+            }
+            Map.Entry<String, Entry> next = iterator.next();
+            current = next.getValue();
+            return new BytesRef(next.getKey());
+        }
+
+        @Override
+        public long weight() {
+            return current.weight;
+        }
+
+        @Override
+        public BytesRef payload() {
+            return null;
+        }
+
+        @Override
+        public boolean hasPayloads() {
+            return false;
+        }
+
+        @Override
+        public Set<BytesRef> contexts() {
+            return current.folders;
+        }
+
+        @Override
+        public boolean hasContexts() {
+            return true;
+        }
+    }
+
+}
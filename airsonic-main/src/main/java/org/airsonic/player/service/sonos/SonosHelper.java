@@ -64,6 +64,8 @@ public class SonosHelper {
     @Autowired
     private MediaFileDao mediaFileDao;
     @Autowired
+    private LibraryGenerationService libraryGenerationService;
+    @Autowired
     private RatingService ratingService;
     @Autowired
     private LastFmService lastFmService;
@@ -255,7 +257,7 @@ public class SonosHelper {
             mediaCollection.setCanPlay(true);
 
             AlbumArtUrl albumArtURI = new AlbumArtUrl();
-            albumArtURI.setValue(getCoverArtUrl(String.valueOf(dir.getId()), request));
+            albumArtURI.setValue(getCoverArtUrl(String.valueOf(dir.getId()), dir.getCoverArtVersion(), request));
             mediaCollection.setAlbumArtURI(albumArtURI);
         } else {
             mediaCollection.setItemType(ItemType.CONTAINER);
@@ -269,7 +271,8 @@ public class SonosHelper {
         for (Playlist playlist : playlistService.getReadablePlaylistsForUser(username)) {
             MediaCollection mediaCollection = new MediaCollection();
             AlbumArtUrl albumArtURI = new AlbumArtUrl();
-            albumArtURI.setValue(getCoverArtUrl(CoverArtController.PLAYLIST_COVERART_PREFIX + playlist.getId(), request));
+            albumArtURI.setValue(getCoverArtUrl(CoverArtController.PLAYLIST_COVERART_PREFIX + playlist.getId(),
+                                                String.valueOf(playlist.getChanged().getTime()), request));
 
             mediaCollection.setId(SonosService.ID_PLAYLIST_PREFIX + playlist.getId());
             mediaCollection.setCanPlay(true);
@@ -599,16 +602,22 @@ public class SonosHelper {
 
     public void star(int id, String username) {
         mediaFileDao.starMediaFile(id, username);
+        libraryGenerationService.increment();
     }
 
     public void unstar(int id, String username) {
         mediaFileDao.unstarMediaFile(id, username);
+        libraryGenerationService.increment();
     }
 
     private String getCoverArtUrl(String id, HttpServletRequest request) {
         return getBaseUrl(request) + "coverArt.view?id=" + id + "&size=" + CoverArtScheme.LARGE.getSize();
     }
 
+    private String getCoverArtUrl(String id, String version, HttpServletRequest request) {
+        return getCoverArtUrl(id, request) + "&" + CoverArtController.VERSION_PARAMETER + "=" + version;
+    }
+
     public static MediaList createSubList(int index, int count, List<? extends AbstractMedia> mediaCollections) {
         MediaList result = new MediaList();
         List<? extends AbstractMedia> selectedMediaCollections = Util.subList(mediaCollections, index, count);
@@ -645,20 +654,12 @@ public class SonosHelper {
     }
 
     private Player createPlayerIfNecessary(String username) {
-        List<Player> players = playerService.getPlayersForUserAndClientId(username, AIRSONIC_CLIENT_ID);
-
-        // If not found, create it.
-        if (players.isEmpty()) {
+        return playerService.getOrCreatePlayerForUserAndClientId(username, AIRSONIC_CLIENT_ID, () -> {
             Player player = new Player();
-            player.setUsername(username);
-            player.setClientId(AIRSONIC_CLIENT_ID);
             player.setName("Sonos");
             player.setTechnology(PlayerTechnology.EXTERNAL_WITH_PLAYLIST);
-            playerService.createPlayer(player);
-            players = playerService.getPlayersForUserAndClientId(username, AIRSONIC_CLIENT_ID);
-        }
-
-        return players.get(0);
+            return player;
+        });
     }
 
     public void setMediaFileService(MediaFileService mediaFileService) {
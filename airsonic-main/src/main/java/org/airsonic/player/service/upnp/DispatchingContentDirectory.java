@@ -19,6 +19,7 @@
 */
 package org.airsonic.player.service.upnp;
 
+import org.airsonic.player.controller.CoverArtController;
 import org.airsonic.player.domain.CoverArtScheme;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.service.*;
@@ -190,13 +191,19 @@ public class DispatchingContentDirectory extends CustomContentDirectory {
         }
         item.setResources(Arrays.asList(createResourceForSong(song)));
         item.setDescription(song.getComment());
-        item.addProperty(new DIDLObject.Property.UPNP.ALBUM_ART_URI(getAlbumArtUrl(parent.getId())));
+        item.addProperty(new DIDLObject.Property.UPNP.ALBUM_ART_URI(getAlbumArtUrl(parent)));
 
         return item;
     }
 
-    public URI getAlbumArtUrl(int id) {
-        return jwtSecurityService.addJWTToken(UriComponentsBuilder.fromUriString(getBaseUrl() + "/ext/coverArt.view").queryParam("id", id).queryParam("size", CoverArtScheme.LARGE.getSize())).build().encode().toUri();
+    public URI getAlbumArtUrl(MediaFile album) {
+        return jwtSecurityService.addJWTToken(UriComponentsBuilder.fromUriString(getBaseUrl() + "/ext/coverArt.view")
+                .queryParam("id", album.getId())
+                .queryParam("size", CoverArtScheme.LARGE.getSize())
+                .queryParam(CoverArtController.VERSION_PARAMETER, album.getCoverArtVersion()))
+                .build()
+                .encode()
+                .toUri();
     }
 
     public PlaylistUpnpProcessor getPlaylistProcessor() {
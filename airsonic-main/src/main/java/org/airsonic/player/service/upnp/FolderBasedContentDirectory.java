@@ -19,6 +19,7 @@
  */
 package org.airsonic.player.service.upnp;
 
+import org.airsonic.player.controller.CoverArtController;
 import org.airsonic.player.domain.*;
 import org.airsonic.player.service.MediaFileService;
 import org.airsonic.player.service.PlaylistService;
@@ -268,7 +269,8 @@ public class FolderBasedContentDirectory extends CustomContentDirectory {
     private URI getAlbumArtUrl(MediaFile album) {
         return jwtSecurityService.addJWTToken(UriComponentsBuilder.fromUriString(getBaseUrl() + "/ext/coverArt.view")
                 .queryParam("id", album.getId())
-                .queryParam("size", CoverArtScheme.LARGE.getSize()))
+                .queryParam("size", CoverArtScheme.LARGE.getSize())
+                .queryParam(CoverArtController.VERSION_PARAMETER, album.getCoverArtVersion()))
                 .build()
                 .encode()
                 .toUri();
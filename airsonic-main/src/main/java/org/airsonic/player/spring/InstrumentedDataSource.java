@@ -0,0 +1,29 @@
+package org.airsonic.player.spring;
+
+import org.airsonic.player.monitor.MetricsManager;
+import org.apache.commons.dbcp2.BasicDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Connection pool which reports its usage through the {@link MetricsManager}: the number of
+ * active and idle connections, and the time spent getting a connection from the pool.
+ */
+public class InstrumentedDataSource extends BasicDataSource {
+
+    private MetricsManager metricsManager;
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        try (MetricsManager.Timer t = metricsManager.timer(InstrumentedDataSource.class, "getConnection")) {
+            return super.getConnection();
+        }
+    }
+
+    public void setMetricsManager(MetricsManager metricsManager) {
+        this.metricsManager = metricsManager;
+        metricsManager.gauge(InstrumentedDataSource.class, "active", this::getNumActive);
+        metricsManager.gauge(InstrumentedDataSource.class, "idle", this::getNumIdle);
+    }
+}
@@ -397,6 +397,7 @@
             <div class="albumThumb">
                 <c:import url="coverArt.jsp">
                     <c:param name="albumId" value="${model.dir.id}"/>
+                    <c:param name="coverArtVersion" value="${model.dir.coverArtVersion}"/>
                     <c:param name="coverArtSize" value="${model.coverArtSizeLarge}"/>
                     <c:param name="showZoom" value="true"/>
                     <c:param name="showChange" value="${model.user.coverArtRole}"/>
@@ -469,6 +470,7 @@
             <div class="albumThumb">
                 <c:import url="coverArt.jsp">
                     <c:param name="albumId" value="${album.id}"/>
+                    <c:param name="coverArtVersion" value="${album.coverArtVersion}"/>
                     <c:param name="caption1" value="${fn:escapeXml(album.name)}"/>
                     <c:param name="caption2" value="${album.year}"/>
                     <c:param name="captionCount" value="2"/>
@@ -273,6 +273,7 @@
                     <div class="albumThumb">
                         <c:import url="coverArt.jsp">
                             <c:param name="albumId" value="${subDir.id}"/>
+                            <c:param name="coverArtVersion" value="${subDir.coverArtVersion}"/>
                             <c:param name="caption1" value="${fn:escapeXml(subDir.name)}"/>
                             <c:param name="caption2" value="${subDir.year}"/>
                             <c:param name="captionCount" value="2"/>
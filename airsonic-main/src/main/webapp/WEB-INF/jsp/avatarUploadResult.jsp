@@ -18,6 +18,7 @@
             <sub:url value="avatar.view" var="avatarUrl">
                 <sub:param name="username" value="${model.username}"/>
                 <sub:param name="forceCustom" value="true"/>
+                <sub:param name="v" value="${model.avatar.createdDate.time}"/>
             </sub:url>
             <img src="${avatarUrl}" alt="${model.avatar.name}" width="${model.avatar.width}"
                  height="${model.avatar.height}" style="padding-left:2em"/>
@@ -7,6 +7,7 @@ PARAMETERS
   playlistId: ID of playlist.
   podcastChannelId: ID of podcast channel
   coverArtSize: Height and width of cover art.
+  coverArtVersion: Version of the cover art, e.g., MediaFile.coverArtVersion. Makes the image cacheable as immutable.
   caption1: Caption line 1
   caption2: Caption line 2
   caption3: Caption line 3
@@ -65,10 +66,16 @@ PARAMETERS
             <c:if test="${not empty param.playlistId}">
                 <c:param name="id" value="pl-${param.playlistId}"/>
             </c:if>
+            <c:if test="${not empty param.coverArtVersion}">
+                <c:param name="v" value="${param.coverArtVersion}"/>
+            </c:if>
         </c:url>
 
         <c:url value="/coverArt.view" var="zoomCoverArtUrl">
             <c:param name="id" value="${param.albumId}"/>
+            <c:if test="${not empty param.coverArtVersion}">
+                <c:param name="v" value="${param.coverArtVersion}"/>
+            </c:if>
         </c:url>
 
         <div style="position: relative; width: 0; height: 0">
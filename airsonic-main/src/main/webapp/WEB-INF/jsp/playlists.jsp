@@ -23,6 +23,7 @@
     <div class="albumThumb">
         <c:import url="coverArt.jsp">
             <c:param name="playlistId" value="${playlist.id}"/>
+            <c:param name="coverArtVersion" value="${playlist.changed.time}"/>
             <c:param name="coverArtSize" value="200"/>
             <c:param name="caption1" value="${fn:escapeXml(playlist.name)}"/>
             <c:param name="caption2" value="${caption2}"/>
@@ -137,6 +137,7 @@
                 <c:when test="${model.showAvatar}">
                     <sub:url value="avatar.view" var="avatarUrl">
                         <sub:param name="username" value="${model.user.username}"/>
+                        <sub:param name="v" value="${model.avatarVersion}"/>
                     </sub:url>
                     <div style="padding-bottom: 4px">
                         <img src="${avatarUrl}" alt="User" width="30" height="30">
@@ -1,6 +1,10 @@
 package org.airsonic.player.api;
 
 import org.airsonic.player.TestCaseUtils;
+import org.airsonic.player.domain.Player;
+import org.airsonic.player.service.PlayerService;
+import org.airsonic.player.service.SettingsService;
+import org.airsonic.player.service.TranscodingService;
 import org.airsonic.player.util.HomeRule;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
@@ -12,7 +16,12 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
@@ -33,6 +42,12 @@ public class AirsonicRestApiIntTest {
 
     @Autowired
     private MockMvc mvc;
+    @Autowired
+    private SettingsService settingsService;
+    @Autowired
+    private PlayerService playerService;
+    @Autowired
+    private TranscodingService transcodingService;
 
     @ClassRule
     public static final HomeRule classRule = new HomeRule(); // sets airsonic.home to a temporary dir
@@ -56,4 +71,70 @@ public class AirsonicRestApiIntTest {
                 .andExpect(jsonPath("$.subsonic-response.version").value(AIRSONIC_API_VERSION))
                 .andDo(print());
     }
+
+    @Test
+    public void cachedResponsesAreReplacedWhenTranscodingsChange() throws Exception {
+        settingsService.setRestResponseCacheEnabled(true);
+        try {
+            String etag = mvc.perform(restGet("/rest/getGenres"))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getHeader("ETag");
+            assertNotNull(etag);
+            mvc.perform(restGet("/rest/getGenres").header("If-None-Match", etag))
+                    .andExpect(status().isNotModified());
+
+            // Transcoded suffixes depend on the transcodings of the player.
+            for (Player player : playerService.getPlayersForUserAndClientId(AIRSONIC_USER, CLIENT_NAME)) {
+                transcodingService.setTranscodingsForPlayer(player, new int[0]);
+            }
+
+            String newEtag = mvc.perform(restGet("/rest/getGenres").header("If-None-Match", etag))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.subsonic-response.status").value("ok"))
+                    .andReturn().getResponse().getHeader("ETag");
+            assertNotEquals(etag, newEtag);
+        } finally {
+            settingsService.setRestResponseCacheEnabled(false);
+        }
+    }
+
+    @Test
+    public void songsAreTaggedWithoutResponseCache() throws Exception {
+        assertFalse(settingsService.isRestResponseCacheEnabled());
+
+        String etag = mvc.perform(restGet("/rest/getSong").param("id", "1"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotNull(etag);
+        mvc.perform(restGet("/rest/getSong").param("id", "1").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void playedAlbumListsHaveNoEntityTag() throws Exception {
+        String etag = mvc.perform(restGet("/rest/getAlbumList2").param("type", "newest"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotNull(etag);
+
+        // Plays don't change the library generation, so these lists can't be tagged with it.
+        for (String type : new String[]{"recent", "frequent", "random"}) {
+            for (String url : new String[]{"/rest/getAlbumList", "/rest/getAlbumList2"}) {
+                String listEtag = mvc.perform(restGet(url).param("type", type))
+                        .andExpect(status().isOk())
+                        .andExpect(jsonPath("$.subsonic-response.status").value("ok"))
+                        .andReturn().getResponse().getHeader("ETag");
+                assertNull(listEtag);
+            }
+        }
+    }
+
+    private static MockHttpServletRequestBuilder restGet(String url) {
+        return get(url)
+                .param("v", AIRSONIC_API_VERSION)
+                .param("c", CLIENT_NAME)
+                .param("u", AIRSONIC_USER)
+                .param("p", AIRSONIC_PASSWORD)
+                .param("f", EXPECTED_FORMAT);
+    }
 }
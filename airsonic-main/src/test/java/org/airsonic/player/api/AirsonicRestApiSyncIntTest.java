@@ -0,0 +1,212 @@
+package org.airsonic.player.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.airsonic.player.TestCaseUtils;
+import org.airsonic.player.dao.DaoHelper;
+import org.airsonic.player.dao.MusicFolderDao;
+import org.airsonic.player.service.MediaScannerService;
+import org.airsonic.player.service.SettingsService;
+import org.airsonic.player.util.HomeRule;
+import org.airsonic.player.util.MusicFolderTestData;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Integration test of the <code>get*ChangedSince</code> REST methods, whose responses are written element by element.
+ * Each response is parsed as a whole, in all formats.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class AirsonicRestApiSyncIntTest {
+
+    @ClassRule
+    public static final HomeRule classRule = new HomeRule(); // sets airsonic.home to a temporary dir
+
+    private static final String NAMESPACE = "http://subsonic.org/restapi";
+    private static final String CLIENT_NAME = "airsonic";
+    private static final String AIRSONIC_USER = "admin";
+    private static final String AIRSONIC_PASSWORD = "admin";
+    private static final String CALLBACK = "callback";
+    private static final String[] FORMATS = {"xml", "json", "jsonp"};
+
+    private static String AIRSONIC_API_VERSION;
+    private static boolean dataBasePopulated;
+    private static DaoHelper staticDaoHelper;
+
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private MusicFolderDao musicFolderDao;
+    @Autowired
+    private SettingsService settingsService;
+    @Autowired
+    private MediaScannerService mediaScannerService;
+    @Autowired
+    private DaoHelper daoHelper;
+
+    @BeforeClass
+    public static void setupClass() {
+        AIRSONIC_API_VERSION = TestCaseUtils.restApiVersion();
+        dataBasePopulated = false;
+    }
+
+    @AfterClass
+    public static void cleanDataBase() {
+        staticDaoHelper.getJdbcTemplate().execute("DROP SCHEMA PUBLIC CASCADE");
+        staticDaoHelper = null;
+        dataBasePopulated = false;
+    }
+
+    @Before
+    public void setup() {
+        if (!dataBasePopulated) {
+            staticDaoHelper = daoHelper;
+            MusicFolderTestData.getTestMusicFolders().forEach(musicFolderDao::createMusicFolder);
+            settingsService.clearMusicFolderCache();
+            TestCaseUtils.execScan(mediaScannerService);
+            dataBasePopulated = true;
+        }
+    }
+
+    @Test
+    public void songsChangedSince() throws Exception {
+        testChangedSince("/rest/getSongsChangedSince", "songsChangedSince", "song");
+    }
+
+    @Test
+    public void albumsChangedSince() throws Exception {
+        testChangedSince("/rest/getAlbumsChangedSince", "albumsChangedSince", "album");
+    }
+
+    @Test
+    public void artistsChangedSince() throws Exception {
+        testChangedSince("/rest/getArtistsChangedSince", "artistsChangedSince", "artist");
+    }
+
+    private void testChangedSince(String url, String listName, String elementName) throws Exception {
+        Page all = getPage(url, listName, elementName, "xml", 0L, 0, 500);
+        assertThat(all.ids.size()).isGreaterThan(2);
+        assertThat(all.next).isNull();
+
+        for (String format : FORMATS) {
+            // The same elements, in the same order, whether paged or not.
+            assertThat(getPage(url, listName, elementName, format, 0L, 0, 500).ids).isEqualTo(all.ids);
+            List<String> paged = new ArrayList<>();
+            Page page = getPage(url, listName, elementName, format, 0L, 0, 2);
+            while (page.next != null) {
+                assertThat(page.ids).hasSize(2);
+                assertThat(page.next).isEqualTo(page.ids.get(1));
+                paged.addAll(page.ids);
+                page = getPage(url, listName, elementName, format, 0L, Integer.parseInt(page.next), 2);
+            }
+            paged.addAll(page.ids);
+            assertThat(paged).isEqualTo(all.ids);
+
+            // Nothing changed since tomorrow.
+            Page empty = getPage(url, listName, elementName, format, System.currentTimeMillis() + 24L * 3600 * 1000, 0, 2);
+            assertThat(empty.ids).isEmpty();
+            assertThat(empty.next).isNull();
+        }
+    }
+
+    private Page getPage(String url, String listName, String elementName, String format,
+                         long since, int after, int count) throws Exception {
+        MockHttpServletResponse response = mvc.perform(get(url)
+                .param("v", AIRSONIC_API_VERSION)
+                .param("c", CLIENT_NAME)
+                .param("u", AIRSONIC_USER)
+                .param("p", AIRSONIC_PASSWORD)
+                .param("f", format)
+                .param(CALLBACK, CALLBACK)
+                .param("since", String.valueOf(since))
+                .param("after", String.valueOf(after))
+                .param("count", String.valueOf(count)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        byte[] content = response.getContentAsByteArray();
+        switch (format) {
+            case "xml":
+                assertThat(response.getContentType()).startsWith("text/xml");
+                return parseXml(content, listName, elementName);
+            case "json":
+                assertThat(response.getContentType()).startsWith("application/json");
+                return parseJson(content, listName, elementName);
+            default:
+                assertThat(response.getContentType()).startsWith("text/javascript");
+                String jsonp = new String(content, StandardCharsets.UTF_8);
+                assertThat(jsonp).startsWith(CALLBACK + "(").endsWith(");");
+                String json = jsonp.substring(CALLBACK.length() + 1, jsonp.length() - 2);
+                return parseJson(json.getBytes(StandardCharsets.UTF_8), listName, elementName);
+        }
+    }
+
+    private static Page parseXml(byte[] content, String listName, String elementName) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Element root = factory.newDocumentBuilder().parse(new ByteArrayInputStream(content)).getDocumentElement();
+        assertThat(root.getLocalName()).isEqualTo("subsonic-response");
+        assertThat(root.getNamespaceURI()).isEqualTo(NAMESPACE);
+        assertThat(root.getAttribute("status")).isEqualTo("ok");
+
+        Element list = (Element) root.getElementsByTagNameNS(NAMESPACE, listName).item(0);
+        assertThat(list).isNotNull();
+        Page page = new Page();
+        page.next = list.hasAttribute("next") ? list.getAttribute("next") : null;
+        for (Node node = list.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element) {
+                assertThat(node.getLocalName()).isEqualTo(elementName);
+                assertThat(node.getNamespaceURI()).isEqualTo(NAMESPACE);
+                page.ids.add(((Element) node).getAttribute("id"));
+            }
+        }
+        return page;
+    }
+
+    private static Page parseJson(byte[] content, String listName, String elementName) throws Exception {
+        JsonNode root = new ObjectMapper().readTree(content).get("subsonic-response");
+        assertThat(root).isNotNull();
+        assertThat(root.path("status").asText()).isEqualTo("ok");
+
+        JsonNode list = root.get(listName);
+        assertThat(list.isObject()).isTrue();
+        assertThat(list.get(elementName).isArray()).isTrue();
+        Page page = new Page();
+        page.next = list.has("next") ? list.get("next").asText() : null;
+        for (JsonNode element : list.get(elementName)) {
+            page.ids.add(element.get("id").asText());
+        }
+        return page;
+    }
+
+    private static class Page {
+        private final List<String> ids = new ArrayList<>();
+        private String next;
+    }
+}
@@ -0,0 +1,163 @@
+package org.airsonic.player.dao;
+
+import org.airsonic.player.domain.Album;
+import org.airsonic.player.domain.Artist;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MusicFolder;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the <code>*ChangedSince</code> methods of {@link MediaFileDao}, {@link AlbumDao} and {@link ArtistDao}.
+ */
+public class ChangedSinceDaoTestCase extends DaoTestCaseBean2 {
+
+    private static final Date BEFORE = new Date(1000000000000L);
+    private static final Date SINCE = new Date(1100000000000L);
+    private static final Date AFTER = new Date(1200000000000L);
+
+    private final List<MusicFolder> musicFolders = Collections.singletonList(
+            new MusicFolder(1, new File("/music"), "Music", true, BEFORE));
+
+    @Autowired
+    MediaFileDao mediaFileDao;
+
+    @Autowired
+    AlbumDao albumDao;
+
+    @Autowired
+    ArtistDao artistDao;
+
+    @Before
+    public void setUp() {
+        getJdbcTemplate().execute("delete from media_file");
+        getJdbcTemplate().execute("delete from album");
+        getJdbcTemplate().execute("delete from artist");
+    }
+
+    @Test
+    public void testSongsArePagedByKey() {
+        for (int i = 0; i < 5; i++) {
+            createSong("Artist", "Album", i, i % 2 == 0 ? AFTER : BEFORE);
+        }
+
+        List<MediaFile> all = mediaFileDao.getSongsChangedSince(null, 0, 10, musicFolders);
+        assertEquals("Wrong number of songs.", 5, all.size());
+
+        List<MediaFile> first = mediaFileDao.getSongsChangedSince(null, 0, 2, musicFolders);
+        List<MediaFile> second = mediaFileDao.getSongsChangedSince(null, first.get(1).getId(), 2, musicFolders);
+        List<MediaFile> third = mediaFileDao.getSongsChangedSince(null, second.get(1).getId(), 2, musicFolders);
+        List<MediaFile> paged = new ArrayList<>(first);
+        paged.addAll(second);
+        paged.addAll(third);
+        assertEquals("Wrong last page.", 1, third.size());
+        assertEquals("Wrong songs.", ids(all), ids(paged));
+
+        List<MediaFile> changed = mediaFileDao.getSongsChangedSince(SINCE, 0, 10, musicFolders);
+        assertEquals("Wrong number of changed songs.", 3, changed.size());
+        for (MediaFile song : changed) {
+            assertTrue("Unchanged song returned.", song.getChanged().after(SINCE));
+        }
+    }
+
+    @Test
+    public void testAlbumsChangedBySongs() {
+        createAlbum("Artist", "New", AFTER);
+        createAlbum("Artist", "Retagged", BEFORE);
+        createAlbum("Artist", "Old", BEFORE);
+        createSong("Artist", "Retagged", 1, AFTER);
+        createSong("Artist", "Old", 1, BEFORE);
+
+        List<Album> albums = albumDao.getAlbumsChangedSince(SINCE, 0, 10, musicFolders);
+        assertEquals("Wrong number of changed albums.", 2, albums.size());
+        assertEquals("Wrong album.", "New", albums.get(0).getName());
+        assertEquals("Wrong album.", "Retagged", albums.get(1).getName());
+
+        List<Album> next = albumDao.getAlbumsChangedSince(SINCE, albums.get(0).getId(), 1, musicFolders);
+        assertEquals("Wrong number of albums in page.", 1, next.size());
+        assertEquals("Wrong album.", "Retagged", next.get(0).getName());
+        assertTrue("Unexpected page.", albumDao.getAlbumsChangedSince(SINCE, next.get(0).getId(), 1, musicFolders).isEmpty());
+    }
+
+    @Test
+    public void testArtistsChangedByAlbums() {
+        createArtist("Added");
+        createArtist("Retagged");
+        createArtist("Unchanged");
+        createAlbum("Added", "Album", AFTER);
+        createAlbum("Retagged", "Album", BEFORE);
+        createAlbum("Unchanged", "Album", BEFORE);
+        createSong("Retagged", "Album", 1, AFTER);
+        createSong("Unchanged", "Album", 1, BEFORE);
+
+        List<Artist> artists = artistDao.getArtistsChangedSince(SINCE, 0, 10, musicFolders);
+        assertEquals("Wrong number of changed artists.", 2, artists.size());
+        assertEquals("Wrong artist.", "Added", artists.get(0).getName());
+        assertEquals("Wrong artist.", "Retagged", artists.get(1).getName());
+
+        List<Artist> next = artistDao.getArtistsChangedSince(SINCE, artists.get(0).getId(), 10, musicFolders);
+        assertEquals("Wrong number of artists in page.", 1, next.size());
+        assertEquals("Wrong artist.", "Retagged", next.get(0).getName());
+
+        assertEquals("Wrong number of artists.", 3, artistDao.getArtistsChangedSince(null, 0, 10, musicFolders).size());
+    }
+
+    private void createSong(String artist, String album, int track, Date changed) {
+        MediaFile song = new MediaFile();
+        song.setPath("/music/" + artist + "/" + album + "/" + track + ".mp3");
+        song.setParentPath("/music/" + artist + "/" + album);
+        song.setFolder("/music");
+        song.setMediaType(MediaFile.MediaType.MUSIC);
+        song.setFormat("mp3");
+        song.setTitle("Track " + track);
+        song.setArtist(artist);
+        song.setAlbumArtist(artist);
+        song.setAlbumName(album);
+        song.setTrackNumber(track);
+        song.setCreated(BEFORE);
+        song.setChanged(changed);
+        song.setLastScanned(changed);
+        song.setChildrenLastUpdated(BEFORE);
+        song.setPresent(true);
+        mediaFileDao.createOrUpdateMediaFile(song);
+    }
+
+    private void createAlbum(String artist, String name, Date created) {
+        Album album = new Album();
+        album.setPath("/music/" + artist + "/" + name);
+        album.setArtist(artist);
+        album.setName(name);
+        album.setCreated(created);
+        album.setLastScanned(created);
+        album.setPresent(true);
+        album.setFolderId(1);
+        albumDao.createOrUpdateAlbum(album);
+    }
+
+    private void createArtist(String name) {
+        Artist artist = new Artist();
+        artist.setName(name);
+        artist.setLastScanned(BEFORE);
+        artist.setPresent(true);
+        artist.setFolderId(1);
+        artistDao.createOrUpdateArtist(artist);
+    }
+
+    private static List<Integer> ids(List<MediaFile> files) {
+        List<Integer> ids = new ArrayList<>();
+        for (MediaFile file : files) {
+            ids.add(file.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,47 @@
+package org.airsonic.player.dao;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test of {@link RatingDao}.
+ */
+public class RatingDaoTestCase extends DaoTestCaseBean2 {
+
+    @Autowired
+    RatingDao ratingDao;
+
+    @Before
+    public void setUp() {
+        getJdbcTemplate().execute("delete from user_rating");
+    }
+
+    @Test
+    public void testGetRatingsForManyPaths() {
+        int count = AbstractDao.MAX_IN_LIST_SIZE * 2 + 1;
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String path = "path" + i;
+            paths.add(path);
+            getJdbcTemplate().update("insert into user_rating values(?, ?, ?)", "user", path, i % 5 + 1);
+            getJdbcTemplate().update("insert into user_rating values(?, ?, ?)", "other", path, 1);
+        }
+        paths.add("unrated");
+
+        Map<String, Integer> ratings = ratingDao.getRatingsForUser("user", paths);
+        assertEquals("Wrong number of ratings.", count, ratings.size());
+        assertEquals("Wrong rating.", Integer.valueOf(1), ratings.get("path0"));
+        assertEquals("Wrong rating.", Integer.valueOf(5), ratings.get("path" + (count - 2)));
+
+        Map<String, Double> averageRatings = ratingDao.getAverageRatings(paths);
+        assertEquals("Wrong number of average ratings.", count, averageRatings.size());
+        assertEquals("Wrong average rating.", 3.0, averageRatings.get("path" + (count - 2)), 0.0001);
+    }
+}
@@ -0,0 +1,137 @@
+package org.airsonic.player.dao;
+
+import org.airsonic.player.domain.Album;
+import org.airsonic.player.domain.Artist;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.domain.User;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of the starred queries of {@link MediaFileDao}, {@link AlbumDao} and {@link ArtistDao}.
+ */
+public class StarredDaoTestCase extends DaoTestCaseBean2 {
+
+    private static final String USERNAME = "starrer";
+    private static final Date CHANGED = new Date(1000000000000L);
+
+    private final List<MusicFolder> musicFolders = Collections.singletonList(
+            new MusicFolder(1, new File("/music"), "Music", true, CHANGED));
+
+    @Autowired
+    MediaFileDao mediaFileDao;
+
+    @Autowired
+    AlbumDao albumDao;
+
+    @Autowired
+    ArtistDao artistDao;
+
+    @Autowired
+    UserDao userDao;
+
+    @Before
+    public void setUp() {
+        getJdbcTemplate().execute("delete from media_file");
+        getJdbcTemplate().execute("delete from album");
+        getJdbcTemplate().execute("delete from artist");
+        if (userDao.getUserByName(USERNAME, true) == null) {
+            userDao.createUser(new User(USERNAME, "secret", null));
+        }
+    }
+
+    @Test
+    public void testStarredMediaFiles() {
+        List<Integer> albums = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            MediaFile album = createMediaFile("/music/Artist/Album " + i, MediaFile.MediaType.ALBUM);
+            star("starred_media_file", "media_file_id", album.getId(), i);
+            albums.add(0, album.getId());
+        }
+        MediaFile song = createMediaFile("/music/Artist/Album 0/1.mp3", MediaFile.MediaType.MUSIC);
+        star("starred_media_file", "media_file_id", song.getId(), 0);
+        createMediaFile("/music/Artist/Album 0/2.mp3", MediaFile.MediaType.MUSIC);
+
+        assertEquals("Wrong albums.", albums, ids(mediaFileDao.getStarredAlbums(0, 10, USERNAME, musicFolders)));
+        assertEquals("Wrong page.", albums.subList(1, 2), ids(mediaFileDao.getStarredAlbums(1, 1, USERNAME, musicFolders)));
+        assertEquals("Wrong files.", Collections.singletonList(song.getId()), ids(mediaFileDao.getStarredFiles(0, 10, USERNAME, musicFolders)));
+        assertTrue("Unexpected directories.", mediaFileDao.getStarredDirectories(0, 10, USERNAME, musicFolders).isEmpty());
+        assertTrue("Unexpected albums.", mediaFileDao.getStarredAlbums(0, 10, "other", musicFolders).isEmpty());
+    }
+
+    @Test
+    public void testStarredAlbumsAndArtists() {
+        for (int i = 0; i < 3; i++) {
+            Album album = new Album();
+            album.setPath("/music/Artist/Album " + i);
+            album.setArtist("Artist");
+            album.setName("Album " + i);
+            album.setCreated(CHANGED);
+            album.setLastScanned(CHANGED);
+            album.setPresent(true);
+            album.setFolderId(1);
+            albumDao.createOrUpdateAlbum(album);
+            star("starred_album", "album_id", album.getId(), i);
+
+            Artist artist = new Artist();
+            artist.setName("Artist " + i);
+            artist.setLastScanned(CHANGED);
+            artist.setPresent(true);
+            artist.setFolderId(1);
+            artistDao.createOrUpdateArtist(artist);
+            star("starred_artist", "artist_id", artist.getId(), i);
+        }
+
+        List<Album> albums = albumDao.getStarredAlbums(0, 2, USERNAME, musicFolders);
+        assertEquals("Wrong number of albums.", 2, albums.size());
+        assertEquals("Wrong album.", "Album 2", albums.get(0).getName());
+        assertEquals("Wrong album.", "Album 1", albums.get(1).getName());
+
+        List<Artist> artists = artistDao.getStarredArtists(1, 10, USERNAME, musicFolders);
+        assertEquals("Wrong number of artists.", 2, artists.size());
+        assertEquals("Wrong artist.", "Artist 1", artists.get(0).getName());
+        assertEquals("Wrong artist.", "Artist 0", artists.get(1).getName());
+    }
+
+    /**
+     * Stars the given item, some minutes after the previous ones, so that the order is defined.
+     */
+    private void star(String table, String column, int id, int minutes) {
+        getJdbcTemplate().update("insert into " + table + "(" + column + ", username, created) values (?, ?, ?)",
+                                 id, USERNAME, new Date(CHANGED.getTime() + minutes * 60000L));
+    }
+
+    private MediaFile createMediaFile(String path, MediaFile.MediaType mediaType) {
+        MediaFile file = new MediaFile();
+        file.setPath(path);
+        file.setParentPath(new File(path).getParent());
+        file.setFolder("/music");
+        file.setMediaType(mediaType);
+        file.setCreated(CHANGED);
+        file.setChanged(CHANGED);
+        file.setLastScanned(CHANGED);
+        file.setChildrenLastUpdated(CHANGED);
+        file.setPresent(true);
+        mediaFileDao.createOrUpdateMediaFile(file);
+        return mediaFileDao.getMediaFile(path);
+    }
+
+    private static List<Integer> ids(List<MediaFile> files) {
+        List<Integer> ids = new ArrayList<>();
+        for (MediaFile file : files) {
+            ids.add(file.getId());
+        }
+        return ids;
+    }
+}
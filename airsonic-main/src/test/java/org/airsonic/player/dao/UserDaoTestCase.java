@@ -9,6 +9,7 @@ import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.Locale;
 
@@ -88,9 +89,6 @@ public class UserDaoTestCase extends DaoTestCaseBean2 {
         user.setPassword("foo");
         user.setEmail("sindre@foo.bar");
         user.setLdapAuthenticated(true);
-        user.setBytesStreamed(1);
-        user.setBytesDownloaded(2);
-        user.setBytesUploaded(3);
         user.setAdminRole(false);
         user.setCommentRole(false);
         user.setCoverArtRole(false);
@@ -105,9 +103,25 @@ public class UserDaoTestCase extends DaoTestCaseBean2 {
 
         User newUser = userDao.getAllUsers().get(0);
         assertUserEquals(user, newUser);
-        assertEquals("Wrong bytes streamed.", 1, newUser.getBytesStreamed());
-        assertEquals("Wrong bytes downloaded.", 2, newUser.getBytesDownloaded());
-        assertEquals("Wrong bytes uploaded.", 3, newUser.getBytesUploaded());
+    }
+
+    @Test
+    public void testAddUserByteCounts() {
+        User user = new User("sindre", "secret", null);
+        userDao.createUser(user);
+
+        userDao.addUserByteCounts(Collections.singletonMap("sindre", new long[]{1, 2, 3}));
+        userDao.addUserByteCounts(Collections.singletonMap("sindre", new long[]{10, 20, 30}));
+
+        // Updating a user loaded earlier must not overwrite the byte counts.
+        user.setEmail("sindre@foo.bar");
+        userDao.updateUser(user);
+
+        User newUser = userDao.getUserByName("sindre", true);
+        assertEquals("Wrong bytes streamed.", 11, newUser.getBytesStreamed());
+        assertEquals("Wrong bytes downloaded.", 22, newUser.getBytesDownloaded());
+        assertEquals("Wrong bytes uploaded.", 33, newUser.getBytesUploaded());
+        assertEquals("Wrong email.", "sindre@foo.bar", newUser.getEmail());
     }
 
     @Test
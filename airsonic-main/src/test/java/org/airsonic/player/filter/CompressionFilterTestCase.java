@@ -0,0 +1,107 @@
+package org.airsonic.player.filter;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit test of {@link CompressionFilter}.
+ */
+public class CompressionFilterTestCase {
+
+    private static final String BODY = "<subsonic-response status=\"ok\"/>";
+
+    private final CompressionFilter filter = new CompressionFilter();
+
+    @Test
+    public void testCompressesText() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(createRequest("gzip, deflate"), response, (req, res) -> {
+            res.setContentType("text/xml");
+            res.setContentLength(BODY.length());
+            res.getOutputStream().write(BODY.getBytes(StandardCharsets.UTF_8));
+        });
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertNull(response.getHeader("Content-Length"));
+        assertEquals(BODY, gunzip(response.getContentAsByteArray()));
+    }
+
+    @Test
+    public void testDoesNotCompressWithoutGzip() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(createRequest("gzip;q=0"), response, (req, res) -> {
+            res.setContentType("text/xml");
+            res.getOutputStream().write(BODY.getBytes(StandardCharsets.UTF_8));
+        });
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertEquals(BODY, response.getContentAsString());
+    }
+
+    @Test
+    public void testDoesNotCompressImages() throws Exception {
+        byte[] image = {1, 2, 3};
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(createRequest("gzip"), response, (req, res) -> {
+            res.setContentType("image/jpeg");
+            res.setContentLength(image.length);
+            res.getOutputStream().write(image);
+        });
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(image.length, response.getContentLength());
+        assertArrayEquals(image, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void testEmptyResponseStaysEmpty() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(createRequest("gzip"), response, (req, res) -> {
+            ((HttpServletResponse) res).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            res.setContentType("text/xml");
+            res.getOutputStream();
+        });
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void testResetBufferRestartsCompression() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(createRequest("gzip"), response, (req, res) -> {
+            res.setContentType("text/xml");
+            res.getOutputStream().write("<partial".getBytes(StandardCharsets.UTF_8));
+            res.resetBuffer();
+            res.getOutputStream().write(BODY.getBytes(StandardCharsets.UTF_8));
+        });
+
+        assertEquals(BODY, gunzip(response.getContentAsByteArray()));
+    }
+
+    private static MockHttpServletRequest createRequest(String acceptEncoding) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/rest/getArtists");
+        request.addHeader("Accept-Encoding", acceptEncoding);
+        return request;
+    }
+
+    private static String gunzip(byte[] bytes) throws Exception {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+}
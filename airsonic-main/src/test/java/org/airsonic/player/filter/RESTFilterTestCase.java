@@ -0,0 +1,68 @@
+package org.airsonic.player.filter;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of {@link RESTFilter}.
+ */
+public class RESTFilterTestCase {
+
+    private final RESTFilter filter = new RESTFilter();
+
+    @Test
+    public void testErrorBeforeCommitReplacesResponse() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/rest/getArtists");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (req, res) -> {
+            ((HttpServletResponse) res).setHeader("ETag", "\"tag\"");
+            res.getOutputStream().write("<subsonic-response><artists>".getBytes(StandardCharsets.UTF_8));
+            throw new IllegalStateException("Marshalling failed");
+        });
+
+        String body = response.getContentAsString();
+        assertTrue(body, body.startsWith("<?xml"));
+        assertTrue(body, body.contains("Marshalling failed"));
+        assertFalse(body, body.contains("<artists>"));
+        assertNull(response.getHeader("ETag"));
+        assertEquals("*", response.getHeader("Access-Control-Allow-Origin"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testErrorAfterCommitIsPassedOn() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/rest/getArtists");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (req, res) -> {
+            res.getOutputStream().write("<subsonic-response><artists>".getBytes(StandardCharsets.UTF_8));
+            res.flushBuffer();
+            throw new IllegalStateException("Marshalling failed");
+        });
+    }
+
+    @Test
+    public void testDisconnectAfterCommitIsIgnored() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/rest/getArtists");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (req, res) -> {
+            res.getOutputStream().write("<subsonic-response><artists>".getBytes(StandardCharsets.UTF_8));
+            res.flushBuffer();
+            throw new IOException("Broken pipe");
+        });
+
+        assertEquals("<subsonic-response><artists>", response.getContentAsString());
+    }
+}
@@ -0,0 +1,106 @@
+package org.airsonic.player.service;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.UserSettings;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AudioScrobblerServiceUnitTest {
+
+    private static final String FAILING_USER = "failing";
+    private static final String WORKING_USER = "working";
+
+    @Mock
+    private SettingsService settingsService;
+    private final AtomicInteger failingAttempts = new AtomicInteger();
+    private final CountDownLatch failed = new CountDownLatch(1);
+    private final CountDownLatch submitted = new CountDownLatch(3);
+    private AudioScrobblerService audioScrobblerService;
+
+    @Before
+    public void setUp() {
+        when(settingsService.getUserSettings(anyString())).thenAnswer(invocation -> {
+            String username = (String) invocation.getArguments()[0];
+            UserSettings settings = new UserSettings(username);
+            settings.setLastFmEnabled(true);
+            settings.setLastFmUsername(username);
+            settings.setLastFmPassword("secret");
+            return settings;
+        });
+
+        // Last.fm cannot be reached for the failing user only.
+        audioScrobblerService = new AudioScrobblerService() {
+            @Override
+            String[] executeRequest(HttpUriRequest request) throws IOException {
+                if (request.getURI().toString().contains("u=" + FAILING_USER)) {
+                    failingAttempts.incrementAndGet();
+                    failed.countDown();
+                    throw new IOException("Connection refused");
+                }
+                if ("GET".equals(request.getMethod())) {
+                    return new String[]{"OK", "session", "http://localhost/np", "http://localhost/submission"};
+                }
+                submitted.countDown();
+                return new String[]{"OK"};
+            }
+        };
+        audioScrobblerService.setSettingsService(settingsService);
+    }
+
+    @Test
+    public void networkErrorDelaysOnlyTheFailingUser() throws Exception {
+        audioScrobblerService.register(createSong(1), FAILING_USER, true, null);
+        audioScrobblerService.register(createSong(2), FAILING_USER, true, null);
+        assertThat(failed.await(10, TimeUnit.SECONDS)).isTrue();
+
+        for (int i = 1; i <= 3; i++) {
+            audioScrobblerService.register(createSong(i), WORKING_USER, true, null);
+        }
+        assertThat(submitted.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // The failing user is retried after a minute, not once per registration.
+        assertThat(failingAttempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void destroySendsQueuedRegistrations() throws Exception {
+        audioScrobblerService.register(createSong(1), FAILING_USER, true, null);
+        assertThat(failed.await(10, TimeUnit.SECONDS)).isTrue();
+        for (int i = 1; i <= 3; i++) {
+            audioScrobblerService.register(createSong(i), WORKING_USER, true, null);
+        }
+
+        // Waits for the queued registrations, but not for the retry a minute later.
+        long start = System.nanoTime();
+        audioScrobblerService.destroy();
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(30L);
+        assertThat(submitted.getCount()).isEqualTo(0L);
+        assertThat(failingAttempts.get()).isEqualTo(1);
+
+        // Registrations after shutdown are dropped.
+        audioScrobblerService.register(createSong(4), WORKING_USER, true, null);
+    }
+
+    private static MediaFile createSong(int track) {
+        MediaFile song = new MediaFile();
+        song.setMediaType(MediaFile.MediaType.MUSIC);
+        song.setArtist("Artist");
+        song.setAlbumName("Album");
+        song.setTitle("Track " + track);
+        return song;
+    }
+}
@@ -0,0 +1,308 @@
+package org.airsonic.player.service;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.airsonic.player.dao.AlbumDao;
+import org.airsonic.player.dao.ArtistDao;
+import org.airsonic.player.domain.Album;
+import org.airsonic.player.domain.CoverArtScheme;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.domain.Playlist;
+import org.airsonic.player.util.HomeRule;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.imageio.ImageIO;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test of {@link CoverArtService}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CoverArtServiceTestCase {
+
+    private static final int ALBUM_ID = 1;
+
+    @Rule
+    public HomeRule homeRule = new HomeRule();
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private SettingsService settingsService;
+    @Mock
+    private AlbumDao albumDao;
+    @Mock
+    private ArtistDao artistDao;
+    @Mock
+    private MediaFileService mediaFileService;
+    @Mock
+    private PlaylistService playlistService;
+    @Mock
+    private TranscodingService transcodingService;
+    private CacheManager cacheManager;
+    private CoverArtService coverArtService;
+    private File cover;
+    private Album album;
+
+    @Before
+    public void setUp() throws IOException {
+        when(settingsService.getCoverArtConcurrency()).thenReturn(4);
+        when(settingsService.getCoverArtQuality()).thenReturn(90);
+
+        cacheManager = CacheManager.newInstance(new Configuration().name("CoverArtServiceTestCase"));
+        Cache coverArtCache = new Cache(new CacheConfiguration("coverArtCache", 100));
+        cacheManager.addCache(coverArtCache);
+
+        coverArtService = new CoverArtService();
+        coverArtService.setSettingsService(settingsService);
+        coverArtService.setAlbumDao(albumDao);
+        coverArtService.setArtistDao(artistDao);
+        coverArtService.setMediaFileService(mediaFileService);
+        coverArtService.setPlaylistService(playlistService);
+        coverArtService.setTranscodingService(transcodingService);
+        coverArtService.setCoverArtCache(coverArtCache);
+        coverArtService.init();
+
+        cover = createImage(folder.newFile("cover.jpg"), 600);
+        album = new Album();
+        album.setId(ALBUM_ID);
+        album.setName("Album");
+        album.setArtist("Artist");
+        album.setCoverArtPath(cover.getPath());
+        album.setLastScanned(new Date());
+        when(albumDao.getAlbum(ALBUM_ID)).thenReturn(album);
+    }
+
+    @After
+    public void tearDown() {
+        coverArtService.destroy();
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void testThumbnailsAreServedFromMemory() throws Exception {
+        CoverArtService.Thumbnail thumbnail = coverArtService.getThumbnail(createAlbumRequest(), 160);
+        File cachedImage = getCachedImage(160);
+        assertThat(cachedImage).exists();
+        assertThat(thumbnail.isCurrent()).isTrue();
+        assertThat(thumbnail.getContentType()).isEqualTo("image/jpeg");
+
+        // A hit neither reads nor checks the thumbnail file.
+        assertThat(cachedImage.delete()).isTrue();
+        assertThat(coverArtService.getThumbnail(createAlbumRequest(), 160)).isSameAs(thumbnail);
+        assertThat(cachedImage).doesNotExist();
+
+        // Changing the cover changes the key.
+        assertThat(cover.setLastModified(cover.lastModified() + 10000L)).isTrue();
+        assertThat(coverArtService.getThumbnail(createAlbumRequest(), 160)).isNotSameAs(thumbnail);
+        assertThat(cachedImage).exists();
+    }
+
+    @Test
+    public void testPregeneratesStandardSizes() throws Exception {
+        Album withoutCover = new Album();
+        withoutCover.setId(ALBUM_ID + 1);
+        withoutCover.setLastScanned(new Date());
+        when(albumDao.getAlphabeticalAlbums(anyInt(), anyInt(), anyBoolean(), anyBoolean(), anyListOf(MusicFolder.class)))
+                .thenReturn(Arrays.asList(album, withoutCover));
+
+        coverArtService.pregenerateThumbnails();
+
+        for (CoverArtScheme scheme : Arrays.asList(CoverArtScheme.SMALL, CoverArtScheme.MEDIUM, CoverArtScheme.LARGE)) {
+            File cachedImage = getCachedImage(scheme.getSize());
+            waitFor(cachedImage);
+            assertThat(ImageIO.read(cachedImage).getWidth()).isEqualTo(scheme.getSize());
+        }
+        File autoCover = new File(getCachedImage(CoverArtScheme.SMALL.getSize()).getParentFile(),
+                                  DigestUtils.md5Hex("al-" + withoutCover.getId()) + ".png");
+        assertThat(autoCover).doesNotExist();
+    }
+
+    @Test
+    public void testLargeImagesAreDecodedSubsampled() throws Exception {
+        File large = createImage(folder.newFile("large.jpg"), 1000);
+        BufferedImage image;
+        try (InputStream in = new FileInputStream(large)) {
+            image = CoverArtService.readImage(in, 100);
+        }
+        assertThat(image.getWidth()).isEqualTo(200);
+        assertThat(image.getHeight()).isEqualTo(200);
+
+        BufferedImage thumb = CoverArtService.scale(image, 100, 100);
+        assertThat(thumb.getWidth()).isEqualTo(100);
+        assertThat(thumb.getHeight()).isEqualTo(100);
+
+        // Images smaller than twice the size are decoded in full.
+        try (InputStream in = new FileInputStream(cover)) {
+            assertThat(CoverArtService.readImage(in, 300).getWidth()).isEqualTo(600);
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestsCreateThumbnailOnce() throws Exception {
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<CoverArtService.Thumbnail>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit((Callable<CoverArtService.Thumbnail>) () -> {
+                    start.await();
+                    return coverArtService.getThumbnail(createAlbumRequest(), 300);
+                }));
+            }
+            start.countDown();
+
+            Set<String> etags = new HashSet<>();
+            for (Future<CoverArtService.Thumbnail> future : futures) {
+                etags.add(future.get().getEtag());
+            }
+            assertThat(etags).hasSize(1);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // The quality is looked up once per encoded thumbnail.
+        verify(settingsService, times(1)).getCoverArtQuality();
+    }
+
+    @Test
+    public void testPlaylistMosaicIsMadeOfPregeneratedThumbnails() throws Exception {
+        Playlist playlist = new Playlist();
+        playlist.setId(1);
+        playlist.setName("Playlist");
+        playlist.setChanged(new Date());
+        when(playlistService.getPlaylist(1)).thenReturn(playlist);
+
+        List<MediaFile> songs = new ArrayList<>();
+        List<File> covers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            MediaFile album = new MediaFile();
+            album.setPath(folder.getRoot().getPath() + "/Album " + i);
+            album.setMediaType(MediaFile.MediaType.ALBUM);
+            MediaFile song = new MediaFile();
+            song.setPath(album.getPath() + "/song.mp3");
+            song.setMediaType(MediaFile.MediaType.MUSIC);
+            File albumCover = createImage(folder.newFile("cover" + i + ".jpg"), 600);
+            when(mediaFileService.getParentOf(song)).thenReturn(album);
+            when(mediaFileService.getCoverArt(album)).thenReturn(albumCover);
+            songs.add(song);
+            covers.add(albumCover);
+        }
+        when(playlistService.getFilesInPlaylist(1)).thenReturn(songs);
+
+        CoverArtService.Thumbnail thumbnail = coverArtService.getThumbnail(coverArtService.createCoverArtRequest("pl-1", 0), 200);
+        assertThat(thumbnail.getContentType()).isEqualTo("image/png");
+        assertThat(ImageIO.read(new ByteArrayInputStream(thumbnail.getData())).getWidth()).isEqualTo(200);
+
+        // The tiles are scaled from the smallest standard thumbnail of at least half the size.
+        for (File albumCover : covers) {
+            String name = DigestUtils.md5Hex(albumCover.getPath()) + ".jpeg";
+            assertThat(new File(getThumbsDirectory(CoverArtScheme.SMALL.getSize()), name)).exists();
+            assertThat(new File(getThumbsDirectory(100), name)).doesNotExist();
+        }
+    }
+
+    @Test
+    public void testVideoFrameIsExtractedOnceForAllSizes() throws Exception {
+        MediaFile video = new MediaFile();
+        video.setId(5);
+        video.setPath(folder.getRoot().getPath() + "/video.mp4");
+        video.setMediaType(MediaFile.MediaType.VIDEO);
+        video.setChanged(new Date(System.currentTimeMillis() - 60000L));
+        when(mediaFileService.getMediaFile(5)).thenReturn(video);
+        File frame = createImage(folder.newFile("frame.jpg"), 600);
+        when(transcodingService.getTranscodedInputStream(any(TranscodingService.Parameters.class)))
+                .thenAnswer(invocation -> new FileInputStream(frame));
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<CoverArtService.Thumbnail>> futures = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                for (CoverArtScheme scheme : Arrays.asList(CoverArtScheme.SMALL, CoverArtScheme.MEDIUM, CoverArtScheme.LARGE)) {
+                    futures.add(executor.submit(() -> coverArtService.getThumbnail(coverArtService.createCoverArtRequest("5", 0), scheme.getSize())));
+                }
+            }
+            for (Future<CoverArtService.Thumbnail> future : futures) {
+                assertThat(future.get().getData()).isNotEmpty();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // All sizes are scaled from a single frame, extracted at twice the largest standard size.
+        ArgumentCaptor<TranscodingService.Parameters> parameters = ArgumentCaptor.forClass(TranscodingService.Parameters.class);
+        verify(transcodingService, times(1)).getTranscodedInputStream(parameters.capture());
+        assertThat(parameters.getValue().getVideoTranscodingSettings().getHeight()).isEqualTo(CoverArtScheme.LARGE.getSize() * 2);
+    }
+
+    private CoverArtService.CoverArtRequest createAlbumRequest() {
+        return coverArtService.createCoverArtRequest("al-" + ALBUM_ID, 0);
+    }
+
+    private File getCachedImage(int size) {
+        return new File(getThumbsDirectory(size), DigestUtils.md5Hex(cover.getPath()) + ".jpeg");
+    }
+
+    private static File getThumbsDirectory(int size) {
+        return new File(new File(SettingsService.getAirsonicHome(), "thumbs"), String.valueOf(size));
+    }
+
+    private static void waitFor(File file) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (!file.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50L);
+        }
+        assertThat(file).exists();
+    }
+
+    private static File createImage(File file, int size) throws IOException {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.ORANGE);
+        graphics.fillRect(0, 0, size, size / 2);
+        graphics.dispose();
+        ImageIO.write(image, "jpeg", file);
+        return file;
+    }
+}
@@ -0,0 +1,112 @@
+package org.airsonic.player.service;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.airsonic.player.dao.MediaFileDao;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.PlayCount;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MediaFileServiceUnitTest {
+
+    private static final String ALBUM_PATH = "/music/Artist/Album";
+
+    private MediaFileService mediaFileService;
+    @Mock
+    private MediaFileDao mediaFileDao;
+    @Mock
+    private SecurityService securityService;
+    @Mock
+    private SettingsService settingsService;
+    @Mock
+    private Ehcache mediaFileMemoryCache;
+    private MediaFile song1;
+    private MediaFile song2;
+
+    @Before
+    public void setUp() {
+        mediaFileService = new MediaFileService();
+        mediaFileService.setMediaFileDao(mediaFileDao);
+        mediaFileService.setSecurityService(securityService);
+        mediaFileService.setSettingsService(settingsService);
+        mediaFileService.setMediaFileMemoryCache(mediaFileMemoryCache);
+
+        MediaFile album = new MediaFile();
+        album.setPath(ALBUM_PATH);
+        album.setMediaType(MediaFile.MediaType.ALBUM);
+        when(mediaFileMemoryCache.get(new File(ALBUM_PATH))).thenReturn(new Element(new File(ALBUM_PATH), album));
+
+        song1 = createSong(1);
+        song2 = createSong(2);
+    }
+
+    @Test
+    public void playsAreMergedAndSavedOnce() {
+        mediaFileService.incrementPlayCount(song1);
+        mediaFileService.incrementPlayCount(song1);
+        mediaFileService.incrementPlayCount(song2);
+        assertThat(song1.getPlayCount()).isEqualTo(0);
+
+        mediaFileService.destroy();
+        mediaFileService.destroy();
+
+        ArgumentCaptor<Map> filePlayCounts = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<Map> albumPlayCounts = ArgumentCaptor.forClass(Map.class);
+        verify(mediaFileDao, times(1)).addPlayCounts(filePlayCounts.capture(), albumPlayCounts.capture());
+        assertThat(filePlayCounts.getValue()).hasSize(3);
+        assertThat(getCount(filePlayCounts.getValue(), song1.getPath())).isEqualTo(2);
+        assertThat(getCount(filePlayCounts.getValue(), song2.getPath())).isEqualTo(1);
+        assertThat(getCount(filePlayCounts.getValue(), ALBUM_PATH)).isEqualTo(3);
+        assertThat(getCount(albumPlayCounts.getValue(), Pair.of("Artist", "Album"))).isEqualTo(3);
+        verify(mediaFileMemoryCache).remove(new File(song1.getPath()));
+        verify(mediaFileMemoryCache).remove(new File(ALBUM_PATH));
+    }
+
+    @Test
+    public void playsAreKeptWhenSavingFails() {
+        doThrow(new RuntimeException("Database unavailable")).doNothing()
+                .when(mediaFileDao).addPlayCounts(anyMap(), anyMap());
+
+        mediaFileService.incrementPlayCount(song1);
+        mediaFileService.destroy();
+        mediaFileService.incrementPlayCount(song1);
+        mediaFileService.destroy();
+
+        ArgumentCaptor<Map> filePlayCounts = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<Map> albumPlayCounts = ArgumentCaptor.forClass(Map.class);
+        verify(mediaFileDao, times(2)).addPlayCounts(filePlayCounts.capture(), albumPlayCounts.capture());
+        assertThat(getCount(filePlayCounts.getValue(), song1.getPath())).isEqualTo(2);
+        assertThat(getCount(albumPlayCounts.getValue(), Pair.of("Artist", "Album"))).isEqualTo(2);
+    }
+
+    private static int getCount(Map<?, ?> playCounts, Object key) {
+        return ((PlayCount) playCounts.get(key)).getCount();
+    }
+
+    private static MediaFile createSong(int track) {
+        MediaFile song = new MediaFile();
+        song.setPath(ALBUM_PATH + "/" + track + ".mp3");
+        song.setParentPath(ALBUM_PATH);
+        song.setMediaType(MediaFile.MediaType.MUSIC);
+        song.setAlbumArtist("Artist");
+        song.setAlbumName("Album");
+        return song;
+    }
+}
@@ -20,9 +20,23 @@
 package org.airsonic.player.service;
 
 import junit.framework.TestCase;
+import org.airsonic.player.dao.ArtistDao;
+import org.airsonic.player.domain.Artist;
+import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.domain.MusicIndex;
 
+import java.io.File;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.SortedMap;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Unit test of {@link MusicIndex}.
@@ -74,4 +88,42 @@ public class MusicIndexServiceTestCase extends TestCase {
         assertEquals("Y", indexes.get(3).getPrefixes().get(1));
         assertEquals("Z", indexes.get(3).getPrefixes().get(2));
     }
-}
\ No newline at end of file
+
+    public void testIndexedId3ArtistsCachedPerLibraryGeneration() {
+        SettingsService settingsService = mock(SettingsService.class);
+        when(settingsService.getIndexString()).thenReturn("A B C");
+        when(settingsService.getIgnoredArticlesAsArray()).thenReturn(new String[0]);
+        when(settingsService.getLocale()).thenReturn(Locale.ENGLISH);
+        ArtistDao artistDao = mock(ArtistDao.class);
+        Artist artist = new Artist();
+        artist.setName("Abba");
+        when(artistDao.getAlphabetialArtists(anyInt(), anyInt(), anyList())).thenReturn(Collections.singletonList(artist));
+        LibraryGenerationService libraryGenerationService = new LibraryGenerationService();
+
+        MusicIndexService service = new MusicIndexService();
+        service.setSettingsService(settingsService);
+        service.setArtistDao(artistDao);
+        service.setLibraryGenerationService(libraryGenerationService);
+        List<MusicFolder> folders = Collections.singletonList(new MusicFolder(1, new File("music"), "Music", true, null));
+
+        SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithArtist>> index = service.getIndexedId3Artists(folders);
+        assertEquals(1, index.size());
+        List<MusicIndex.SortableArtistWithArtist> artists = index.values().iterator().next();
+        assertEquals("Abba", artists.get(0).getArtist().getName());
+        try {
+            artists.clear();
+            fail("Cached lists of artists must not be modifiable.");
+        } catch (UnsupportedOperationException x) {
+            // Expected
+        }
+
+        // User data, such as play counts and stars, do not change indexes.
+        libraryGenerationService.increment();
+        assertSame(index, service.getIndexedId3Artists(folders));
+        verify(artistDao, times(1)).getAlphabetialArtists(anyInt(), anyInt(), anyList());
+
+        libraryGenerationService.incrementLibrary();
+        assertNotSame(index, service.getIndexedId3Artists(folders));
+        verify(artistDao, times(2)).getAlphabetialArtists(anyInt(), anyInt(), anyList());
+    }
+}
@@ -0,0 +1,164 @@
+package org.airsonic.player.service;
+
+import org.airsonic.player.dao.PlayerDao;
+import org.airsonic.player.domain.Player;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import javax.servlet.http.HttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PlayerServiceUnitTest {
+
+    private static final String IP_ADDRESS = "192.168.1.10";
+    private static final String USERNAME = "user";
+
+    private PlayerService playerService;
+    @Mock
+    private PlayerDao playerDao;
+    @Mock
+    private SecurityService securityService;
+    @Mock
+    private StatusService statusService;
+    @Mock
+    private TranscodingService transcodingService;
+    @Mock
+    private LibraryGenerationService libraryGenerationService;
+
+    @Before
+    public void setUp() {
+        AtomicInteger nextId = new AtomicInteger(1);
+        doAnswer(invocation -> {
+            ((Player) invocation.getArguments()[0]).setId(nextId.getAndIncrement());
+            return null;
+        }).when(playerDao).createPlayer(any(Player.class));
+        when(securityService.getCurrentUsername(any(HttpServletRequest.class))).thenReturn(USERNAME);
+
+        playerService = new PlayerService();
+        playerService.setPlayerDao(playerDao);
+        playerService.setSecurityService(securityService);
+        playerService.setStatusService(statusService);
+        playerService.setTranscodingService(transcodingService);
+        playerService.setLibraryGenerationService(libraryGenerationService);
+        playerService.init();
+    }
+
+    @Test
+    public void concurrentRequestsFromSameClientCreateOnePlayer() throws Exception {
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Player>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit((Callable<Player>) () -> {
+                    start.await();
+                    return playerService.getPlayer(createRequest(), null, false, false);
+                }));
+            }
+            start.countDown();
+
+            Set<Integer> ids = new HashSet<>();
+            for (Future<Player> future : futures) {
+                ids.add(future.get().getId());
+            }
+            assertThat(ids).hasSize(1);
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(playerDao, times(1)).createPlayer(any(Player.class));
+    }
+
+    @Test
+    public void concurrentRestRequestsFromSameClientCreateOnePlayer() throws Exception {
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Player>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit((Callable<Player>) () -> {
+                    start.await();
+                    return playerService.getOrCreatePlayerForUserAndClientId(USERNAME, "client", Player::new);
+                }));
+            }
+            start.countDown();
+
+            Set<Integer> ids = new HashSet<>();
+            for (Future<Player> future : futures) {
+                ids.add(future.get().getId());
+            }
+            assertThat(ids).hasSize(1);
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(playerDao, times(1)).createPlayer(any(Player.class));
+        assertThat(playerService.getPlayersForUserAndClientId(USERNAME, "client")).hasSize(1);
+        assertThat(playerService.getPlayersForUserAndClientId(USERNAME, null)).isEmpty();
+    }
+
+    @Test
+    public void lookupsFollowUpdatedPlayers() throws Exception {
+        Player player = playerService.getPlayer(createRequest(), null, false, false);
+        assertThat(playerService.getPlayersForUserAndClientId(USERNAME, null)).extracting(Player::getId).containsExactly(player.getId());
+
+        player.setUsername("other");
+        playerService.updatePlayer(player);
+        assertThat(playerService.getPlayersForUserAndClientId(USERNAME, null)).isEmpty();
+        assertThat(playerService.getPlayersForUserAndClientId("other", null)).extracting(Player::getId).containsExactly(player.getId());
+
+        // The player now belongs to another user, so a new one is created.
+        Player newPlayer = playerService.getPlayer(createRequest(), null, false, false);
+        assertThat(newPlayer.getId()).isNotEqualTo(player.getId());
+        assertThat(playerService.getPlayer(createRequest(), null, false, false).getId()).isEqualTo(newPlayer.getId());
+
+        playerService.removePlayerById(newPlayer.getId());
+        assertThat(playerService.getPlayersForUserAndClientId(USERNAME, null)).isEmpty();
+    }
+
+    @Test
+    public void playersSeenByRequestsAreSavedOnDestroy() throws Exception {
+        Player player = playerService.getPlayer(createRequest(), null, false, true);
+        verify(playerDao, never()).updatePlayer(any(Player.class));
+
+        playerService.destroy();
+
+        ArgumentCaptor<Player> saved = ArgumentCaptor.forClass(Player.class);
+        verify(playerDao).updatePlayer(saved.capture());
+        assertThat(saved.getValue().getId()).isEqualTo(player.getId());
+        assertThat(saved.getValue().getIpAddress()).isEqualTo(IP_ADDRESS);
+        assertThat(saved.getValue().getUsername()).isEqualTo(USERNAME);
+        assertThat(saved.getValue().getLastSeen()).isNotNull();
+    }
+
+    private static MockHttpServletRequest createRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/rest/stream");
+        request.setRemoteAddr(IP_ADDRESS);
+        request.addHeader("user-agent", "test");
+        return request;
+    }
+}
@@ -20,6 +20,25 @@
 package org.airsonic.player.service;
 
 import junit.framework.TestCase;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.airsonic.player.dao.UserDao;
+import org.airsonic.player.domain.User;
+import org.mockito.ArgumentCaptor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 /**
  * Unit test of {@link SecurityService}.
@@ -57,5 +76,61 @@ public class SecurityServiceTestCase extends TestCase {
         assertFalse(service.isFileInFolder("/music\\../foo", "/music"));
         assertFalse(service.isFileInFolder("/music/..\\bar/../foo", "/music"));
     }
-}
 
+    public void testRestAuthenticationsAreForgottenWhenUserIsUpdated() {
+        CacheManager cacheManager = CacheManager.newInstance(new Configuration().name("SecurityServiceTestCase"));
+        try {
+            Cache cache = new Cache(new CacheConfiguration("restAuthenticationCache", 10));
+            cacheManager.addCache(cache);
+            Cache userCache = new Cache(new CacheConfiguration("userCache", 10));
+            cacheManager.addCache(userCache);
+
+            SecurityService service = new SecurityService();
+            service.setUserDao(mock(UserDao.class));
+            service.setUserCache(userCache);
+            service.setRestAuthenticationCache(cache);
+
+            List<String> key = Arrays.asList("admin", "token", "salt");
+            List<String> otherKey = Arrays.asList("guest", "token", "salt");
+            Authentication authentication = new UsernamePasswordAuthenticationToken("admin", "token");
+            service.putRestAuthentication(key, authentication);
+            service.putRestAuthentication(otherKey, authentication);
+            assertSame(authentication, service.getRestAuthentication(Arrays.asList("admin", "token", "salt")));
+            assertNull(service.getRestAuthentication(Arrays.asList("admin", "other", "salt")));
+
+            service.updateUser(new User("Admin", "secret", null));
+            assertNull(service.getRestAuthentication(key));
+            assertSame(authentication, service.getRestAuthentication(otherKey));
+        } finally {
+            cacheManager.shutdown();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testByteCountsAreSavedOnceAndRetriedOnFailure() {
+        UserDao userDao = mock(UserDao.class);
+        SecurityService service = new SecurityService();
+        service.setUserDao(userDao);
+        User user = new User("admin", "secret", null);
+
+        doThrow(new RuntimeException("Database unavailable")).when(userDao).addUserByteCounts(anyMapOf(String.class, long[].class));
+        service.updateUserByteCounts(user, 1, 2, 3);
+        service.updateUserByteCounts(user, 10, 20, 30);
+        service.destroy();
+
+        UserDao workingUserDao = mock(UserDao.class);
+        service.setUserDao(workingUserDao);
+        service.updateUserByteCounts(user, 100, 200, 300);
+        service.destroy();
+
+        ArgumentCaptor<Map> saved = ArgumentCaptor.forClass(Map.class);
+        verify(workingUserDao).addUserByteCounts(saved.capture());
+        Map<String, long[]> byteCounts = saved.getValue();
+        assertEquals(Collections.singleton("admin"), byteCounts.keySet());
+        assertTrue(Arrays.equals(new long[]{111, 222, 333}, byteCounts.get("admin")));
+
+        // Nothing is left to save.
+        service.destroy();
+        verify(workingUserDao).addUserByteCounts(Collections.emptyMap());
+    }
+}
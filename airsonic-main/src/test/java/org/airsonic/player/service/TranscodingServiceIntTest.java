@@ -1,5 +1,6 @@
 package org.airsonic.player.service;
 
+import org.airsonic.player.domain.Player;
 import org.airsonic.player.domain.Transcoding;
 import org.airsonic.player.util.HomeRule;
 import org.junit.ClassRule;
@@ -10,6 +11,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import static org.junit.Assert.assertNotEquals;
 import static org.mockito.Mockito.*;
 
 @RunWith(SpringRunner.class)
@@ -20,6 +22,8 @@ public class TranscodingServiceIntTest {
     private TranscodingService transcodingService;
     @SpyBean
     private PlayerService playerService;
+    @Autowired
+    private LibraryGenerationService libraryGenerationService;
 
     @ClassRule
     public static final HomeRule classRule = new HomeRule(); // sets airsonic.home to a temporary dir
@@ -39,4 +43,14 @@ public class TranscodingServiceIntTest {
         transcodingService.createTranscoding(transcoding);
         verify(playerService).getAllPlayers();
     }
+
+    @Test
+    public void setTranscodingsForPlayerIncrementsGeneration() {
+        Player player = new Player();
+        playerService.createPlayer(player);
+        long generation = libraryGenerationService.getGeneration();
+
+        transcodingService.setTranscodingsForPlayer(player, new int[0]);
+        assertNotEquals(generation, libraryGenerationService.getGeneration());
+    }
 }
@@ -0,0 +1,107 @@
+package org.airsonic.player.service.metadata;
+
+import org.airsonic.player.service.SettingsService;
+import org.airsonic.player.util.HomeRule;
+import org.airsonic.player.util.MusicFolderTestData;
+import org.apache.commons.io.FileUtils;
+import org.jaudiotagger.audio.AudioFile;
+import org.jaudiotagger.audio.AudioFileIO;
+import org.jaudiotagger.tag.Tag;
+import org.jaudiotagger.tag.images.Artwork;
+import org.jaudiotagger.tag.images.ArtworkFactory;
+import org.jaudiotagger.tag.reference.PictureTypes;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit test of {@link JaudiotaggerParser#extractArtwork}.
+ */
+public class JaudiotaggerParserTestCase {
+
+    private static final String SONG = "/_DIR_ Ravel/_DIR_ Ravel - Complete Piano Works/01 - Gaspard de la Nuit - i. Ondine.mp3";
+
+    @Rule
+    public HomeRule homeRule = new HomeRule();
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final JaudiotaggerParser parser = new JaudiotaggerParser(mock(SettingsService.class));
+    private File song;
+
+    @Before
+    public void setUp() throws Exception {
+        song = new File(folder.getRoot(), "song.mp3");
+        FileUtils.copyFile(new File(MusicFolderTestData.resolveMusicFolderPath() + SONG), song);
+    }
+
+    @Test
+    public void testArtworkIsExtractedOncePerModification() throws Exception {
+        byte[] red = createImage(Color.RED);
+        setArtwork(red);
+        File extracted = parser.extractArtwork(song);
+        assertThat(extracted.getName()).endsWith(".png");
+        assertThat(Files.readAllBytes(extracted.toPath())).isEqualTo(red);
+
+        // The file is not parsed again while unmodified.
+        long lastModified = song.lastModified();
+        Files.write(song.toPath(), new byte[]{0});
+        assertThat(song.setLastModified(lastModified)).isTrue();
+        assertThat(parser.extractArtwork(song)).isEqualTo(extracted);
+
+        // Retagging replaces the extracted copy.
+        setUp();
+        byte[] blue = createImage(Color.BLUE);
+        setArtwork(blue);
+        assertThat(song.setLastModified(lastModified + 10000L)).isTrue();
+        File retagged = parser.extractArtwork(song);
+        assertThat(retagged).isNotEqualTo(extracted);
+        assertThat(Files.readAllBytes(retagged.toPath())).isEqualTo(blue);
+        assertThat(extracted).doesNotExist();
+    }
+
+    @Test
+    public void testFilesWithoutArtworkAreNotParsedAgain() throws Exception {
+        assertThat(parser.extractArtwork(song)).isNull();
+
+        long lastModified = song.lastModified();
+        Files.write(song.toPath(), new byte[]{0});
+        assertThat(song.setLastModified(lastModified)).isTrue();
+        assertThat(parser.extractArtwork(song)).isNull();
+    }
+
+    private void setArtwork(byte[] image) throws Exception {
+        AudioFile audioFile = AudioFileIO.read(song);
+        Tag tag = audioFile.getTagOrCreateAndSetDefault();
+        Artwork artwork = ArtworkFactory.getNew();
+        artwork.setBinaryData(image);
+        artwork.setMimeType("image/png");
+        artwork.setPictureType(PictureTypes.DEFAULT_ID);
+        tag.setField(artwork);
+        audioFile.commit();
+    }
+
+    private static byte[] createImage(Color color) throws Exception {
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, 10, 10);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
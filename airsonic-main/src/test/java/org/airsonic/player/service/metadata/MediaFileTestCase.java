@@ -22,6 +22,8 @@ package org.airsonic.player.service.metadata;
 import junit.framework.TestCase;
 import org.airsonic.player.domain.MediaFile;
 
+import java.util.Date;
+
 /**
  * Unit test of {@link MediaFile}.
  *
@@ -53,6 +55,22 @@ public class MediaFileTestCase extends TestCase {
         doTestGetDurationAsString(360000, "100:00:00");
     }
 
+    public void testCoverArtVersionChangesWithCoverArtFile() {
+        MediaFile dir = new MediaFile();
+        dir.setChanged(new Date(1000000000000L));
+        String withoutCoverArt = dir.getCoverArtVersion();
+
+        dir.setCoverArtPath("/music/Artist/Album/cover.jpg");
+        dir.setCoverArtChanged(new Date(1000000000000L));
+        String version = dir.getCoverArtVersion();
+        assertFalse("Version not changed by cover art.", version.equals(withoutCoverArt));
+        assertEquals("Version not stable.", version, dir.getCoverArtVersion());
+
+        // Overwriting the cover art in place changes neither its path nor the directory.
+        dir.setCoverArtChanged(new Date(1000000010000L));
+        assertFalse("Version not changed by overwritten cover art.", version.equals(dir.getCoverArtVersion()));
+    }
+
     private void doTestGetDurationAsString(int seconds, String expected) {
         MediaFile mediaFile = new MediaFile();
         mediaFile.setDurationSeconds(seconds);
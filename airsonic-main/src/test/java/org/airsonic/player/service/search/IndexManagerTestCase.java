@@ -26,6 +26,8 @@ import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.domain.SearchCriteria;
 import org.airsonic.player.domain.SearchResult;
 import org.airsonic.player.service.SearchService;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -37,8 +39,14 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.springframework.util.ObjectUtils.isEmpty;
 
 public class IndexManagerTestCase extends AbstractAirsonicHomeTest {
@@ -196,4 +204,53 @@ public class IndexManagerTestCase extends AbstractAirsonicHomeTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testAbortRebuild() {
+
+        SearchCriteria criteriaSong = new SearchCriteria();
+        criteriaSong.setOffset(0);
+        criteriaSong.setCount(Integer.MAX_VALUE);
+        criteriaSong.setQuery("Gaspard");
+        int expected = searchService.search(criteriaSong, musicFolders, IndexType.SONG).getMediaFiles().size();
+
+        /*
+         * Nothing is indexed by this rebuild.
+         * If it were committed, the index would be emptied.
+         */
+        indexManager.startIndexing(true);
+        indexManager.abortIndexing();
+        indexManager.stopIndexing();
+
+        SearchResult result = searchService.search(criteriaSong, musicFolders, IndexType.SONG);
+        assertEquals(expected, result.getMediaFiles().size());
+    }
+
+    @Test
+    public void testConcurrentGetSearcher() throws Exception {
+
+        /*
+         * Searchers are acquired from many request threads at once.
+         * All of them must share the reader of a single SearcherManager.
+         */
+        Set<IndexReader> readers = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(executor.submit(() -> {
+                    IndexSearcher searcher = indexManager.getSearcher(IndexType.SONG);
+                    assertNotNull(searcher);
+                    readers.add(searcher.getIndexReader());
+                    indexManager.release(IndexType.SONG, searcher);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, readers.size());
+    }
+
+}
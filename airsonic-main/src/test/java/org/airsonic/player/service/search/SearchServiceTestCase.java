@@ -23,9 +23,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.subsonic.restapi.ArtistID3;
 
 import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class SearchServiceTestCase extends AbstractAirsonicHomeTest {
 
@@ -361,6 +365,83 @@ public class SearchServiceTestCase extends AbstractAirsonicHomeTest {
         System.out.println("End. ");
     }
 
+    @Test
+    public void testSearchMultipleIndexes() {
+
+        List<MusicFolder> allMusicFolders = musicFolderDao.getAllMusicFolders();
+
+        final SearchCriteria searchCriteria = new SearchCriteria();
+        searchCriteria.setQuery("Ravel");
+        searchCriteria.setCount(Integer.MAX_VALUE);
+        searchCriteria.setOffset(0);
+
+        Map<IndexType, SearchCriteria> criteria = new EnumMap<>(IndexType.class);
+        Arrays.stream(IndexType.values()).forEach(indexType -> criteria.put(indexType, searchCriteria));
+
+        /*
+         * Indexes are searched concurrently.
+         * The results must be the same as searching each index in turn.
+         */
+        Map<IndexType, SearchResult> results = searchService.search(criteria, allMusicFolders);
+        Assert.assertEquals(IndexType.values().length, results.size());
+        for (IndexType indexType : IndexType.values()) {
+            SearchResult expected = searchService.search(searchCriteria, allMusicFolders, indexType);
+            SearchResult actual = results.get(indexType);
+            Assert.assertEquals(indexType + " total hits", expected.getTotalHits(), actual.getTotalHits());
+            Assert.assertEquals(indexType + " media files", expected.getMediaFiles(), actual.getMediaFiles());
+            Assert.assertEquals(indexType + " artists",
+                    expected.getArtists().stream().map(Artist::getId).collect(Collectors.toList()),
+                    actual.getArtists().stream().map(Artist::getId).collect(Collectors.toList()));
+            Assert.assertEquals(indexType + " albums",
+                    expected.getAlbums().stream().map(Album::getId).collect(Collectors.toList()),
+                    actual.getAlbums().stream().map(Album::getId).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testGetSuggestions() {
+
+        List<MusicFolder> allMusicFolders = musicFolderDao.getAllMusicFolders();
+
+        List<String> suggestions = searchService.getSuggestions("gaspard", 10, allMusicFolders);
+        Assert.assertTrue(suggestions.contains("01 - Gaspard de la Nuit - i. Ondine"));
+        Assert.assertTrue(suggestions.contains("02 - Gaspard de la Nuit - ii. Le Gibet"));
+
+        // Prefix of the last word
+        suggestions = searchService.getSuggestions("gaspard de la nu", 10, allMusicFolders);
+        Assert.assertTrue(suggestions.contains("01 - Gaspard de la Nuit - i. Ondine"));
+
+        suggestions = searchService.getSuggestions("gaspard", 1, allMusicFolders);
+        Assert.assertEquals(1, suggestions.size());
+
+        // Not accessible
+        suggestions = searchService.getSuggestions("gaspard", 10, Arrays.asList());
+        Assert.assertTrue(suggestions.isEmpty());
+    }
+
+    @Test
+    public void testGetRandomSongsWithUserConditions() {
+
+        List<MusicFolder> allMusicFolders = musicFolderDao.getAllMusicFolders();
+        Function<Boolean, RandomSearchCriteria> starredCriteria = starred -> new RandomSearchCriteria(
+                Integer.MAX_VALUE, null, null, null, allMusicFolders,
+                null, null, null, null, null, null,
+                starred, !starred, null);
+
+        // Nothing is starred
+        List<MediaFile> songs = searchService.getRandomSongs(starredCriteria.apply(false), "admin");
+        Assert.assertEquals(11, songs.size());
+        Assert.assertEquals(11, songs.stream().map(MediaFile::getId).distinct().count());
+
+        songs = searchService.getRandomSongs(starredCriteria.apply(true), "admin");
+        Assert.assertEquals(0, songs.size());
+
+        RandomSearchCriteria criteria = new RandomSearchCriteria(3, null, null, null, allMusicFolders,
+                null, null, null, null, null, null, false, true, null);
+        songs = searchService.getRandomSongs(criteria, "admin");
+        Assert.assertEquals(3, songs.size());
+    }
+
     private static String[] createRandomWords(int count) {
         String[] randomStrings = new String[count];
         Random random = new Random();
@@ -0,0 +1,73 @@
+package org.airsonic.player.spring;
+
+import org.airsonic.player.monitor.MetricsManager;
+import org.airsonic.player.util.HomeRule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit test of the connection pool of the legacy embedded HSQLDB database.
+ */
+public class LegacyDataSourceTestCase {
+
+    @Rule
+    public HomeRule homeRule = new HomeRule();
+
+    private GenericXmlApplicationContext context;
+
+    @Before
+    public void setUp() {
+        context = new GenericXmlApplicationContext();
+        context.getEnvironment().setActiveProfiles("legacy");
+        // Shuts the database down on close, as in the application.
+        AnnotationConfigUtils.registerAnnotationConfigProcessors(context);
+        context.registerBeanDefinition("propertyPlaceholder", new RootBeanDefinition(PropertySourcesPlaceholderConfigurer.class));
+        context.getBeanFactory().registerSingleton("metricsManager", mock(MetricsManager.class));
+        context.load("classpath:/applicationContext-db-legacy.xml");
+        context.refresh();
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    public void testConnectionsAreValidatedWithQuery() throws Exception {
+        InstrumentedDataSource dataSource = context.getBean("dataSource", InstrumentedDataSource.class);
+        assertThat(dataSource.getValidationQuery()).isNotEmpty();
+
+        // HSQLDB 1.8 fails with AbstractMethodError if validated with Connection.isValid().
+        for (int i = 0; i < 2; i++) {
+            try (Connection connection = dataSource.getConnection()) {
+                assertThat(connection.isClosed()).isFalse();
+            }
+        }
+        assertThat(dataSource.getNumIdle()).isEqualTo(1);
+    }
+
+    @Test
+    public void testValidationQueryRunsOnBundledHsqldb() throws Exception {
+        InstrumentedDataSource dataSource = context.getBean("dataSource", InstrumentedDataSource.class);
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(dataSource.getValidationQuery())) {
+            assertThat(connection.getMetaData().getDatabaseProductVersion()).startsWith("1.8");
+            assertThat(resultSet.next()).isTrue();
+            assertThat(resultSet.getInt(1)).isEqualTo(1);
+        }
+    }
+}